@@ -0,0 +1,82 @@
+package com.coopstools.cachemonads;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures typical CacheOptional chains. Run with the GC profiler ({@code gradle jmh}, which passes
+ * {@code -prof gc}); {@code gc.alloc.rate.norm} should be zero bytes per operation for every benchmark.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CacheOptionalBenchmark {
+
+    private String word = "monkey";
+    private String missing = null;
+
+    @Benchmark
+    public String cacheMapFilterLoad() {
+
+        return CacheOptional.of(word)
+                .cache()
+                .map(String::length)
+                .filter(length -> length > 3)
+                .load()
+                .orElse("none");
+    }
+
+    @Benchmark
+    public String filteredOut() {
+
+        return CacheOptional.of(word)
+                .cache()
+                .map(String::length)
+                .filter(length -> length > 10)
+                .load()
+                .orElse("none");
+    }
+
+    @Benchmark
+    public String absent() {
+
+        return CacheOptional.ofNullable(missing)
+                .cache()
+                .map(String::trim)
+                .load()
+                .orElse("none");
+    }
+
+    @Benchmark
+    public String aliasedTransitions() {
+
+        return CacheOptional.of(word)
+                .cache()
+                .load()
+                .map(String::toString)
+                .cache()
+                .get();
+    }
+
+    @Benchmark
+    public String primitiveChain() {
+
+        return CacheOptional.of(word)
+                .mapToInt(String::length)
+                .filter(length -> length > 3)
+                .load()
+                .orElse("none");
+    }
+}
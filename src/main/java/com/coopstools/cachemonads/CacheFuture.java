@@ -0,0 +1,226 @@
+package com.coopstools.cachemonads;
+
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * An asynchronous {@link CacheOptional}: a future cache/accessable value pair, with the same {@code cache},
+ * {@code load}, {@code map} and {@code filter} operations, plus {@code flatMap} for asynchronous steps. Nothing
+ * blocks until {@link #join()} is called.
+ * <p>
+ * A CacheFuture whose value is already known holds it directly, without a CompletableFuture. Steps on it run
+ * straight away, on the calling thread, and return the same instance where the step leaves the pair unchanged;
+ * so a request that is served from memory pays for neither future allocations nor thread hops. Steps on a
+ * pending CacheFuture run when it completes: on the completing thread by default, or on the executor given to
+ * {@link #withExecutor}.
+ * <p>
+ * <pre>{@code
+ *      CacheFuture<Parent, Account> account = CacheFuture.of(parent)
+ *              .cache()
+ *              .map(Parent::getAccountId)
+ *              .flatMap(accountClient::fetch)
+ *              .filter(Account::isActive);
+ *
+ *      account.load().toCompletableFuture().thenAccept(this::respond);
+ * }</pre>
+ *
+ * @param <C> The type of the cached value
+ * @param <V> The type of the accessable value
+ */
+public final class CacheFuture<C, V> {
+
+    private final CacheOptional<C, V> completed;
+    private final CompletableFuture<CacheOptional<C, V>> future;
+    private final Executor executor;
+
+    private CacheFuture(
+            final CacheOptional<C, V> completed,
+            final CompletableFuture<CacheOptional<C, V>> future,
+            final Executor executor) {
+
+        this.completed = completed;
+        this.future = future;
+        this.executor = executor;
+    }
+
+    public static <V> CacheFuture<V, V> of(final V value) {
+        return new CacheFuture<>(CacheOptional.of(value), null, null);
+    }
+
+    public static <C, V> CacheFuture<C, V> of(final CacheOptional<C, V> optional) {
+        return new CacheFuture<>(Objects.requireNonNull(optional), null, null);
+    }
+
+    /**
+     * Returns a CacheFuture of the value the future completes with; it is empty if that value is null.
+     *
+     * @param future The future of the value
+     * @param <V>    The type of the value
+     * @return the CacheFuture
+     */
+    public static <V> CacheFuture<V, V> from(final CompletionStage<V> future) {
+        return fromStage(future.thenApply(CacheOptional::ofNullable), null);
+    }
+
+    /**
+     * Returns a CacheFuture of the value computed by the supplier on the executor; it is empty if the supplier
+     * returns null. Later steps also run on the executor.
+     *
+     * @param supplier The supplier of the value
+     * @param executor The executor to compute the value, and run later steps, on
+     * @param <V>      The type of the value
+     * @return the CacheFuture
+     */
+    public static <V> CacheFuture<V, V> supplyAsync(final Supplier<V> supplier, final Executor executor) {
+
+        Objects.requireNonNull(executor, "Executor must not be null");
+        return fromStage(CompletableFuture.supplyAsync(() -> CacheOptional.ofNullable(supplier.get()), executor),
+                executor);
+    }
+
+    /**
+     * Returns a CacheFuture whose steps run on the executor, if they have to wait for a value. Steps on a value
+     * that is already known still run straight away, on the calling thread.
+     *
+     * @param executor The executor to run later steps on
+     * @return the CacheFuture
+     */
+    public CacheFuture<C, V> withExecutor(final Executor executor) {
+
+        Objects.requireNonNull(executor, "Executor must not be null");
+        return new CacheFuture<>(completed, future, executor);
+    }
+
+    public <R> CacheFuture<C, R> map(final Function<? super V, R> mapper) {
+
+        Objects.requireNonNull(mapper, "Mapping function must not be null");
+        return then(optional -> optional.map(mapper));
+    }
+
+    public CacheFuture<C, V> filter(final Predicate<? super V> predicate) {
+
+        Objects.requireNonNull(predicate, "Predicate must not be null");
+        return then(optional -> optional.filter(predicate));
+    }
+
+    public CacheFuture<V, V> cache() {
+        return then(CacheOptional::cache);
+    }
+
+    public CacheFuture<C, C> load() {
+        return then(CacheOptional::load);
+    }
+
+    /**
+     * Maps the accessable value with an asynchronous step, keeping the cached value. If the step's result is
+     * null, the CacheFuture becomes empty.
+     *
+     * @param mapper A function returning a future of the new accessable value
+     * @param <R>    The type of the new accessable value
+     * @return the CacheFuture of the new accessable value
+     */
+    public <R> CacheFuture<C, R> flatMap(final Function<? super V, ? extends CompletionStage<R>> mapper) {
+
+        Objects.requireNonNull(mapper, "Mapping function must not be null");
+
+        if (future == null) {
+            if (!completed.isPresent())
+                return new CacheFuture<>(CacheOptional.empty(), null, executor);
+            try {
+                return fromStage(bind(completed, mapper.apply(completed.get())), executor);
+            } catch (RuntimeException rtEx) {
+                return failed(rtEx, executor);
+            }
+        }
+
+        Function<CacheOptional<C, V>, CompletionStage<CacheOptional<C, R>>> step = optional -> optional.isPresent()
+                ? bind(optional, mapper.apply(optional.get()))
+                : CompletableFuture.completedFuture(CacheOptional.empty());
+        return new CacheFuture<>(
+                null, executor == null ? future.thenCompose(step) : future.thenComposeAsync(step, executor), executor);
+    }
+
+    /**
+     * @return whether the value is known, or the CacheFuture has failed
+     */
+    public boolean isDone() {
+        return future == null || future.isDone();
+    }
+
+    /**
+     * Waits for the CacheFuture to complete, and returns the result as a CacheOptional. This blocks, so it is
+     * meant for the edges of an application, such as tests.
+     *
+     * @return the completed CacheOptional
+     */
+    public CacheOptional<C, V> join() {
+        return future == null ? completed : future.join();
+    }
+
+    /**
+     * @return a CompletableFuture of the result as a CacheOptional
+     */
+    public CompletableFuture<CacheOptional<C, V>> toCompletableFuture() {
+        return future == null ? CompletableFuture.completedFuture(completed) : future;
+    }
+
+    @Override
+    public String toString() {
+
+        if (future == null)
+            return "CacheFuture[" + completed + "]";
+        return future.isDone() && !future.isCompletedExceptionally()
+                ? "CacheFuture[" + future.join() + "]"
+                : "CacheFuture[" + (future.isDone() ? "failed" : "pending") + "]";
+    }
+
+    @SuppressWarnings("unchecked")
+    private <C2, V2> CacheFuture<C2, V2> then(final Function<CacheOptional<C, V>, CacheOptional<C2, V2>> step) {
+
+        if (future == null) {
+            CacheOptional<C2, V2> next;
+            try {
+                next = step.apply(completed);
+            } catch (RuntimeException rtEx) {
+                return failed(rtEx, executor);
+            }
+            return next == (Object) completed ? (CacheFuture<C2, V2>) this : new CacheFuture<>(next, null, executor);
+        }
+
+        return new CacheFuture<>(
+                null, executor == null ? future.thenApply(step) : future.thenApplyAsync(step, executor), executor);
+    }
+
+    /**
+     * Pairs the result of an asynchronous step with the cached value of the optional it was applied to.
+     */
+    private static <C, V, R> CompletionStage<CacheOptional<C, R>> bind(
+            final CacheOptional<C, V> optional, final CompletionStage<R> result) {
+
+        return result.thenApply(value -> optional.map(ignored -> value));
+    }
+
+    /**
+     * Wraps a stage, holding its value directly if it has already completed normally.
+     */
+    private static <C, V> CacheFuture<C, V> fromStage(
+            final CompletionStage<CacheOptional<C, V>> stage, final Executor executor) {
+
+        CompletableFuture<CacheOptional<C, V>> future = stage.toCompletableFuture();
+        if (future.isDone() && !future.isCompletedExceptionally())
+            return new CacheFuture<>(future.join(), null, executor);
+        return new CacheFuture<>(null, future, executor);
+    }
+
+    private static <C, V> CacheFuture<C, V> failed(final Throwable cause, final Executor executor) {
+
+        CompletableFuture<CacheOptional<C, V>> future = new CompletableFuture<>();
+        future.completeExceptionally(cause);
+        return new CacheFuture<>(null, future, executor);
+    }
+}
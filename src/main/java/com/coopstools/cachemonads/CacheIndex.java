@@ -0,0 +1,403 @@
+package com.coopstools.cachemonads;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An immutable index from keys to the cached values that were associated with them, produced by
+ * {@link CacheStream#toIndex()}. It is built once, and can then be queried any number of times, by any number
+ * of threads, without synchronization.
+ * <p>
+ * Exact lookups take constant time. If every key is comparable, the keys are also kept sorted, which allows
+ * {@link #range} queries, and {@link #prefix} queries over String keys. Integer and Long keys are stored as
+ * primitive longs. Sorted keys are grouped by {@code compareTo}, as a range is: so keys that compare as equal
+ * share a group, and are found by each other, even if they are not {@code equals}, as with BigDecimal 1.0 and
+ * 1.00. Looking up a key that is not itself in the index takes logarithmic time.
+ * <p>
+ * <pre>{@code
+ *      CacheIndex<String, Parent> byEmail = CacheStream.of(parents)
+ *              .cache()
+ *              .map(Parent::getEmail)
+ *              .toIndex();
+ *
+ *      List<Parent> parent = byEmail.get("james@coopstools.com");
+ *      List<Parent> coopstools = byEmail.prefix("james@");
+ * }</pre>
+ *
+ * @param <K> The type of the keys, which were the accessable values of the stream
+ * @param <C> The type of the cached values
+ */
+public abstract class CacheIndex<K, C> {
+
+    private final Object[] caches;
+    private final int[] groupStarts;
+
+    /**
+     * @param caches      The cached values, grouped by key
+     * @param groupStarts The start of each group of cached values, followed by the number of cached values
+     */
+    private CacheIndex(final Object[] caches, final int[] groupStarts) {
+
+        this.caches = caches;
+        this.groupStarts = groupStarts;
+    }
+
+    /**
+     * Builds an index of the tuples of a stream, keyed by their accessable values. The cached values of each
+     * key keep the order of the tuples.
+     */
+    static <K, C> CacheIndex<K, C> build(final Object[] tuples, final boolean parallel) {
+
+        Class<?> keyType = commonKeyType(tuples);
+        if (keyType == Long.class || keyType == Integer.class) {
+            sort(tuples, Comparator.comparingLong(tuple -> ((Number) key(tuple)).longValue()), parallel);
+            return new LongIndex<>(tuples, keyType);
+        }
+
+        if (keyType != null && Comparable.class.isAssignableFrom(keyType)) {
+            try {
+                Object[] sorted = tuples.clone();
+                sort(sorted, (t1, t2) -> compare(key(t1), key(t2)), parallel);
+                return new SortedIndex<>(sorted);
+            } catch (ClassCastException ccEx) {
+                // The keys are comparable, but not with each other
+            }
+        }
+        return new HashIndex<>(tuples);
+    }
+
+    /**
+     * Returns the cached values associated with the key, in the order they were in the stream.
+     *
+     * @param key The key to look up
+     * @return the cached values of the key, or an empty list if there are none
+     */
+    public List<C> get(final K key) {
+
+        int group = group(key);
+        return group < 0 ? Collections.emptyList() : slice(groupStarts[group], groupStarts[group + 1]);
+    }
+
+    public boolean containsKey(final K key) {
+        return group(key) >= 0;
+    }
+
+    /**
+     * Returns the cached values of every key from {@code from}, inclusive, to {@code to}, exclusive, in key
+     * order.
+     *
+     * @param from The lowest key to include
+     * @param to   The key to stop before
+     * @return the cached values of the keys in the range
+     * @throws UnsupportedOperationException if the keys are not comparable
+     */
+    public List<C> range(final K from, final K to) {
+
+        int first = lowerBound(from);
+        int last = lowerBound(to);
+        return first >= last ? Collections.emptyList() : slice(groupStarts[first], groupStarts[last]);
+    }
+
+    /**
+     * Returns the cached values of every key that starts with the prefix, in key order.
+     *
+     * @param prefix The prefix of the keys to include
+     * @return the cached values of the keys with the prefix
+     * @throws UnsupportedOperationException if the keys are not Strings
+     */
+    public List<C> prefix(final String prefix) {
+        throw new UnsupportedOperationException("Prefix queries are only supported on String keys");
+    }
+
+    /**
+     * @return the number of cached values in the index
+     */
+    public int size() {
+        return caches.length;
+    }
+
+    /**
+     * @return the number of distinct keys in the index
+     */
+    public int keyCount() {
+        return groupStarts.length - 1;
+    }
+
+    /**
+     * Returns the group of the key, or -1 if the index does not contain it.
+     */
+    abstract int group(Object key);
+
+    /**
+     * Returns the first group whose key is not less than the given key.
+     */
+    int lowerBound(final Object key) {
+        throw new UnsupportedOperationException("Range queries are only supported on comparable keys");
+    }
+
+    int groupStart(final int group) {
+        return groupStarts[group];
+    }
+
+    List<C> slice(final int from, final int to) {
+
+        @SuppressWarnings("unchecked")
+        List<C> slice = (List<C>) Collections.unmodifiableList(Arrays.asList(caches).subList(from, to));
+        return slice;
+    }
+
+    private static Object key(final Object tuple) {
+        return ((CacheTuple<?, ?>) tuple).getRight();
+    }
+
+    private static Object[] cachesOf(final Object[] tuples) {
+
+        Object[] caches = new Object[tuples.length];
+        for (int i = 0; i < tuples.length; i++)
+            caches[i] = ((CacheTuple<?, ?>) tuples[i]).getLeft();
+        return caches;
+    }
+
+    /**
+     * Returns the class shared by every key, or null if there is a null key, or keys of more than one class.
+     */
+    private static Class<?> commonKeyType(final Object[] tuples) {
+
+        Class<?> keyType = null;
+        for (Object tuple : tuples) {
+            Object key = key(tuple);
+            if (key == null || (keyType != null && key.getClass() != keyType))
+                return null;
+            keyType = key.getClass();
+        }
+        return keyType;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static int compare(final Object key1, final Object key2) {
+        return ((Comparable<Object>) key1).compareTo(key2);
+    }
+
+    /**
+     * Sorts the tuples by key. Both sorts are stable, so the cached values of each key keep their order.
+     */
+    private static void sort(final Object[] tuples, final Comparator<Object> order, final boolean parallel) {
+
+        if (parallel)
+            Arrays.parallelSort(tuples, order);
+        else
+            Arrays.sort(tuples, order);
+    }
+
+    /**
+     * Returns the start of each run of equal keys in sorted tuples, followed by the number of tuples.
+     */
+    private static int[] runStarts(final Object[] sorted, final Comparator<Object> order) {
+
+        int[] starts = new int[sorted.length + 1];
+        int runs = 0;
+        for (int i = 0; i < sorted.length; i++)
+            if (i == 0 || order.compare(key(sorted[i - 1]), key(sorted[i])) != 0)
+                starts[runs++] = i;
+        starts[runs] = sorted.length;
+        return Arrays.copyOf(starts, runs + 1);
+    }
+
+    /**
+     * An index of keys that cannot be sorted, grouped in the order each key first appeared.
+     */
+    private static final class HashIndex<K, C> extends CacheIndex<K, C> {
+
+        private final Map<Object, Integer> groups;
+
+        private HashIndex(final Object[] tuples) {
+            this(tuples, groupsOf(tuples));
+        }
+
+        private HashIndex(final Object[] tuples, final Map<Object, Integer> groups) {
+
+            super(groupedCaches(tuples, groups), groupStartsOf(tuples, groups));
+            this.groups = groups;
+        }
+
+        @Override
+        int group(final Object key) {
+
+            Integer group = groups.get(key);
+            return group == null ? -1 : group;
+        }
+
+        private static Map<Object, Integer> groupsOf(final Object[] tuples) {
+
+            Map<Object, Integer> groups = new HashMap<>();
+            for (Object tuple : tuples)
+                groups.putIfAbsent(key(tuple), groups.size());
+            return groups;
+        }
+
+        private static int[] groupStartsOf(final Object[] tuples, final Map<Object, Integer> groups) {
+
+            int[] starts = new int[groups.size() + 1];
+            for (Object tuple : tuples)
+                starts[groups.get(key(tuple)) + 1]++;
+            for (int group = 0; group < groups.size(); group++)
+                starts[group + 1] += starts[group];
+            return starts;
+        }
+
+        private static Object[] groupedCaches(final Object[] tuples, final Map<Object, Integer> groups) {
+
+            int[] next = groupStartsOf(tuples, groups);
+            Object[] caches = new Object[tuples.length];
+            for (Object tuple : tuples)
+                caches[next[groups.get(key(tuple))]++] = ((CacheTuple<?, ?>) tuple).getLeft();
+            return caches;
+        }
+    }
+
+    /**
+     * An index of comparable keys, kept in sorted order, with a hash table of the position of each key. A key
+     * missing from the table is still searched for, as it may compare as equal to a key that is not equal to it.
+     */
+    private static final class SortedIndex<K, C> extends CacheIndex<K, C> {
+
+        private static final Comparator<Object> ORDER = CacheIndex::compare;
+
+        private final Object[] keys;
+        private final Map<Object, Integer> groups;
+
+        private SortedIndex(final Object[] sorted) {
+            this(sorted, runStarts(sorted, ORDER));
+        }
+
+        private SortedIndex(final Object[] sorted, final int[] starts) {
+
+            super(cachesOf(sorted), starts);
+            this.keys = new Object[starts.length - 1];
+            this.groups = new HashMap<>();
+            for (int group = 0; group < keys.length; group++) {
+                keys[group] = key(sorted[starts[group]]);
+                groups.put(keys[group], group);
+            }
+        }
+
+        @Override
+        int group(final Object key) {
+
+            Integer group = groups.get(key);
+            if (group != null)
+                return group;
+            if (key == null)
+                return -1;
+
+            try {
+                int bound = lowerBound(key);
+                return bound < keys.length && compare(keys[bound], key) == 0 ? bound : -1;
+            } catch (ClassCastException ccEx) {
+                return -1;
+            }
+        }
+
+        @Override
+        int lowerBound(final Object key) {
+
+            int low = 0;
+            int high = keys.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (compare(keys[mid], key) < 0)
+                    low = mid + 1;
+                else
+                    high = mid;
+            }
+            return low;
+        }
+
+        @Override
+        public List<C> prefix(final String prefix) {
+
+            if (keys.length == 0)
+                return Collections.emptyList();
+            if (!(keys[0] instanceof String))
+                return super.prefix(prefix);
+
+            int first = lowerBound(prefix);
+            int last = first;
+            int high = keys.length;
+            while (last < high) {
+                int mid = (last + high) >>> 1;
+                if (((String) keys[mid]).startsWith(prefix))
+                    last = mid + 1;
+                else
+                    high = mid;
+            }
+            return first >= last ? Collections.emptyList() : slice(groupStart(first), groupStart(last));
+        }
+    }
+
+    /**
+     * An index of Integer or Long keys, stored as a sorted array of primitive longs, with an open-addressing
+     * table from each key to its position.
+     */
+    private static final class LongIndex<K, C> extends CacheIndex<K, C> {
+
+        private static final Comparator<Object> ORDER =
+                Comparator.comparingLong(key -> ((Number) key).longValue());
+
+        private final Class<?> keyType;
+        private final long[] keys;
+        private final long[] table;
+        private final int[] tableGroups;
+        private final int mask;
+
+        private LongIndex(final Object[] sorted, final Class<?> keyType) {
+            this(sorted, runStarts(sorted, ORDER), keyType);
+        }
+
+        private LongIndex(final Object[] sorted, final int[] starts, final Class<?> keyType) {
+
+            super(cachesOf(sorted), starts);
+            this.keyType = keyType;
+            this.keys = new long[starts.length - 1];
+            for (int group = 0; group < keys.length; group++)
+                keys[group] = ((Number) key(sorted[starts[group]])).longValue();
+
+            int capacity = Integer.highestOneBit(Math.max(2, keys.length) * 2 - 1) << 1;
+            this.table = new long[capacity];
+            this.tableGroups = new int[capacity];
+            this.mask = capacity - 1;
+            Arrays.fill(tableGroups, -1);
+            for (int group = 0; group < keys.length; group++) {
+                int slot = (int) LongHashSet.mix(keys[group]) & mask;
+                while (tableGroups[slot] >= 0)
+                    slot = (slot + 1) & mask;
+                table[slot] = keys[group];
+                tableGroups[slot] = group;
+            }
+        }
+
+        @Override
+        int group(final Object key) {
+
+            if (!keyType.isInstance(key))
+                return -1;
+
+            long value = ((Number) key).longValue();
+            for (int slot = (int) LongHashSet.mix(value) & mask; tableGroups[slot] >= 0; slot = (slot + 1) & mask)
+                if (table[slot] == value)
+                    return tableGroups[slot];
+            return -1;
+        }
+
+        @Override
+        int lowerBound(final Object key) {
+
+            int index = Arrays.binarySearch(keys, ((Number) key).longValue());
+            return index >= 0 ? index : -index - 1;
+        }
+    }
+}
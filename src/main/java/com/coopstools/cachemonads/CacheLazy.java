@@ -0,0 +1,145 @@
+package com.coopstools.cachemonads;
+
+import java.util.Objects;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * A lazy counterpart of {@link CacheOptional}. The {@code map}, {@code filter}, {@code cache} and {@code load}
+ * steps are only recorded; they run when the result is first read, by {@code get}, {@code orElse},
+ * {@code ifPresent} and the like. So an expensive derivation is never computed if nothing reads it.
+ * <p>
+ * The result of each step is memoized: once evaluated, an instance holds its CacheOptional, and drops the
+ * steps that produced it. Evaluation is thread-safe, and runs at most once per instance, however many threads
+ * read it; after that, reads cost a single volatile load. A step that throws is not memoized, and is retried on
+ * the next read.
+ * <p>
+ * <pre>{@code
+ *      CacheLazy<Parent, Report> report = CacheLazy.of(parent)
+ *              .map(Parent::getChildren)
+ *              .map(this::buildExpensiveReport);
+ *
+ *      if (!verbose)
+ *          return;                                    // the report is never built
+ *      send(report.get());
+ * }</pre>
+ *
+ * @param <C> The type of the cached value
+ * @param <V> The type of the accessable value
+ */
+public final class CacheLazy<C, V> {
+
+    private Supplier<CacheOptional<C, V>> steps;
+    private volatile CacheOptional<C, V> result;
+
+    private CacheLazy(final Supplier<CacheOptional<C, V>> steps) {
+        this.steps = steps;
+    }
+
+    private CacheLazy(final CacheOptional<C, V> result) {
+        this.result = result;
+    }
+
+    public static <V> CacheLazy<V, V> of(final V value) {
+        return new CacheLazy<>(CacheOptional.of(value));
+    }
+
+    public static <V> CacheLazy<V, V> ofNullable(final V value) {
+        return new CacheLazy<>(CacheOptional.ofNullable(value));
+    }
+
+    /**
+     * Returns a CacheLazy whose value is computed by the supplier, when it is first read. If the supplier
+     * returns null, the CacheLazy is empty.
+     */
+    public static <V> CacheLazy<V, V> supply(final Supplier<? extends V> supplier) {
+
+        Objects.requireNonNull(supplier, "Supplier must not be null");
+        return new CacheLazy<>(() -> CacheOptional.ofNullable(supplier.get()));
+    }
+
+    public <R> CacheLazy<C, R> map(final Function<? super V, R> mapper) {
+
+        Objects.requireNonNull(mapper, "Mapping function must not be null");
+        return new CacheLazy<>(() -> evaluate().map(mapper));
+    }
+
+    public CacheLazy<C, V> filter(final Predicate<? super V> predicate) {
+
+        Objects.requireNonNull(predicate, "Predicate must not be null");
+        return new CacheLazy<>(() -> evaluate().filter(predicate));
+    }
+
+    public CacheLazy<V, V> cache() {
+        return new CacheLazy<>(() -> evaluate().cache());
+    }
+
+    public CacheLazy<C, C> load() {
+        return new CacheLazy<>(() -> evaluate().load());
+    }
+
+    public V get() {
+        return evaluate().get();
+    }
+
+    public boolean isPresent() {
+        return evaluate().isPresent();
+    }
+
+    public void ifPresent(final Consumer<? super V> consumer) {
+        evaluate().ifPresent(consumer);
+    }
+
+    public V orElse(final V defaultValue) {
+        return evaluate().orElse(defaultValue);
+    }
+
+    public V orElseGet(final Supplier<V> supplier) {
+        return evaluate().orElseGet(supplier);
+    }
+
+    public <T extends Throwable> V orElseThrow(final Supplier<? extends T> exceptionSupplier) throws T {
+        return evaluate().orElseThrow(exceptionSupplier);
+    }
+
+    /**
+     * Evaluates the steps, if they have not been yet, and returns the result as a CacheOptional.
+     *
+     * @return the evaluated CacheOptional
+     */
+    public CacheOptional<C, V> toOptional() {
+        return evaluate();
+    }
+
+    /**
+     * @return whether the steps have been evaluated
+     */
+    public boolean isEvaluated() {
+        return result != null;
+    }
+
+    @Override
+    public String toString() {
+
+        CacheOptional<C, V> evaluated = result;
+        return evaluated == null ? "CacheLazy.unevaluated" : "CacheLazy[" + evaluated + "]";
+    }
+
+    private CacheOptional<C, V> evaluate() {
+
+        CacheOptional<C, V> evaluated = result;
+        if (evaluated == null) {
+            synchronized (this) {
+                evaluated = result;
+                if (evaluated == null) {
+                    evaluated = steps.get();
+                    result = evaluated;
+                    steps = null;
+                }
+            }
+        }
+        return evaluated;
+    }
+}
@@ -6,8 +6,19 @@ import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.function.Predicate;
 import java.util.function.Supplier;
-
-public class CacheOptional<C, V> {
+import java.util.function.ToDoubleFunction;
+import java.util.function.ToIntFunction;
+import java.util.function.ToLongFunction;
+
+/**
+ * An Optional which, alongside its value, holds a cached value that can be loaded back later in a chain.
+ * <p>
+ * Transitions which would not change either slot, such as {@code cache()} on an optional whose slots already hold
+ * the same reference, or {@code map} with a function that returns its argument, return the same instance rather
+ * than a new one. The class is final, and its methods small, so that short chains can be inlined and their
+ * intermediate instances scalar replaced by the JIT compiler.
+ */
+public final class CacheOptional<C, V> {
 
     private static final CacheOptional<?, ?> EMPTY = new CacheOptional<>();
 
@@ -36,6 +47,13 @@ public class CacheOptional<C, V> {
         return (value == null) ? empty() : new CacheOptional<>(value, value);
     }
 
+    /**
+     * Returns a CacheOptional of the value, holding the given cached value; or an empty one if the value is null.
+     */
+    static <C, V> CacheOptional<C, V> withCache(final C cached, final V value) {
+        return value == null ? empty() : new CacheOptional<>(cached, value);
+    }
+
     public static <T, R> CacheOptional<T, R> empty() {
 
         @SuppressWarnings("unchecked")
@@ -117,10 +135,36 @@ public class CacheOptional<C, V> {
         R newValue = mapper.apply(value);
         if (newValue == null)
             return empty();
+        if (newValue == value)
+            return retyped();
 
         return new CacheOptional<>(cached, newValue);
     }
 
+    /**
+     * Maps the value to an unboxed int, keeping the cached value.
+     */
+    public CacheOptionalInt<C> mapToInt(final ToIntFunction<? super V> mapper) {
+        return isPresent() ? CacheOptionalInt.of(cached, mapper.applyAsInt(value)) : CacheOptionalInt.empty();
+    }
+
+    /**
+     * Maps the value to an unboxed long, keeping the cached value.
+     */
+    public CacheOptionalLong<C> mapToLong(final ToLongFunction<? super V> mapper) {
+        return isPresent() ? CacheOptionalLong.of(cached, mapper.applyAsLong(value)) : CacheOptionalLong.empty();
+    }
+
+    /**
+     * Maps the value to an unboxed double, keeping the cached value.
+     */
+    public CacheOptionalDouble<C> mapToDouble(final ToDoubleFunction<? super V> mapper) {
+
+        return isPresent()
+                ? CacheOptionalDouble.of(cached, mapper.applyAsDouble(value))
+                : CacheOptionalDouble.empty();
+    }
+
     //TODO: flatmap
     //TODO: flatMap of java utils optional
 
@@ -128,14 +172,14 @@ public class CacheOptional<C, V> {
 
         if (!isPresent())
             return empty();
-        return of(value);
+        return cached == value ? retyped() : of(value);
     }
 
     public CacheOptional<C, C> load() {
 
         if (!isPresent() || cached == null)
             return empty();
-        return of(cached);
+        return cached == value ? retyped() : of(cached);
     }
 
     public CacheOptional<C, V> filter(final Predicate<? super V> predicate) {
@@ -145,6 +189,15 @@ public class CacheOptional<C, V> {
         return predicate.test(value) ? this : empty();
     }
 
+    /**
+     * Returns this instance with different type arguments, for transitions that leave both slots holding the
+     * same references.
+     */
+    @SuppressWarnings("unchecked")
+    private <T, R> CacheOptional<T, R> retyped() {
+        return (CacheOptional<T, R>) this;
+    }
+
     public boolean equals(Object obj) {
 
         //TODO: Find out why this is not being tested
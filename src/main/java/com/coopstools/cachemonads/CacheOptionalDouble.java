@@ -0,0 +1,132 @@
+package com.coopstools.cachemonads;
+
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.function.DoubleConsumer;
+import java.util.function.DoubleFunction;
+import java.util.function.DoublePredicate;
+import java.util.function.DoubleSupplier;
+import java.util.function.DoubleUnaryOperator;
+import java.util.function.Supplier;
+
+/**
+ * A {@link CacheOptional} whose accessable value is an unboxed double, such as a numeric field mapped from an
+ * object with {@link CacheOptional#mapToDouble}. The cached value is kept alongside it, and can be loaded back
+ * into an object CacheOptional.
+ *
+ * @param <C> The type of the cached value
+ */
+public final class CacheOptionalDouble<C> {
+
+    private static final CacheOptionalDouble<?> EMPTY = new CacheOptionalDouble<>(null, 0, false);
+
+    private final C cached;
+    private final double value;
+    private final boolean present;
+
+    private CacheOptionalDouble(final C cached, final double value, final boolean present) {
+
+        this.cached = cached;
+        this.value = value;
+        this.present = present;
+    }
+
+    static <C> CacheOptionalDouble<C> of(final C cached, final double value) {
+        return new CacheOptionalDouble<>(cached, value, true);
+    }
+
+    public static <C> CacheOptionalDouble<C> empty() {
+
+        @SuppressWarnings("unchecked")
+        CacheOptionalDouble<C> t = (CacheOptionalDouble<C>) EMPTY;
+        return t;
+    }
+
+    public double getAsDouble() {
+
+        if (!present)
+            throw new NoSuchElementException("Absent value");
+        return value;
+    }
+
+    public boolean isPresent() {
+        return present;
+    }
+
+    public void ifPresent(final DoubleConsumer consumer) {
+
+        if (present)
+            consumer.accept(value);
+    }
+
+    public double orElse(final double defaultValue) {
+        return present ? value : defaultValue;
+    }
+
+    public double orElseGet(final DoubleSupplier supplier) {
+        return present ? value : supplier.getAsDouble();
+    }
+
+    public <T extends Throwable> double orElseThrow(final Supplier<? extends T> exceptionSupplier) throws T {
+
+        if (present)
+            return value;
+
+        throw exceptionSupplier.get();
+    }
+
+    public CacheOptionalDouble<C> filter(final DoublePredicate predicate) {
+
+        if (!present)
+            return this;
+        return predicate.test(value) ? this : empty();
+    }
+
+    public CacheOptionalDouble<C> map(final DoubleUnaryOperator mapper) {
+
+        if (!present)
+            return this;
+
+        double newValue = mapper.applyAsDouble(value);
+        return Double.compare(newValue, value) == 0 ? this : of(cached, newValue);
+    }
+
+    /**
+     * Maps the value to an object, keeping the cached value.
+     */
+    public <R> CacheOptional<C, R> mapToObj(final DoubleFunction<R> mapper) {
+        return present ? CacheOptional.withCache(cached, mapper.apply(value)) : CacheOptional.empty();
+    }
+
+    /**
+     * Returns an object CacheOptional holding the cached value, as {@link CacheOptional#load()} does.
+     */
+    public CacheOptional<C, C> load() {
+        return present ? CacheOptional.withCache(cached, cached) : CacheOptional.empty();
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+
+        if (this == obj)
+            return true;
+
+        if (!(obj instanceof CacheOptionalDouble))
+            return false;
+
+        CacheOptionalDouble<?> other = (CacheOptionalDouble<?>) obj;
+        return present == other.present && Double.compare(value, other.value) == 0;
+    }
+
+    @Override
+    public int hashCode() {
+        return present ? Double.hashCode(value) : 0;
+    }
+
+    @Override
+    public String toString() {
+        return present
+                ? String.format("CacheOptionalDouble[%s, %s]", cached, value)
+                : "CacheOptionalDouble.empty";
+    }
+}
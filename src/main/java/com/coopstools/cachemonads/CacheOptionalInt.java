@@ -0,0 +1,132 @@
+package com.coopstools.cachemonads;
+
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.function.IntConsumer;
+import java.util.function.IntFunction;
+import java.util.function.IntPredicate;
+import java.util.function.IntSupplier;
+import java.util.function.IntUnaryOperator;
+import java.util.function.Supplier;
+
+/**
+ * A {@link CacheOptional} whose accessable value is an unboxed int, such as a numeric field mapped from an
+ * object with {@link CacheOptional#mapToInt}. The cached value is kept alongside it, and can be loaded back
+ * into an object CacheOptional.
+ *
+ * @param <C> The type of the cached value
+ */
+public final class CacheOptionalInt<C> {
+
+    private static final CacheOptionalInt<?> EMPTY = new CacheOptionalInt<>(null, 0, false);
+
+    private final C cached;
+    private final int value;
+    private final boolean present;
+
+    private CacheOptionalInt(final C cached, final int value, final boolean present) {
+
+        this.cached = cached;
+        this.value = value;
+        this.present = present;
+    }
+
+    static <C> CacheOptionalInt<C> of(final C cached, final int value) {
+        return new CacheOptionalInt<>(cached, value, true);
+    }
+
+    public static <C> CacheOptionalInt<C> empty() {
+
+        @SuppressWarnings("unchecked")
+        CacheOptionalInt<C> t = (CacheOptionalInt<C>) EMPTY;
+        return t;
+    }
+
+    public int getAsInt() {
+
+        if (!present)
+            throw new NoSuchElementException("Absent value");
+        return value;
+    }
+
+    public boolean isPresent() {
+        return present;
+    }
+
+    public void ifPresent(final IntConsumer consumer) {
+
+        if (present)
+            consumer.accept(value);
+    }
+
+    public int orElse(final int defaultValue) {
+        return present ? value : defaultValue;
+    }
+
+    public int orElseGet(final IntSupplier supplier) {
+        return present ? value : supplier.getAsInt();
+    }
+
+    public <T extends Throwable> int orElseThrow(final Supplier<? extends T> exceptionSupplier) throws T {
+
+        if (present)
+            return value;
+
+        throw exceptionSupplier.get();
+    }
+
+    public CacheOptionalInt<C> filter(final IntPredicate predicate) {
+
+        if (!present)
+            return this;
+        return predicate.test(value) ? this : empty();
+    }
+
+    public CacheOptionalInt<C> map(final IntUnaryOperator mapper) {
+
+        if (!present)
+            return this;
+
+        int newValue = mapper.applyAsInt(value);
+        return newValue == value ? this : of(cached, newValue);
+    }
+
+    /**
+     * Maps the value to an object, keeping the cached value.
+     */
+    public <R> CacheOptional<C, R> mapToObj(final IntFunction<R> mapper) {
+        return present ? CacheOptional.withCache(cached, mapper.apply(value)) : CacheOptional.empty();
+    }
+
+    /**
+     * Returns an object CacheOptional holding the cached value, as {@link CacheOptional#load()} does.
+     */
+    public CacheOptional<C, C> load() {
+        return present ? CacheOptional.withCache(cached, cached) : CacheOptional.empty();
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+
+        if (this == obj)
+            return true;
+
+        if (!(obj instanceof CacheOptionalInt))
+            return false;
+
+        CacheOptionalInt<?> other = (CacheOptionalInt<?>) obj;
+        return present == other.present && value == other.value;
+    }
+
+    @Override
+    public int hashCode() {
+        return present ? Integer.hashCode(value) : 0;
+    }
+
+    @Override
+    public String toString() {
+        return present
+                ? String.format("CacheOptionalInt[%s, %s]", cached, value)
+                : "CacheOptionalInt.empty";
+    }
+}
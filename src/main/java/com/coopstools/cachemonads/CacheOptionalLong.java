@@ -0,0 +1,132 @@
+package com.coopstools.cachemonads;
+
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.function.LongConsumer;
+import java.util.function.LongFunction;
+import java.util.function.LongPredicate;
+import java.util.function.LongSupplier;
+import java.util.function.LongUnaryOperator;
+import java.util.function.Supplier;
+
+/**
+ * A {@link CacheOptional} whose accessable value is an unboxed long, such as a numeric field mapped from an
+ * object with {@link CacheOptional#mapToLong}. The cached value is kept alongside it, and can be loaded back
+ * into an object CacheOptional.
+ *
+ * @param <C> The type of the cached value
+ */
+public final class CacheOptionalLong<C> {
+
+    private static final CacheOptionalLong<?> EMPTY = new CacheOptionalLong<>(null, 0, false);
+
+    private final C cached;
+    private final long value;
+    private final boolean present;
+
+    private CacheOptionalLong(final C cached, final long value, final boolean present) {
+
+        this.cached = cached;
+        this.value = value;
+        this.present = present;
+    }
+
+    static <C> CacheOptionalLong<C> of(final C cached, final long value) {
+        return new CacheOptionalLong<>(cached, value, true);
+    }
+
+    public static <C> CacheOptionalLong<C> empty() {
+
+        @SuppressWarnings("unchecked")
+        CacheOptionalLong<C> t = (CacheOptionalLong<C>) EMPTY;
+        return t;
+    }
+
+    public long getAsLong() {
+
+        if (!present)
+            throw new NoSuchElementException("Absent value");
+        return value;
+    }
+
+    public boolean isPresent() {
+        return present;
+    }
+
+    public void ifPresent(final LongConsumer consumer) {
+
+        if (present)
+            consumer.accept(value);
+    }
+
+    public long orElse(final long defaultValue) {
+        return present ? value : defaultValue;
+    }
+
+    public long orElseGet(final LongSupplier supplier) {
+        return present ? value : supplier.getAsLong();
+    }
+
+    public <T extends Throwable> long orElseThrow(final Supplier<? extends T> exceptionSupplier) throws T {
+
+        if (present)
+            return value;
+
+        throw exceptionSupplier.get();
+    }
+
+    public CacheOptionalLong<C> filter(final LongPredicate predicate) {
+
+        if (!present)
+            return this;
+        return predicate.test(value) ? this : empty();
+    }
+
+    public CacheOptionalLong<C> map(final LongUnaryOperator mapper) {
+
+        if (!present)
+            return this;
+
+        long newValue = mapper.applyAsLong(value);
+        return newValue == value ? this : of(cached, newValue);
+    }
+
+    /**
+     * Maps the value to an object, keeping the cached value.
+     */
+    public <R> CacheOptional<C, R> mapToObj(final LongFunction<R> mapper) {
+        return present ? CacheOptional.withCache(cached, mapper.apply(value)) : CacheOptional.empty();
+    }
+
+    /**
+     * Returns an object CacheOptional holding the cached value, as {@link CacheOptional#load()} does.
+     */
+    public CacheOptional<C, C> load() {
+        return present ? CacheOptional.withCache(cached, cached) : CacheOptional.empty();
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+
+        if (this == obj)
+            return true;
+
+        if (!(obj instanceof CacheOptionalLong))
+            return false;
+
+        CacheOptionalLong<?> other = (CacheOptionalLong<?>) obj;
+        return present == other.present && value == other.value;
+    }
+
+    @Override
+    public int hashCode() {
+        return present ? Long.hashCode(value) : 0;
+    }
+
+    @Override
+    public String toString() {
+        return present
+                ? String.format("CacheOptionalLong[%s, %s]", cached, value)
+                : "CacheOptionalLong.empty";
+    }
+}
@@ -0,0 +1,384 @@
+package com.coopstools.cachemonads;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.Spliterator;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * A reusable, thread safe template of stateless {@link CacheStream} operations. A pipeline is defined once,
+ * through its {@link Builder}, and can then be applied to any number of collections or streams, from any
+ * number of threads, without rebuilding the chain of stream wrappers and stage objects on each call.
+ * <p>
+ * <pre>{@code
+ *      private static final CachePipeline<Parent, Parent> GOOD_PARENTS = CachePipeline.<Parent>builder()
+ *              .cache()
+ *              .map(Parent::getChildren)
+ *              .flatMap(Collection::stream)
+ *              .map(Child::getAttribute1)
+ *              .filter(att -> att > 10)
+ *              .load()
+ *              .build();
+ *
+ *      List<Parent> goodParents = GOOD_PARENTS.apply(parents);
+ * }</pre>
+ * <p>
+ * The stages are optimized when the pipeline is built: adjacent maps and adjacent filters are fused, a
+ * {@code cache} or {@code load} that would copy a reference already held in both slots is dropped, and a
+ * {@code cache} whose value is never loaded is removed. Each element is then run through the remaining stages
+ * in a single loop, without allocating a tuple per stage.
+ * <p>
+ * As with a {@code CacheStream} created by {@code CacheStream.of}, nothing is cached until {@code cache} is
+ * called; loading before then produces null values.
+ *
+ * @param <IN>  The type of the elements the pipeline is applied to
+ * @param <OUT> The type of the accessable values produced by the pipeline
+ */
+public final class CachePipeline<IN, OUT> {
+
+    private static final Object NULL = new Object();
+
+    private final PipelineStage[] stages;
+    private final BiConsumer<Object, BiConsumer<Object, Object>> kernel;
+
+    private CachePipeline(
+            final PipelineStage[] stages, final BiConsumer<Object, BiConsumer<Object, Object>> kernel) {
+
+        this.stages = stages;
+        this.kernel = kernel;
+    }
+
+    /**
+     * Returns an empty builder, whose pipeline would pass every element through unchanged.
+     *
+     * @param <T> The type of the elements the pipeline will be applied to
+     * @return a new builder
+     */
+    public static <T> Builder<T, T, T> builder() {
+        return new Builder<>(Collections.emptyList());
+    }
+
+    /**
+     * Runs every element of the collection through the pipeline, and returns the accessable values that come
+     * out of it, in encounter order.
+     *
+     * @param source The elements to run through the pipeline
+     * @return a new list of the resulting accessable values
+     */
+    public List<OUT> apply(final Collection<? extends IN> source) {
+
+        List<OUT> results = new ArrayList<>(source.size());
+        @SuppressWarnings("unchecked")
+        BiConsumer<Object, Object> sink = (cache, value) -> results.add((OUT) value);
+        for (IN element : source)
+            push(element, sink);
+        return results;
+    }
+
+    /**
+     * Returns a lazy stream of the accessable values produced by running the elements of the source through
+     * the pipeline. The returned stream is parallel if the source is, and closing it closes the source.
+     *
+     * @param source The elements to run through the pipeline
+     * @return a stream of the resulting accessable values
+     */
+    public Stream<OUT> apply(final Stream<? extends IN> source) {
+
+        return StreamSupport.stream(new PipelineSpliterator<>(source.spliterator()), source.isParallel())
+                .onClose(source::close);
+    }
+
+    /**
+     * Runs a single element through the pipeline, and passes each resulting accessable value to the action.
+     *
+     * @param element The element to run through the pipeline
+     * @param action  The action performed on each resulting accessable value
+     */
+    @SuppressWarnings("unchecked")
+    public void forEach(final IN element, final Consumer<? super OUT> action) {
+
+        push(element, (cache, value) -> action.accept((OUT) value));
+    }
+
+    /**
+     * Runs one element through the stages, starting with a null cache as {@code CacheStream.of} does.
+     */
+    void push(final Object element, final BiConsumer<Object, Object> sink) {
+
+        if (kernel != null)
+            kernel.accept(element, sink);
+        else
+            run(0, null, element, sink);
+    }
+
+    boolean isCompiled() {
+        return kernel != null;
+    }
+
+    private void run(final int from, Object cache, Object value, final BiConsumer<Object, Object> sink) {
+
+        for (int i = from; i < stages.length; i++) {
+            PipelineStage stage = stages[i];
+            switch (stage.kind) {
+                case PipelineStage.CACHE:
+                    cache = value;
+                    break;
+                case PipelineStage.LOAD:
+                    value = cache;
+                    break;
+                case PipelineStage.MAP:
+                    value = stage.mapper().apply(value);
+                    break;
+                case PipelineStage.FILTER:
+                    if (!stage.predicate().test(value))
+                        return;
+                    break;
+                case PipelineStage.PEEK:
+                    stage.action().accept(value);
+                    break;
+                default:
+                    int next = i + 1;
+                    Object flatCache = cache;
+                    try (Stream<Object> subStream = stage.streamMapper().apply(value)) {
+                        if (subStream != null)
+                            subStream.forEachOrdered(subValue -> run(next, flatCache, subValue, sink));
+                    }
+                    return;
+            }
+        }
+        sink.accept(cache, value);
+    }
+
+    @Override
+    public String toString() {
+
+        return Arrays.stream(stages)
+                .map(PipelineStage::name)
+                .collect(Collectors.joining(" -> ", "CachePipeline[", "]"));
+    }
+
+    /**
+     * Drops stages that cannot change the result, and fuses adjacent maps and filters, so that fewer stages
+     * are dispatched per element. Dropping a {@code load} can leave its {@code cache} unused, so the passes are
+     * repeated until nothing changes. Functions are not fused for compiled pipelines, as the composed function
+     * would hide the classes of the functions it calls from the compiler.
+     */
+    private static PipelineStage[] optimize(final List<PipelineStage> defined, final boolean fuseFunctions) {
+
+        List<PipelineStage> optimized = defined;
+        int size;
+        do {
+            size = optimized.size();
+            optimized = fuse(removeUnloadedCaches(optimized), fuseFunctions);
+        } while (optimized.size() < size);
+
+        return optimized.toArray(new PipelineStage[optimized.size()]);
+    }
+
+    private static List<PipelineStage> removeUnloadedCaches(final List<PipelineStage> stages) {
+
+        List<PipelineStage> live = new ArrayList<>(stages.size());
+        boolean loadAhead = false;
+        for (int i = stages.size() - 1; i >= 0; i--) {
+            PipelineStage stage = stages.get(i);
+            if (stage.kind == PipelineStage.CACHE && !loadAhead)
+                continue;
+            loadAhead |= stage.kind == PipelineStage.LOAD;
+            live.add(stage);
+        }
+        Collections.reverse(live);
+        return live;
+    }
+
+    private static List<PipelineStage> fuse(final List<PipelineStage> stages, final boolean fuseFunctions) {
+
+        List<PipelineStage> fused = new ArrayList<>(stages.size());
+        boolean aliased = false;
+        for (PipelineStage stage : stages) {
+            PipelineStage previous = fused.isEmpty() ? null : fused.get(fused.size() - 1);
+            switch (stage.kind) {
+                case PipelineStage.CACHE:
+                case PipelineStage.LOAD:
+                    if (!aliased)
+                        fused.add(stage);
+                    aliased = true;
+                    break;
+                case PipelineStage.MAP:
+                    if (fuseFunctions && previous != null && previous.kind == PipelineStage.MAP)
+                        fused.set(fused.size() - 1, PipelineStage.map(previous.mapper().andThen(stage.mapper())));
+                    else
+                        fused.add(stage);
+                    aliased = false;
+                    break;
+                case PipelineStage.FILTER:
+                    if (fuseFunctions && previous != null && previous.kind == PipelineStage.FILTER)
+                        fused.set(fused.size() - 1, PipelineStage.filter(previous.predicate().and(stage.predicate())));
+                    else
+                        fused.add(stage);
+                    break;
+                case PipelineStage.FLAT_MAP:
+                    fused.add(stage);
+                    aliased = false;
+                    break;
+                default:
+                    fused.add(stage);
+            }
+        }
+        return fused;
+    }
+
+    /**
+     * An immutable, step by step definition of a {@link CachePipeline}. Each method returns a new builder, so a
+     * partially defined pipeline may be shared and extended in different ways.
+     *
+     * @param <IN> The type of the elements the pipeline will be applied to
+     * @param <C>  The type of the value in cache after the stages defined so far
+     * @param <V>  The type of the accessable value after the stages defined so far
+     */
+    public static final class Builder<IN, C, V> {
+
+        private final List<PipelineStage> stages;
+
+        private Builder(final List<PipelineStage> stages) {
+            this.stages = stages;
+        }
+
+        private <NC, NV> Builder<IN, NC, NV> then(final PipelineStage stage) {
+
+            List<PipelineStage> extended = new ArrayList<>(stages.size() + 1);
+            extended.addAll(stages);
+            extended.add(stage);
+            return new Builder<>(Collections.unmodifiableList(extended));
+        }
+
+        public Builder<IN, V, V> cache() {
+            return then(PipelineStage.cache());
+        }
+
+        public Builder<IN, C, C> load() {
+            return then(PipelineStage.load());
+        }
+
+        @SuppressWarnings("unchecked")
+        public <R> Builder<IN, C, R> map(final Function<? super V, ? extends R> mapper) {
+
+            Objects.requireNonNull(mapper, "Mapping function must not be null");
+            return then(PipelineStage.map((Function<Object, Object>) mapper));
+        }
+
+        @SuppressWarnings("unchecked")
+        public Builder<IN, C, V> filter(final Predicate<? super V> predicate) {
+
+            Objects.requireNonNull(predicate, "Predicate must not be null");
+            return then(PipelineStage.filter((Predicate<Object>) predicate));
+        }
+
+        @SuppressWarnings("unchecked")
+        public Builder<IN, C, V> peek(final Consumer<? super V> action) {
+
+            Objects.requireNonNull(action, "Peek action must not be null");
+            return then(PipelineStage.peek((Consumer<Object>) action));
+        }
+
+        @SuppressWarnings("unchecked")
+        public <R> Builder<IN, C, R> flatMap(final Function<? super V, ? extends Stream<? extends R>> mapper) {
+
+            Objects.requireNonNull(mapper, "Mapping function must not be null");
+            return then(PipelineStage.flatMap((Function<Object, Stream<Object>>) (Function<?, ?>) mapper));
+        }
+
+        /**
+         * Optimizes the stages defined so far, and returns them as a reusable pipeline.
+         *
+         * @return the new pipeline
+         */
+        public CachePipeline<IN, V> build() {
+            return new CachePipeline<>(optimize(stages, true), null);
+        }
+
+        /**
+         * Optimizes the stages defined so far, and compiles them into a class dedicated to this pipeline's
+         * shape, so that the JIT can inline every function into a single loop. Compiled classes are shared by
+         * every pipeline with the same kinds of stages calling the same classes of functions.
+         * <p>
+         * If compilation is disabled, or the pipeline cannot be compiled, this behaves exactly as
+         * {@link #build()}.
+         *
+         * @return the new pipeline
+         */
+        public CachePipeline<IN, V> compile() {
+
+            PipelineStage[] optimized = optimize(stages, false);
+            BiConsumer<Object, BiConsumer<Object, Object>> kernel = PipelineCompiler.compile(optimized);
+            return kernel == null ? build() : new CachePipeline<>(optimized, kernel);
+        }
+    }
+
+    /**
+     * Pulls source elements through the pipeline one at a time, buffering the values produced by a flatMap
+     * until they are consumed.
+     */
+    private final class PipelineSpliterator<T> implements Spliterator<OUT> {
+
+        private final Spliterator<? extends T> source;
+        private final ArrayDeque<Object> buffer = new ArrayDeque<>();
+        private final BiConsumer<Object, Object> buffering = (cache, value) -> buffer.add(value == null ? NULL : value);
+        private final Consumer<Object> pushing = element -> push(element, buffering);
+
+        private PipelineSpliterator(final Spliterator<? extends T> source) {
+            this.source = source;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public boolean tryAdvance(final Consumer<? super OUT> action) {
+
+            while (buffer.isEmpty()) {
+                if (!source.tryAdvance(pushing))
+                    return false;
+            }
+            Object value = buffer.poll();
+            action.accept(value == NULL ? null : (OUT) value);
+            return true;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public void forEachRemaining(final Consumer<? super OUT> action) {
+
+            while (!buffer.isEmpty()) {
+                Object buffered = buffer.poll();
+                action.accept(buffered == NULL ? null : (OUT) buffered);
+            }
+            source.forEachRemaining(element -> push(element, (cache, result) -> action.accept((OUT) result)));
+        }
+
+        @Override
+        public Spliterator<OUT> trySplit() {
+
+            Spliterator<? extends T> prefix = source.trySplit();
+            return prefix == null ? null : new PipelineSpliterator<>(prefix);
+        }
+
+        @Override
+        public long estimateSize() {
+            return source.estimateSize();
+        }
+
+        @Override
+        public int characteristics() {
+            return source.characteristics() & ORDERED;
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package com.coopstools.cachemonads;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+
+/**
+ * A Reactive Streams {@link Publisher} of the results of a CacheStream pipeline, produced by
+ * {@link CacheStream#publisher()} or {@link CacheStream#pairPublisher()}. On Java 9 and later, it is also a
+ * {@code java.util.concurrent.Flow.Publisher}.
+ * <p>
+ * The pipeline is driven by demand: nothing runs until the subscriber requests elements, and no more elements
+ * are pulled through the pipeline than have been requested, so the results are never held in memory. Elements
+ * are emitted in batches of up to 128 per turn, so a subscriber that requests many at once pays for one demand
+ * update per batch rather than per element. Cancelling, completing or failing closes the stream. A stream of
+ * known size completes along with its last element; any other completes once a request finds it exhausted.
+ * <p>
+ * A CacheStream can only be run once, so a CachePublisher accepts a single subscriber; any later one is sent an
+ * {@link IllegalStateException}.
+ *
+ * @param <T> The type of the published elements
+ */
+public final class CachePublisher<T> implements Publisher<T> {
+
+    private final Stream<T> stream;
+    private final AtomicBoolean subscribed = new AtomicBoolean();
+
+    CachePublisher(final Stream<T> stream) {
+        this.stream = stream;
+    }
+
+    @Override
+    public void subscribe(final Subscriber<? super T> subscriber) {
+        StreamSubscription.subscribe(stream, subscribed, subscriber);
+    }
+}
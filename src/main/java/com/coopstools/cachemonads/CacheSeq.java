@@ -0,0 +1,180 @@
+package com.coopstools.cachemonads;
+
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.stream.StreamSupport;
+
+/**
+ * An immutable, replayable sequence of cache/accessable value pairs, produced by
+ * {@link CacheStream#materialize()}. The pairs are stored in two parallel arrays, so that the sequence can be
+ * streamed any number of times, without rerunning the pipeline that produced it.
+ * <p>
+ * <pre>{@code
+ *      CacheSeq<Parent, Integer> matches = CacheStream.of(parents)
+ *              .cache()
+ *              .map(Parent::getAge)
+ *              .filter(age -> age > 30)
+ *              .materialize();
+ *
+ *      long count = matches.size();
+ *      List<Parent> oldest = matches.stream().sorted().load().limit(10).collect(Collectors.toList());
+ * }</pre>
+ *
+ * @param <C> The type of the cached values
+ * @param <V> The type of the accessable values
+ */
+public final class CacheSeq<C, V> {
+
+    private static final CacheSeq<?, ?> EMPTY = new CacheSeq<>(new Object[0], new Object[0]);
+
+    private final Object[] caches;
+    private final Object[] values;
+
+    private CacheSeq(final Object[] caches, final Object[] values) {
+
+        this.caches = caches;
+        this.values = values;
+    }
+
+    static <C, V> CacheSeq<C, V> fromTuples(final Object[] tuples) {
+
+        if (tuples.length == 0)
+            return empty();
+
+        Object[] caches = new Object[tuples.length];
+        Object[] values = new Object[tuples.length];
+        for (int i = 0; i < tuples.length; i++) {
+            CacheTuple<?, ?> tuple = (CacheTuple<?, ?>) tuples[i];
+            caches[i] = tuple.getLeft();
+            values[i] = tuple.getRight();
+        }
+        return new CacheSeq<>(caches, values);
+    }
+
+    public static <C, V> CacheSeq<C, V> empty() {
+
+        @SuppressWarnings("unchecked")
+        CacheSeq<C, V> t = (CacheSeq<C, V>) EMPTY;
+        return t;
+    }
+
+    public int size() {
+        return values.length;
+    }
+
+    public boolean isEmpty() {
+        return values.length == 0;
+    }
+
+    /**
+     * Returns the cached value at the given position.
+     *
+     * @param index The position of the pair, starting at zero
+     * @return the cached value, which may be null if nothing was cached
+     * @throws IndexOutOfBoundsException if the index is not within the sequence
+     */
+    @SuppressWarnings("unchecked")
+    public C getCache(final int index) {
+        return (C) caches[checkIndex(index)];
+    }
+
+    /**
+     * Returns the accessable value at the given position.
+     *
+     * @param index The position of the pair, starting at zero
+     * @return the accessable value
+     * @throws IndexOutOfBoundsException if the index is not within the sequence
+     */
+    @SuppressWarnings("unchecked")
+    public V getValue(final int index) {
+        return (V) values[checkIndex(index)];
+    }
+
+    /**
+     * Returns a new, sequential CacheStream over the pairs in this sequence. Each call returns an independent
+     * stream; the sequence itself is never consumed.
+     *
+     * @return a sequential CacheStream
+     */
+    public CacheStream<C, V> stream() {
+        return new CacheStream<>(StreamSupport.stream(new SeqSpliterator(0, values.length), false));
+    }
+
+    /**
+     * Returns a new, parallel CacheStream over the pairs in this sequence. As the size of the sequence is
+     * known, the stream is split into evenly sized halves.
+     *
+     * @return a parallel CacheStream
+     */
+    public CacheStream<C, V> parallelStream() {
+        return new CacheStream<>(StreamSupport.stream(new SeqSpliterator(0, values.length), true));
+    }
+
+    private int checkIndex(final int index) {
+
+        if (index < 0 || index >= values.length)
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + values.length);
+        return index;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("CacheSeq[size=%d]", values.length);
+    }
+
+    private final class SeqSpliterator implements Spliterator<CacheTuple<C, V>> {
+
+        private int origin;
+        private final int fence;
+
+        private SeqSpliterator(final int origin, final int fence) {
+
+            this.origin = origin;
+            this.fence = fence;
+        }
+
+        @Override
+        public boolean tryAdvance(final Consumer<? super CacheTuple<C, V>> action) {
+
+            if (origin >= fence)
+                return false;
+            action.accept(tupleAt(origin++));
+            return true;
+        }
+
+        @Override
+        public void forEachRemaining(final Consumer<? super CacheTuple<C, V>> action) {
+
+            for (int i = origin; i < fence; i++)
+                action.accept(tupleAt(i));
+            origin = fence;
+        }
+
+        @Override
+        public Spliterator<CacheTuple<C, V>> trySplit() {
+
+            int middle = (origin + fence) >>> 1;
+            if (middle <= origin)
+                return null;
+
+            SeqSpliterator prefix = new SeqSpliterator(origin, middle);
+            origin = middle;
+            return prefix;
+        }
+
+        @Override
+        public long estimateSize() {
+            return fence - origin;
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED | SIZED | SUBSIZED | IMMUTABLE;
+        }
+
+        @SuppressWarnings("unchecked")
+        private CacheTuple<C, V> tupleAt(final int index) {
+            return new CacheTuple<>((C) caches[index], (V) values[index]);
+        }
+    }
+}
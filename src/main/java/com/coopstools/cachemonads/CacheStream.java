@@ -1,16 +1,35 @@
 package com.coopstools.cachemonads;
 
+import java.time.Duration;
+import java.util.AbstractMap;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.SortedSet;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.BiFunction;
 import java.util.function.BinaryOperator;
 import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.function.IntFunction;
 import java.util.function.Predicate;
+import java.util.function.ToDoubleFunction;
+import java.util.function.ToLongFunction;
 import java.util.stream.Collector;
 import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * An extension of the java utils {@link Stream} that allows the caching of a reference
@@ -53,6 +72,9 @@ import java.util.stream.Stream;
 public class CacheStream<CACHE, VALUE> {
 
     private final Stream<CacheTuple<CACHE, VALUE>> innerStream;
+    private final StreamPlan plan;
+    private final Comparator<CacheTuple<CACHE, VALUE>> pendingSort;
+    private final PipelineProbes probes;
 
     /**
      * Returns an instance of the CacheStream, which acts as an adapter for the java utils {@code Stream},
@@ -60,8 +82,35 @@ public class CacheStream<CACHE, VALUE> {
      *
      * @param innerStream A {@code Stream} of tuples which is contained in the CacheStream
      */
-    private CacheStream(Stream<CacheTuple<CACHE, VALUE>> innerStream) {
+    CacheStream(Stream<CacheTuple<CACHE, VALUE>> innerStream) {
+        this(innerStream, StreamPlan.source("source", 0));
+    }
+
+    CacheStream(Stream<CacheTuple<CACHE, VALUE>> innerStream, StreamPlan plan) {
+        this(innerStream, plan, null, null);
+    }
+
+    /**
+     * Returns an instance of the CacheStream whose inner stream has yet to be sorted. Sorting is deferred
+     * until an operation needs the sorted order, so that it can be skipped by operations that don't (such as
+     * count), replaced by cheaper ones (such as findFirst or limit), or moved after operations that remove
+     * elements (such as filter).
+     *
+     * @param innerStream A {@code Stream} of tuples which is contained in the CacheStream
+     * @param plan        The logical plan of the operations that produced the inner stream
+     * @param pendingSort The order in which the inner stream is to be sorted, or null if no sort is pending
+     * @param probes      The probes of the instrumented stages, or null if the stream is not instrumented
+     */
+    private CacheStream(
+            final Stream<CacheTuple<CACHE, VALUE>> innerStream,
+            final StreamPlan plan,
+            final Comparator<CacheTuple<CACHE, VALUE>> pendingSort,
+            final PipelineProbes probes) {
+
         this.innerStream = innerStream;
+        this.plan = plan;
+        this.pendingSort = pendingSort;
+        this.probes = probes;
     }
 
     /**
@@ -75,7 +124,9 @@ public class CacheStream<CACHE, VALUE> {
      */
     public static <V> CacheStream<V, V> of(final Collection<V> collection) {
 
-        return new CacheStream<>(collection.stream().map(CacheStream::makeTuple));
+        return new CacheStream<>(
+                collection.stream().map(CacheStream::makeTuple),
+                StreamPlan.source("source(collection)", characteristicsOf(collection)));
     }
 
     /**
@@ -89,7 +140,7 @@ public class CacheStream<CACHE, VALUE> {
      */
     public static <V> CacheStream<V, V> of(final Stream<V> stream) {
 
-        return new CacheStream<>(stream.map(CacheStream::makeTuple));
+        return new CacheStream<>(stream.map(CacheStream::makeTuple), StreamPlan.source("source(stream)", 0));
     }
 
     /**
@@ -103,7 +154,61 @@ public class CacheStream<CACHE, VALUE> {
      */
     public static <V> CacheStream<V, V> parrallelOf(final Collection<V> collection) {
 
-        return new CacheStream<>(collection.parallelStream().map(CacheStream::makeTuple));
+        return new CacheStream<>(
+                collection.parallelStream().map(CacheStream::makeTuple),
+                StreamPlan.source("source(parallel collection)", characteristicsOf(collection)));
+    }
+
+    /**
+     * Returns a CacheStream that merges CacheStreams which are each already sorted by the comparator, such as
+     * sorted shards of the same data. The merge is lazy: it holds only the next pair of each stream in a heap,
+     * rather than buffering and sorting everything. Each pair keeps its cached value, and pairs that compare as
+     * equal come out in the order of the streams they came from.
+     * <p>
+     * The merged stream is known to be sorted, so sorting it again by the same comparator is skipped. It is
+     * sequential, and closing it closes every merged stream. If a stream is not sorted by the comparator, the
+     * merged stream will not be either.
+     *
+     * @param <C>        The type of the cached values
+     * @param <V>        The type of the accessable values
+     * @param comparator The comparator each of the streams is sorted by
+     * @param streams    The sorted CacheStreams to merge
+     * @return the merged CacheStream
+     */
+    @SafeVarargs
+    public static <C, V> CacheStream<C, V> mergeSorted(
+            final Comparator<? super V> comparator, final CacheStream<C, V>... streams) {
+
+        List<Stream<CacheTuple<C, V>>> sources = new ArrayList<>(streams.length);
+        for (CacheStream<C, V> stream : streams)
+            sources.add(stream.resolved());
+
+        Comparator<CacheTuple<C, V>> byValue = (t1, t2) -> comparator.compare(t1.getRight(), t2.getRight());
+        Stream<CacheTuple<C, V>> merged = StreamSupport.stream(() -> {
+            List<Iterator<CacheTuple<C, V>>> iterators = new ArrayList<>(sources.size());
+            for (Stream<CacheTuple<C, V>> source : sources)
+                iterators.add(source.iterator());
+            return Spliterators.spliteratorUnknownSize(new SortedMerge<>(iterators, byValue), Spliterator.ORDERED);
+        }, Spliterator.ORDERED, false)
+                .onClose(() -> sources.forEach(Stream::close));
+
+        Object order = comparator == Comparator.naturalOrder() ? StreamPlan.NATURAL_ORDER : comparator;
+        return new CacheStream<>(
+                merged, StreamPlan.sortedSource("mergeSorted(" + streams.length + " streams)", 0, order));
+    }
+
+    /**
+     * Returns what is known about the order and uniqueness of a collection's elements. Hash sets never hold
+     * elements that are equal, and sorted sets without a comparator are in natural order, which distinguishes
+     * unequal elements. Other sets may use a notion of sameness other than {@code equals}, such as identity or a
+     * comparator, so they are not known to be distinct in the sense of {@link #distinct()}.
+     */
+    private static int characteristicsOf(final Collection<?> collection) {
+
+        if (collection instanceof SortedSet && ((SortedSet<?>) collection).comparator() == null)
+            return StreamPlan.DISTINCT | StreamPlan.SORTED;
+        Class<?> type = collection.getClass();
+        return type == HashSet.class || type == LinkedHashSet.class ? StreamPlan.DISTINCT : 0;
     }
 
     /**
@@ -129,9 +234,13 @@ public class CacheStream<CACHE, VALUE> {
      */
     public CacheStream<VALUE, VALUE> cache() {
 
+        if (plan.has(StreamPlan.ALIASED))
+            return retyped(innerStream, plan.elide("cache"));
+
         Stream<CacheTuple<VALUE, VALUE>> cachedStream =
-                innerStream.map(pair -> new CacheTuple<>(pair.getRight(), pair.getRight()));
-        return new CacheStream<>(cachedStream);
+                innerStream.map(instrumented("cache", pair -> new CacheTuple<>(pair.getRight(), pair.getRight())));
+        return retyped(cachedStream, plan.then(
+                belowPendingSort("cache"), plan.characteristics() | StreamPlan.ALIASED));
     }
 
     /**
@@ -141,9 +250,12 @@ public class CacheStream<CACHE, VALUE> {
      */
     public CacheStream<CACHE, CACHE> load() {
 
+        if (plan.has(StreamPlan.ALIASED))
+            return retyped(innerStream, plan.elide("load"));
+
         Stream<CacheTuple<CACHE, CACHE>> cachedStream =
-                innerStream.map(pair -> new CacheTuple<>(pair.getLeft(), pair.getLeft()));
-        return new CacheStream<>(cachedStream);
+                resolved().map(instrumented("load", pair -> new CacheTuple<>(pair.getLeft(), pair.getLeft())));
+        return next(cachedStream, plan.then("load", StreamPlan.ALIASED));
     }
 
     /**
@@ -156,7 +268,9 @@ public class CacheStream<CACHE, VALUE> {
      */
     public void forEach(final Consumer<VALUE> action) {
 
-        innerStream.forEach(pair -> action.accept(pair.getRight()));
+        EventProbe event = terminalEvent("forEach");
+        observed(event, resolved()).forEach(pair -> action.accept(pair.getRight()));
+        complete(event);
     }
 
     /**
@@ -171,7 +285,9 @@ public class CacheStream<CACHE, VALUE> {
      */
     public void forEachOrdered(final Consumer<VALUE> action) {
 
-        innerStream.forEachOrdered(pair -> action.accept(pair.getRight()));
+        EventProbe event = terminalEvent("forEachOrdered");
+        observed(event, resolved()).forEachOrdered(pair -> action.accept(pair.getRight()));
+        complete(event);
     }
 
     /**
@@ -187,10 +303,43 @@ public class CacheStream<CACHE, VALUE> {
      * @return A post filter CacheStream
      */
     public CacheStream<CACHE, VALUE> filter(final Predicate<VALUE> predicate) {
+        return filtered("filter", predicate);
+    }
+
+    /**
+     * Returns a CacheStream of the accessable values whose key is in the membership, such as an allow-list of
+     * ids. Each value keeps its cached value.
+     * <p>
+     * This is an intermediate operation.
+     *
+     * @param membership The keys to keep
+     * @param key        A non-interfering, stateless function returning the key of an accessable value
+     * @return the filtered CacheStream
+     */
+    public CacheStream<CACHE, VALUE> filterIn(final LongMembership membership, final ToLongFunction<VALUE> key) {
+        return filtered("filterIn", value -> membership.contains(key.applyAsLong(value)));
+    }
+
+    /**
+     * Returns a CacheStream of the accessable values whose key is not in the membership, such as a deny-list
+     * of ids. Each value keeps its cached value.
+     * <p>
+     * This is an intermediate operation.
+     *
+     * @param membership The keys to drop
+     * @param key        A non-interfering, stateless function returning the key of an accessable value
+     * @return the filtered CacheStream
+     */
+    public CacheStream<CACHE, VALUE> filterNotIn(final LongMembership membership, final ToLongFunction<VALUE> key) {
+        return filtered("filterNotIn", value -> !membership.contains(key.applyAsLong(value)));
+    }
 
+    private CacheStream<CACHE, VALUE> filtered(final String operation, final Predicate<VALUE> predicate) {
+
+        Predicate<VALUE> test = probes == null ? predicate : probes.stage(operation).filter(predicate);
         Stream<CacheTuple<CACHE, VALUE>> filteredStream =
-                innerStream.filter(pair -> predicate.test(pair.getRight()));
-        return new CacheStream<>(filteredStream);
+                innerStream.filter(pair -> test.test(pair.getRight()));
+        return next(filteredStream, plan.then(belowPendingSort(operation)), pendingSort);
     }
 
     /**
@@ -206,10 +355,11 @@ public class CacheStream<CACHE, VALUE> {
      */
     public <R> CacheStream<CACHE, R> map(final Function<VALUE, R> mapper) {
 
+        Function<VALUE, R> function = instrumented("map", mapper);
         Stream<CacheTuple<CACHE, R>> mappedStream =
-                innerStream.map(pair ->
-                        new CacheTuple<>(pair.getLeft(), mapper.apply(pair.getRight())));
-        return new CacheStream<>(mappedStream);
+                resolved().map(pair ->
+                        new CacheTuple<>(pair.getLeft(), function.apply(pair.getRight())));
+        return next(mappedStream, plan.then("map", 0));
     }
 
     /**
@@ -226,9 +376,10 @@ public class CacheStream<CACHE, VALUE> {
      */
     public <RV> CacheStream<CACHE, RV> flatMap(final Function<VALUE, Stream<RV>> mapper) {
 
+        Function<VALUE, Stream<RV>> function = probes == null ? mapper : probes.stage("flatMap").flatMap(mapper);
         Stream<CacheTuple<CACHE, RV>> mappedStream =
-                innerStream.flatMap(pair -> this.subFlatMap(pair, mapper));
-        return new CacheStream<>(mappedStream);
+                resolved().flatMap(pair -> this.subFlatMap(pair, function));
+        return next(mappedStream, plan.then("flatMap", 0));
     }
 
     private <RV> Stream<CacheTuple<CACHE, RV>> subFlatMap(
@@ -250,80 +401,555 @@ public class CacheStream<CACHE, VALUE> {
      */
     public CacheStream<CACHE, VALUE> distinct() {
 
-        Stream<CacheTuple<CACHE, VALUE>> distinctStream =
-                innerStream.distinct();
-        return new CacheStream<>(distinctStream);
+        if (plan.has(StreamPlan.DISTINCT))
+            return next(innerStream, plan.elide("distinct"), pendingSort);
+
+        EventProbe event = EventProbe.streaming("distinct", plan, innerStream.isParallel());
+        Stream<CacheTuple<CACHE, VALUE>> distinctStream = counted("distinct", resolved(), Stream::distinct, event);
+        return next(
+                distinctStream,
+                plan.then("distinct", plan.characteristics() | StreamPlan.DISTINCT).withEvent(event));
+    }
+
+    /**
+     * Returns a CacheStream pairing each accessable value with each row of the collection that has an equal
+     * key. Values with no matching row are dropped; values with several are repeated, once per row. Each pair
+     * keeps the cached value of the accessable value it was built from.
+     * <p>
+     * The rows are put in a hash table, so the join costs one pass over each side rather than a scan of the
+     * rows per value. If the stream knows its size, and it is smaller than the collection, the table is built
+     * from the stream instead. The pairs come out in the order of the stream, and for each value, in the order
+     * of the rows.
+     * <p>
+     * This is a stateful intermediate operation.
+     *
+     * @param <R>      The type of the rows
+     * @param <K>      The type of the join key
+     * @param rows     The rows to join against
+     * @param valueKey A non-interfering, stateless function returning the key of an accessable value
+     * @param rowKey   A non-interfering, stateless function returning the key of a row
+     * @return a CacheStream of each accessable value paired with a matching row
+     */
+    public <R, K> CacheStream<CACHE, Map.Entry<VALUE, R>> join(
+            final Collection<R> rows,
+            final Function<VALUE, K> valueKey,
+            final Function<R, K> rowKey) {
+
+        HashJoin<CACHE, VALUE, R, K> join = new HashJoin<>(rows, valueKey, rowKey);
+        EventProbe event = EventProbe.streaming("join", plan, innerStream.isParallel());
+        Stream<CacheTuple<CACHE, Map.Entry<VALUE, R>>> joinedStream =
+                counted("join", resolved(), upstream -> join.pairs(upstream, false), event);
+        return next(joinedStream, plan.then("join", 0).withEvent(event));
+    }
+
+    /**
+     * Returns a CacheStream pairing each accessable value with each row of the collection that has an equal
+     * key, as {@link #join(Collection, Function, Function)} does; except that values with no matching row are
+     * kept, paired with null.
+     * <p>
+     * This is a stateful intermediate operation.
+     *
+     * @param <R>      The type of the rows
+     * @param <K>      The type of the join key
+     * @param rows     The rows to join against
+     * @param valueKey A non-interfering, stateless function returning the key of an accessable value
+     * @param rowKey   A non-interfering, stateless function returning the key of a row
+     * @return a CacheStream of each accessable value paired with a matching row, or with null
+     */
+    public <R, K> CacheStream<CACHE, Map.Entry<VALUE, R>> leftJoin(
+            final Collection<R> rows,
+            final Function<VALUE, K> valueKey,
+            final Function<R, K> rowKey) {
+
+        HashJoin<CACHE, VALUE, R, K> join = new HashJoin<>(rows, valueKey, rowKey);
+        EventProbe event = EventProbe.streaming("leftJoin", plan, innerStream.isParallel());
+        Stream<CacheTuple<CACHE, Map.Entry<VALUE, R>>> joinedStream =
+                counted("leftJoin", resolved(), upstream -> join.pairs(upstream, true), event);
+        return next(joinedStream, plan.then("leftJoin", 0).withEvent(event));
+    }
+
+    /**
+     * Returns a CacheStream of the accessable values that have at least one row of the collection with an
+     * equal key. Each value is kept once, however many rows match it, along with its cached value. This
+     * replaces filtering each value by a scan of the rows.
+     * <p>
+     * This is a stateful intermediate operation.
+     *
+     * @param <R>      The type of the rows
+     * @param <K>      The type of the join key
+     * @param rows     The rows to match against
+     * @param valueKey A non-interfering, stateless function returning the key of an accessable value
+     * @param rowKey   A non-interfering, stateless function returning the key of a row
+     * @return a CacheStream of the accessable values with a matching row
+     */
+    public <R, K> CacheStream<CACHE, VALUE> semiJoin(
+            final Collection<R> rows,
+            final Function<VALUE, K> valueKey,
+            final Function<R, K> rowKey) {
+
+        HashJoin<CACHE, VALUE, R, K> join = new HashJoin<>(rows, valueKey, rowKey);
+        EventProbe event = EventProbe.streaming("semiJoin", plan, innerStream.isParallel());
+        Stream<CacheTuple<CACHE, VALUE>> joinedStream =
+                counted("semiJoin", innerStream, join::matching, event);
+        return next(joinedStream, plan.then(belowPendingSort("semiJoin")).withEvent(event), pendingSort);
     }
 
     //TODO: Create flatmap that returns CacheStream, but takes a bi-function as an argument
     //TODO: Create flatmap that takes java.utils.Stream as a return value, instead of CacheStream
 
+    /**
+     * Returns a CacheStream sorted by the natural order of the accessable values. Each accessable value keeps its
+     * association with its cached value. For ordered streams, the sort is stable.
+     * <p>
+     * This is a stateful intermediate operation. The sort is deferred until a later operation needs the
+     * elements in order, and is skipped if the stream is already in natural order.
+     *
+     * @return the sorted CacheStream
+     */
     public CacheStream<CACHE, VALUE> sorted() {
 
-        Stream<CacheTuple<CACHE, VALUE>> sortedStream =
-                innerStream.sorted();
-        return new CacheStream<>(sortedStream);
+        if (plan.isSortedBy(StreamPlan.NATURAL_ORDER))
+            return next(innerStream, plan.elide("sorted(natural)"), pendingSort);
+
+        return deferSort(CacheTuple::compareTo, "sorted(natural)", StreamPlan.NATURAL_ORDER);
     }
 
+    /**
+     * Returns a CacheStream sorted by the supplied comparator on the accessable values. Each accessable value
+     * keeps its association with its cached value. For ordered streams, the sort is stable.
+     * <p>
+     * This is a stateful intermediate operation. The sort is deferred until a later operation needs the
+     * elements in order, and is skipped if the stream is already sorted by the same comparator.
+     *
+     * @param comparator A non-interfering, stateless comparator of the accessable values
+     * @return the sorted CacheStream
+     */
     public CacheStream<CACHE, VALUE> sorted(final Comparator<VALUE> comparator) {
 
-        Stream<CacheTuple<CACHE, VALUE>> sortedStream =
-                innerStream.sorted((t1, t2) -> comparator.compare(t1.getRight(), t2.getRight()));
-        return new CacheStream<>(sortedStream);
+        if (plan.isSortedBy(comparator))
+            return next(innerStream, plan.elide("sorted(comparator)"), pendingSort);
+
+        return deferSort(
+                (t1, t2) -> comparator.compare(t1.getRight(), t2.getRight()), "sorted(comparator)", comparator);
+    }
+
+    /**
+     * A sort that follows a pending sort is merged with it: a stable sort by the first order, followed by a
+     * stable sort by the second, leaves the elements in the order of the second, then the first.
+     */
+    private CacheStream<CACHE, VALUE> deferSort(
+            final Comparator<CacheTuple<CACHE, VALUE>> comparator, final String step, final Object order) {
+
+        if (pendingSort == null)
+            return next(innerStream, plan.sortedBy(step, order), comparator);
+
+        return next(
+                innerStream,
+                plan.sortedBy(step + " (merged with previous sort)", order),
+                comparator.thenComparing(pendingSort));
+    }
+
+    /**
+     * Returns a CacheStream sorted by the natural order of the accessable values, using an external merge sort
+     * that holds no more elements in memory than the budget given in the options. Sorted runs of cache and
+     * accessable value pairs are spilled to temporary files, and lazily merged as the stream is consumed, so
+     * each value keeps its association with its cached value.
+     * <p>
+     * This is a stateful intermediate operation. The spill files are removed once the merge has consumed them,
+     * or when the returned stream is closed.
+     *
+     * @param externalSort The memory budget, serializers, and spill location used for the sort
+     * @return the sorted CacheStream
+     */
+    public CacheStream<CACHE, VALUE> sorted(final ExternalSort<CACHE, VALUE> externalSort) {
+
+        return externalSorted(externalSort, CacheTuple::compareTo, "externalSorted(natural)", StreamPlan.NATURAL_ORDER);
+    }
+
+    /**
+     * Returns a CacheStream sorted by the supplied comparator on the accessable values, using an external merge
+     * sort bounded by the given options. See {@link #sorted(ExternalSort)}.
+     *
+     * @param comparator   A non-interfering, stateless comparator of the accessable values
+     * @param externalSort The memory budget, serializers, and spill location used for the sort
+     * @return the sorted CacheStream
+     */
+    public CacheStream<CACHE, VALUE> sorted(
+            final Comparator<VALUE> comparator, final ExternalSort<CACHE, VALUE> externalSort) {
+
+        return externalSorted(
+                externalSort,
+                (t1, t2) -> comparator.compare(t1.getRight(), t2.getRight()),
+                "externalSorted(comparator)",
+                comparator);
+    }
+
+    private CacheStream<CACHE, VALUE> externalSorted(
+            final ExternalSort<CACHE, VALUE> externalSort,
+            final Comparator<CacheTuple<CACHE, VALUE>> comparator,
+            final String step,
+            final Object order) {
+
+        Comparator<CacheTuple<CACHE, VALUE>> merged =
+                pendingSort == null ? comparator : comparator.thenComparing(pendingSort);
+        ExternalSorter<CACHE, VALUE> sorter = new ExternalSorter<>(externalSort, merged);
+        return next(sorter.sort(innerStream), plan.sortedBy(step, order));
     }
 
     public CacheStream<CACHE, VALUE> peek(final Consumer<VALUE> consumer) {
 
+        Consumer<VALUE> action = probes == null ? consumer : probes.stage("peek").peek(consumer);
         Stream<CacheTuple<CACHE, VALUE>> peekedStrem =
-                innerStream.peek(pair -> consumer.accept(pair.getRight()));
-        return new CacheStream<>(peekedStrem);
+                resolved().peek(pair -> action.accept(pair.getRight()));
+        return next(peekedStrem, plan.then("peek"));
     }
 
+    /**
+     * Returns a CacheStream of no more than the first {@code limit} elements of this stream. If a sort is
+     * pending, the sort and the limit are replaced by a single pass that keeps only the first {@code limit}
+     * elements in a bounded heap.
+     * <p>
+     * This is a short-circuiting stateful intermediate operation.
+     *
+     * @param limit The maximum number of elements the stream will contain
+     * @return the limited CacheStream
+     */
     public CacheStream<CACHE, VALUE> limit(final long limit) {
 
+        if (pendingSort != null && limit >= 0 && limit <= Integer.MAX_VALUE) {
+            Stream<CacheTuple<CACHE, VALUE>> source = innerStream;
+            Comparator<CacheTuple<CACHE, VALUE>> order = pendingSort;
+            EventProbe event = EventProbe.barrier("limit(top-k)", plan, source.isParallel(), limit);
+            Stream<CacheTuple<CACHE, VALUE>> topStream = counted("limit(top-k)", source, upstream ->
+                    StreamSupport.stream(
+                            () -> upstream.collect(TopK.collector((int) limit, order)).spliterator(),
+                            Spliterator.ORDERED | Spliterator.SIZED | Spliterator.SUBSIZED,
+                            upstream.isParallel())
+                            .onClose(upstream::close),
+                    event);
+            return next(topStream, plan.then("limit(" + limit + ") (top-k of sorted)").withEvent(event));
+        }
+
         Stream<CacheTuple<CACHE, VALUE>> limitedStream =
-                innerStream.limit(limit);
-        return new CacheStream<>(limitedStream);
+                counted("limit", resolved(), upstream -> upstream.limit(limit));
+        return next(limitedStream, plan.then("limit(" + limit + ")"));
+    }
+
+    /**
+     * Returns a CacheStream of a uniform random sample of {@code k} of the cache/accessable value pairs, taken
+     * in a single pass, in O(k) memory. If the stream holds {@code k} pairs or fewer, all of them are kept.
+     * Each split of a parallel stream keeps its own sample, and the samples are merged in proportion to the
+     * number of pairs each split saw. The sampled pairs come out in no particular order; a pending sort is
+     * applied to the sample rather than to the whole stream.
+     * <p>
+     * This is a stateful intermediate operation.
+     *
+     * @param k The number of pairs to sample
+     * @return the sampled CacheStream
+     */
+    public CacheStream<CACHE, VALUE> sample(final int k) {
+        return sampled(k, null);
+    }
+
+    /**
+     * Returns a CacheStream of a uniform random sample of {@code k} of the cache/accessable value pairs, as
+     * {@link #sample(int)} does, with random numbers derived from the seed. A sequential stream over the same
+     * pairs always gives the same sample.
+     * <p>
+     * This is a stateful intermediate operation.
+     *
+     * @param k    The number of pairs to sample
+     * @param seed The seed of the random numbers
+     * @return the sampled CacheStream
+     */
+    public CacheStream<CACHE, VALUE> sample(final int k, final long seed) {
+        return sampled(k, seed);
+    }
+
+    private CacheStream<CACHE, VALUE> sampled(final int k, final Long seed) {
+
+        if (k < 0)
+            throw new IllegalArgumentException("Sample size must not be negative: " + k);
+
+        EventProbe event = EventProbe.barrier("sample", plan, innerStream.isParallel(), k);
+        Stream<CacheTuple<CACHE, VALUE>> sampleStream = counted("sample", innerStream, upstream ->
+                StreamSupport.stream(
+                        () -> upstream.collect(Reservoir.<CacheTuple<CACHE, VALUE>>collector(k, seed)).spliterator(),
+                        Spliterator.SIZED | Spliterator.SUBSIZED,
+                        upstream.isParallel())
+                        .onClose(upstream::close),
+                event);
+        int characteristics = pendingSort == null
+                ? plan.characteristics() & ~StreamPlan.SORTED
+                : plan.characteristics();
+        return next(
+                sampleStream,
+                plan.then(belowPendingSort("sample(" + k + ")"), characteristics).withEvent(event),
+                pendingSort);
     }
 
     public CacheStream<CACHE, VALUE> skip(final long skip) {
 
         Stream<CacheTuple<CACHE, VALUE>> limitedStream =
-                innerStream.skip(skip);
-        return new CacheStream<>(limitedStream);
+                counted("skip", resolved(), upstream -> upstream.skip(skip));
+        return next(limitedStream, plan.then("skip(" + skip + ")"));
+    }
+
+    /**
+     * Returns a CacheStream that stops producing cache/accessable value pairs once the token is cancelled, or its
+     * deadline passes; the terminal operation then completes with the pairs produced so far. The token is checked
+     * once per batch of pairs reaching this point, and before each split of a parallel stream, so every split
+     * stops. A pending sort is applied after the check, so that the sort's input is bounded too.
+     * <p>
+     * Placed just after the source, this bounds the work of stages that drop most pairs, such as a selective
+     * filter, which a check at the end of the pipeline would rarely see.
+     * <p>
+     * This is an intermediate operation.
+     *
+     * @param token The token that stops the stream
+     * @return the cancellable CacheStream
+     */
+    public CacheStream<CACHE, VALUE> cancellable(final CancellationToken token) {
+
+        Objects.requireNonNull(token, "Cancellation token must not be null");
+        return cancellable(token, null);
+    }
+
+    private CacheStream<CACHE, VALUE> cancellable(final CancellationToken token, final AtomicBoolean aborted) {
+
+        Stream<CacheTuple<CACHE, VALUE>> checkedStream = counted(
+                "cancellable", innerStream, upstream -> CancellableSpliterator.checkpoint(upstream, token, aborted));
+        return next(checkedStream, plan.then(belowPendingSort("cancellable")), pendingSort);
     }
 
+    /**
+     * Returns a CacheStream of the longest prefix of cache/accessable value pairs whose accessable values match
+     * the predicate. The upstream is not pulled any further once a value fails to match, so the rest of an
+     * ordered stream, such as a sorted one, is never computed. On a parallel stream, the prefix is found in
+     * encounter order, and the operations after it still run in parallel.
+     * <p>
+     * This is a short-circuiting stateful intermediate operation.
+     *
+     * @param predicate A non-interfering, stateless predicate of the accessable values
+     * @return the CacheStream of the matching prefix
+     */
+    public CacheStream<CACHE, VALUE> takeWhile(final Predicate<VALUE> predicate) {
+
+        Objects.requireNonNull(predicate, "Predicate must not be null");
+        return prefixed("takeWhile", predicate, true);
+    }
+
+    /**
+     * Returns a CacheStream of the cache/accessable value pairs after the longest prefix whose accessable values
+     * match the predicate. Once a value fails to match, the rest of the stream is passed through without testing.
+     * On a parallel stream, the prefix is found in encounter order.
+     * <p>
+     * This is a stateful intermediate operation.
+     *
+     * @param predicate A non-interfering, stateless predicate of the accessable values
+     * @return the CacheStream of the pairs after the matching prefix
+     */
+    public CacheStream<CACHE, VALUE> dropWhile(final Predicate<VALUE> predicate) {
+
+        Objects.requireNonNull(predicate, "Predicate must not be null");
+        return prefixed("dropWhile", predicate, false);
+    }
+
+    private CacheStream<CACHE, VALUE> prefixed(
+            final String operation, final Predicate<VALUE> predicate, final boolean take) {
+
+        Predicate<CacheTuple<CACHE, VALUE>> matches = tuple -> predicate.test(tuple.getRight());
+        Stream<CacheTuple<CACHE, VALUE>> prefixStream = counted(operation, resolved(), upstream ->
+                StreamSupport.stream(
+                        () -> take
+                                ? WhileSpliterator.taking(upstream.spliterator(), matches)
+                                : WhileSpliterator.dropping(upstream.spliterator(), matches),
+                        Spliterator.ORDERED,
+                        upstream.isParallel())
+                        .onClose(upstream::close));
+        return next(prefixStream, plan.then(operation));
+    }
+
+    /**
+     * Returns a CacheStream of tumbling windows: consecutive, non-overlapping groups of {@code size} cache/accessable
+     * value pairs, in encounter order. The last window holds the remaining pairs, and may be smaller. Each window
+     * is both the cached and the accessable value, so it can be mapped to an aggregate, and loaded back later.
+     * <p>
+     * <pre>{@code
+     *      List<CacheSeq<Parent, Integer>> hotWindows = CacheStream.of(readings)
+     *              .cache()
+     *              .map(Reading::getTemperature)
+     *              .window(60)
+     *              .map(window -> window.stream().max(Integer::compare).orElse(0))
+     *              .filter(max -> max > 100)
+     *              .load()
+     *              .collect(Collectors.toList());
+     * }</pre>
+     * <p>
+     * Windows are built as they are consumed, holding one window of pairs at a time.
+     * <p>
+     * This is a stateful intermediate operation.
+     *
+     * @param size The number of pairs in each window
+     * @return the CacheStream of windows
+     */
+    public CacheStream<CacheSeq<CACHE, VALUE>, CacheSeq<CACHE, VALUE>> window(final int size) {
+
+        requirePositive("Window size", size);
+        return windowed("window", "window(" + size + ")", source -> Windows.counted(source, size, size, true));
+    }
+
+    /**
+     * Returns a CacheStream of sliding windows of {@code size} consecutive cache/accessable value pairs, one
+     * starting every {@code step} pairs, in encounter order. Only full windows are emitted. Windows overlap if
+     * the step is smaller than the size; and pairs between them are skipped if it is larger. Each window is both
+     * the cached and the accessable value.
+     * <p>
+     * This is a stateful intermediate operation.
+     *
+     * @param size The number of pairs in each window
+     * @param step The number of pairs from the start of one window to the start of the next
+     * @return the CacheStream of windows
+     */
+    public CacheStream<CacheSeq<CACHE, VALUE>, CacheSeq<CACHE, VALUE>> sliding(final int size, final int step) {
+
+        requirePositive("Window size", size);
+        requirePositive("Window step", step);
+        return windowed(
+                "sliding", "sliding(" + size + ", " + step + ")", source -> Windows.counted(source, size, step, false));
+    }
+
+    /**
+     * Returns a CacheStream of tumbling time windows: runs of consecutive cache/accessable value pairs whose
+     * timestamps fall in the same interval of {@code width}, counted from zero. The timestamps are expected to
+     * be in order, as in a time series; a pair from another interval always closes the current window. Empty
+     * intervals produce no window. Each window is both the cached and the accessable value.
+     * <p>
+     * This is a stateful intermediate operation.
+     *
+     * @param timestamp A function extracting the timestamp of each accessable value, for instance in millis
+     * @param width     The width of each interval, in the unit of the timestamps
+     * @return the CacheStream of windows
+     */
+    public CacheStream<CacheSeq<CACHE, VALUE>, CacheSeq<CACHE, VALUE>> timeWindow(
+            final ToLongFunction<VALUE> timestamp, final long width) {
+
+        Objects.requireNonNull(timestamp, "Timestamp function must not be null");
+        if (width <= 0)
+            throw new IllegalArgumentException("Window width must be positive: " + width);
+        return windowed("timeWindow", "timeWindow(" + width + ")", source -> Windows.timed(source, timestamp, width));
+    }
+
+    /**
+     * Returns a CacheStream of the sum of each window of {@code size} consecutive accessable values, sliding by
+     * one, paired with the cached value of the last pair in the window. The sum is updated incrementally as the
+     * window slides, rather than recomputed per window.
+     * <p>
+     * This is a stateful intermediate operation.
+     *
+     * @param size   The number of values in each window
+     * @param mapper A function mapping each accessable value to the number to sum
+     * @return the CacheStream of sums
+     */
+    public CacheStream<CACHE, Double> slidingSum(final int size, final ToDoubleFunction<VALUE> mapper) {
+
+        requirePositive("Window size", size);
+        Objects.requireNonNull(mapper, "Mapping function must not be null");
+        return windowed("slidingSum", "slidingSum(" + size + ")", 0,
+                source -> Windows.slidingSum(source, size, mapper));
+    }
+
+    /**
+     * Returns a CacheStream of the minimum cache/accessable value pair of each window of {@code size} consecutive
+     * pairs, sliding by one; the earliest, if several values are equally the minimum. Each pair keeps its own
+     * cached value. The minimum is maintained in amortized constant time per pair, rather than recomputed per
+     * window.
+     * <p>
+     * This is a stateful intermediate operation.
+     *
+     * @param size       The number of pairs in each window
+     * @param comparator A non-interfering, stateless comparator of the accessable values
+     * @return the CacheStream of minimums
+     */
+    public CacheStream<CACHE, VALUE> slidingMin(final int size, final Comparator<VALUE> comparator) {
+
+        requirePositive("Window size", size);
+        Objects.requireNonNull(comparator, "Comparator must not be null");
+        return windowed("slidingMin", "slidingMin(" + size + ")", 0,
+                source -> Windows.slidingLeast(source, size, comparator));
+    }
+
+    /**
+     * Returns a CacheStream of the maximum cache/accessable value pair of each window of {@code size} consecutive
+     * pairs, sliding by one, as {@link #slidingMin} does for the minimum.
+     * <p>
+     * This is a stateful intermediate operation.
+     *
+     * @param size       The number of pairs in each window
+     * @param comparator A non-interfering, stateless comparator of the accessable values
+     * @return the CacheStream of maximums
+     */
+    public CacheStream<CACHE, VALUE> slidingMax(final int size, final Comparator<VALUE> comparator) {
+
+        requirePositive("Window size", size);
+        Objects.requireNonNull(comparator, "Comparator must not be null");
+        return windowed("slidingMax", "slidingMax(" + size + ")", 0,
+                source -> Windows.slidingLeast(source, size, comparator.reversed()));
+    }
+
+    /**
+     * Returns the number of elements in the stream. A pending sort is skipped, as it cannot change the count.
+     * <p>
+     * This is a terminal operation.
+     *
+     * @return the number of elements in the stream
+     */
     public long count() {
 
-        return innerStream.count();
+        EventProbe event = terminalEvent("count");
+        long count = innerStream.count();
+        complete(event, count);
+        return count;
     }
 
     public Object[] toArray() {
 
+        EventProbe event = terminalEvent("toArray");
         Stream<VALUE> mappedStream =
-                innerStream.map(CacheTuple::getRight);
-        return mappedStream.toArray();
+                observed(event, resolved()).map(CacheTuple::getRight);
+        Object[] values = mappedStream.toArray();
+        complete(event);
+        return values;
     }
 
     public VALUE[] toArray(final IntFunction<VALUE[]> generator) {
 
+        EventProbe event = terminalEvent("toArray");
         Stream<VALUE> mappedStream =
-                innerStream.map(CacheTuple::getRight);
-        return mappedStream.toArray(generator);
+                observed(event, resolved()).map(CacheTuple::getRight);
+        VALUE[] values = mappedStream.toArray(generator);
+        complete(event);
+        return values;
     }
 
     public Optional<VALUE> reduce(final BinaryOperator<VALUE> accumulater) {
 
+        EventProbe event = terminalEvent("reduce");
         Stream<VALUE> mappedStream =
-                innerStream.map(CacheTuple::getRight);
-        return mappedStream.reduce(accumulater);
+                observed(event, resolved()).map(CacheTuple::getRight);
+        Optional<VALUE> result = mappedStream.reduce(accumulater);
+        complete(event);
+        return result;
     }
 
     public VALUE reduce(final VALUE identity, final BinaryOperator<VALUE> accumulater) {
 
+        EventProbe event = terminalEvent("reduce");
         Stream<VALUE> mappedStream =
-                innerStream.map(CacheTuple::getRight);
-        return mappedStream.reduce(identity, accumulater);
+                observed(event, resolved()).map(CacheTuple::getRight);
+        VALUE result = mappedStream.reduce(identity, accumulater);
+        complete(event);
+        return result;
     }
 
     public <U> U reduce(
@@ -331,29 +957,587 @@ public class CacheStream<CACHE, VALUE> {
             final BiFunction<U, VALUE, U> accumulater,
             final BinaryOperator<U> combiner) {
 
+        EventProbe event = terminalEvent("reduce");
         Stream<VALUE> mappedStream =
-                innerStream.map(CacheTuple::getRight);
-        return mappedStream.reduce(identity, accumulater, combiner);
+                observed(event, resolved()).map(CacheTuple::getRight);
+        U result = mappedStream.reduce(identity, accumulater, combiner);
+        complete(event);
+        return result;
     }
 
     //TODO: Update method to return CacheOptional, or create new findFirstWithCache() method
     public Optional<VALUE> findFirst() {
 
-        Stream<VALUE> mappedStream =
-                innerStream.map(CacheTuple::getRight);
-        return mappedStream.findFirst();
+        EventProbe event = terminalEvent("findFirst");
+        Optional<VALUE> first = pendingSort != null
+                ? observed(event, innerStream).min(pendingSort).map(CacheTuple::getRight)
+                : observed(event, resolved()).map(CacheTuple::getRight).findFirst();
+        complete(event);
+        return first;
+    }
+
+    /**
+     * Returns the first accessable value, as {@link #findFirst()} does, unless the timeout passes first.
+     * <p>
+     * This is a short-circuiting terminal operation.
+     *
+     * @param timeout The longest the operation may run
+     * @return an Optional of the first value, or an empty Optional if the stream is empty
+     * @throws CancellationException if the timeout passed before the first value was found
+     */
+    public Optional<VALUE> findFirst(final Duration timeout) {
+        return findFirst(CancellationToken.withTimeout(timeout));
+    }
+
+    /**
+     * Returns the first accessable value, as {@link #findFirst()} does, unless the token is cancelled first. The
+     * token is checked once per batch of pairs reaching the end of the pipeline, or a pending sort, and before
+     * each split of a parallel stream.
+     * <p>
+     * This is a short-circuiting terminal operation.
+     *
+     * @param token The token that stops the operation
+     * @return an Optional of the first value, or an empty Optional if the stream is empty
+     * @throws CancellationException if the token was cancelled before the first value was found
+     */
+    public Optional<VALUE> findFirst(final CancellationToken token) {
+
+        Objects.requireNonNull(token, "Cancellation token must not be null");
+        AtomicBoolean aborted = new AtomicBoolean();
+        Optional<VALUE> first = cancellable(token, aborted).findFirst();
+        if (aborted.get())
+            throw new CancellationException("Cancelled before the first value was found");
+        return first;
+    }
+
+    /**
+     * Returns the minimum accessable value according to the supplied comparator. If several values are equally
+     * the minimum, the first is returned for ordered streams. A pending sort is skipped, as it cannot change
+     * the minimum.
+     * <p>
+     * This is a terminal operation.
+     *
+     * @param comparator A non-interfering, stateless comparator of the accessable values
+     * @return an Optional of the minimum value, or an empty Optional if the stream is empty
+     */
+    public Optional<VALUE> min(final Comparator<VALUE> comparator) {
+
+        EventProbe event = terminalEvent("min");
+        Optional<VALUE> min = observed(event, innerStream)
+                .min((t1, t2) -> comparator.compare(t1.getRight(), t2.getRight()))
+                .map(CacheTuple::getRight);
+        complete(event);
+        return min;
+    }
+
+    /**
+     * Returns the maximum accessable value according to the supplied comparator. A pending sort is skipped, as
+     * it cannot change the maximum.
+     * <p>
+     * This is a terminal operation.
+     *
+     * @param comparator A non-interfering, stateless comparator of the accessable values
+     * @return an Optional of the maximum value, or an empty Optional if the stream is empty
+     */
+    public Optional<VALUE> max(final Comparator<VALUE> comparator) {
+
+        EventProbe event = terminalEvent("max");
+        Optional<VALUE> max = observed(event, innerStream)
+                .max((t1, t2) -> comparator.compare(t1.getRight(), t2.getRight()))
+                .map(CacheTuple::getRight);
+        complete(event);
+        return max;
+    }
+
+    /**
+     * Runs the pipeline once, and stores the resulting cache/accessable value pairs in an immutable
+     * {@link CacheSeq}. The sequence can then be streamed any number of times, as new CacheStreams, without
+     * rerunning the upstream operations.
+     * <p>
+     * This is a terminal operation.
+     *
+     * @return a replayable sequence of the pairs in this stream, in encounter order
+     */
+    public CacheSeq<CACHE, VALUE> materialize() {
+
+        EventProbe event = terminalEvent("materialize");
+        CacheSeq<CACHE, VALUE> seq = CacheSeq.fromTuples(observed(event, resolved()).toArray());
+        complete(event);
+        return seq;
     }
 
     public Stream<VALUE> toStream() {
-        return innerStream.map(CacheTuple::getRight);
+        return terminalStream("toStream", CacheTuple::getRight);
+    }
+
+    /**
+     * Returns a Reactive Streams publisher of the accessable values, which drives the pipeline as its subscriber
+     * requests them, honouring backpressure; cancelling the subscription closes the stream. On Java 9 and later,
+     * the publisher is also a {@code java.util.concurrent.Flow.Publisher}.
+     * <p>
+     * This is a terminal operation, though nothing runs until the first request. The publisher accepts a single
+     * subscriber.
+     *
+     * @return a publisher of the accessable values, in encounter order
+     */
+    public CachePublisher<VALUE> publisher() {
+        return new CachePublisher<>(terminalStream("publisher", CacheTuple::getRight));
+    }
+
+    /**
+     * Returns a Reactive Streams publisher of the cache/accessable value pairs, as entries keyed by the cached
+     * value. It behaves as {@link #publisher()}.
+     * <p>
+     * This is a terminal operation, though nothing runs until the first request.
+     *
+     * @return a publisher of the pairs, in encounter order
+     */
+    public CachePublisher<Map.Entry<CACHE, VALUE>> pairPublisher() {
+
+        return new CachePublisher<>(terminalStream(
+                "pairPublisher", tuple -> new AbstractMap.SimpleImmutableEntry<>(tuple.getLeft(), tuple.getRight())));
     }
 
     public <A, CV> CV collect(Collector<VALUE, A, CV> collector) {
-        return innerStream.map(CacheTuple::getRight).collect(collector);
+
+        EventProbe event = terminalEvent("collect");
+        CV result = observed(event, resolved()).map(CacheTuple::getRight).collect(collector);
+        complete(event);
+        return result;
+    }
+
+    /**
+     * Collects the accessable values, as {@link #collect(Collector)} does, until the token is cancelled. The
+     * token is checked once per batch of pairs reaching the end of the pipeline, or a pending sort, and before
+     * each split of a parallel stream; once it is cancelled, every split stops, and the values collected so far
+     * are returned. Whether the result is partial can be read from {@link CancellationToken#isCancelled()}.
+     * <p>
+     * This is a terminal operation.
+     *
+     * @param collector The collector of the accessable values
+     * @param token     The token that stops the operation
+     * @param <A>       The intermediate accumulation type of the collector
+     * @param <CV>      The type of the result
+     * @return the result of the collector, over the values collected before the token was cancelled
+     */
+    public <A, CV> CV collect(final Collector<VALUE, A, CV> collector, final CancellationToken token) {
+
+        Objects.requireNonNull(token, "Cancellation token must not be null");
+        return cancellable(token, null).collect(collector);
     }
 
-    //TODO: min
-    //TODO: max
+    /**
+     * Estimates the number of distinct accessable values with a {@link HyperLogLog} sketch, in memory fixed by
+     * the precision rather than by the number of values. The standard error is about
+     * {@code 1.04 / sqrt(2^precision)}. A pending sort is skipped, as it cannot change the count.
+     * <p>
+     * This is a terminal operation.
+     *
+     * @param precision The precision of the sketch, from 4 to 18
+     * @return the estimated number of distinct accessable values
+     */
+    public long countDistinctApprox(final int precision) {
+
+        EventProbe event = terminalEvent("countDistinctApprox");
+        HyperLogLog sketch = observed(event, innerStream)
+                .map(CacheTuple::getRight)
+                .collect(HyperLogLog.collector(precision));
+        complete(event);
+        return sketch.estimate();
+    }
+
+    /**
+     * Estimates the number of distinct cached values with a {@link HyperLogLog} sketch, as
+     * {@link #countDistinctApprox(int)} does for the accessable values.
+     * <p>
+     * This is a terminal operation.
+     *
+     * @param precision The precision of the sketch, from 4 to 18
+     * @return the estimated number of distinct cached values
+     */
+    public long countDistinctCachedApprox(final int precision) {
+
+        EventProbe event = terminalEvent("countDistinctCachedApprox");
+        HyperLogLog sketch = observed(event, innerStream)
+                .map(CacheTuple::getLeft)
+                .collect(HyperLogLog.collector(precision));
+        complete(event);
+        return sketch.estimate();
+    }
+
+    /**
+     * Collects the accessable values with two collectors in a single traversal of the stream, and merges their
+     * results. This avoids rerunning an expensive upstream pipeline to get, for instance, both a count and a
+     * grouping. To collect the cached values as well, see {@link #teePairs}.
+     * <p>
+     * This is a terminal operation.
+     *
+     * @param <R1>   The result type of the first collector
+     * @param <R2>   The result type of the second collector
+     * @param <R>    The type of the merged result
+     * @param first  The first collector
+     * @param second The second collector
+     * @param merger A function merging the two results
+     * @return the merged result
+     */
+    public <R1, R2, R> R tee(
+            final Collector<? super VALUE, ?, R1> first,
+            final Collector<? super VALUE, ?, R2> second,
+            final BiFunction<? super R1, ? super R2, R> merger) {
+
+        List<Object> results = collectAll(first, second);
+        @SuppressWarnings("unchecked")
+        R merged = merger.apply((R1) results.get(0), (R2) results.get(1));
+        return merged;
+    }
+
+    /**
+     * Collects the cache/accessable value pairs with two collectors in a single traversal of the stream, and
+     * merges their results, as {@link #tee} does for the accessable values alone. Each pair is an entry of the
+     * cached value and the accessable value; so, for instance, one collector can group the cached values while
+     * the other sums the accessable ones.
+     * <p>
+     * This is a terminal operation.
+     *
+     * @param <R1>   The result type of the first collector
+     * @param <R2>   The result type of the second collector
+     * @param <R>    The type of the merged result
+     * @param first  The first collector
+     * @param second The second collector
+     * @param merger A function merging the two results
+     * @return the merged result
+     */
+    public <R1, R2, R> R teePairs(
+            final Collector<? super Map.Entry<CACHE, VALUE>, ?, R1> first,
+            final Collector<? super Map.Entry<CACHE, VALUE>, ?, R2> second,
+            final BiFunction<? super R1, ? super R2, R> merger) {
+
+        List<Object> results = collectAllPairs(first, second);
+        @SuppressWarnings("unchecked")
+        R merged = merger.apply((R1) results.get(0), (R2) results.get(1));
+        return merged;
+    }
+
+    /**
+     * Collects the accessable values with each of the collectors in a single traversal of the stream,
+     * including on parallel streams, where each split holds a container for every collector.
+     * <p>
+     * This is a terminal operation.
+     *
+     * @param collectors The collectors to feed each accessable value to
+     * @return the result of each collector, in the order the collectors were given
+     */
+    @SafeVarargs
+    public final List<Object> collectAll(final Collector<? super VALUE, ?, ?>... collectors) {
+
+        List<Collector<? super VALUE, ?, ?>> downstream = new ArrayList<>(collectors.length);
+        for (Collector<? super VALUE, ?, ?> collector : collectors)
+            downstream.add(collector);
+        return teeCollect("collectAll", CacheTuple::getRight, downstream);
+    }
+
+    /**
+     * Collects the cache/accessable value pairs, as entries of the cached value and the accessable value, with
+     * each of the collectors in a single traversal of the stream, as {@link #collectAll} does for the accessable
+     * values alone.
+     * <p>
+     * This is a terminal operation.
+     *
+     * @param collectors The collectors to feed each pair to
+     * @return the result of each collector, in the order the collectors were given
+     */
+    @SafeVarargs
+    public final List<Object> collectAllPairs(final Collector<? super Map.Entry<CACHE, VALUE>, ?, ?>... collectors) {
+
+        List<Collector<? super Map.Entry<CACHE, VALUE>, ?, ?>> downstream = new ArrayList<>(collectors.length);
+        for (Collector<? super Map.Entry<CACHE, VALUE>, ?, ?> collector : collectors)
+            downstream.add(collector);
+        return teeCollect(
+                "collectAllPairs",
+                tuple -> new AbstractMap.SimpleImmutableEntry<>(tuple.getLeft(), tuple.getRight()),
+                downstream);
+    }
+
+    private <T> List<Object> teeCollect(
+            final String operation,
+            final Function<CacheTuple<CACHE, VALUE>, T> mapper,
+            final List<Collector<? super T, ?, ?>> collectors) {
+
+        EventProbe event = terminalEvent(operation);
+        List<Object> results = observed(event, resolved())
+                .map(mapper)
+                .collect(new TeeCollector<T>(collectors));
+        complete(event);
+        return results;
+    }
+
+    /**
+     * Groups the cached values by their accessable value, in one pass. Each list holds the cached values of
+     * equal accessable values; in the encounter order of the stream, if the stream is sequential.
+     * <p>
+     * Parallel streams accumulate straight into a single concurrent map, locking only the entry being added to,
+     * rather than building a map per thread and merging them. There, the accessable values must not be null,
+     * the order within each list is not defined, and a pending sort is skipped.
+     * <p>
+     * This is a terminal operation.
+     *
+     * @return a map from each accessable value to the cached values that were associated with it
+     */
+    public Map<VALUE, List<CACHE>> groupByValue() {
+
+        EventProbe event = terminalEvent("groupByValue");
+        Stream<CacheTuple<CACHE, VALUE>> tuples = observed(event, unorderedResolved());
+        Map<VALUE, List<CACHE>> groups = tuples.isParallel() ? new ConcurrentHashMap<>() : new HashMap<>();
+        tuples.forEach(pair -> groups.compute(pair.getRight(), (value, caches) -> {
+            List<CACHE> group = caches == null ? new ArrayList<>() : caches;
+            group.add(pair.getLeft());
+            return group;
+        }));
+        complete(event);
+        return groups;
+    }
+
+    /**
+     * Maps each cached value, and reduces the results of equal accessable values, in one pass. This is the
+     * cached counterpart of grouping and reducing the accessable values.
+     * <p>
+     * Parallel streams accumulate straight into a single concurrent map, locking only the entry being merged.
+     * There, the accessable values must not be null, and the results are reduced in no defined order, so the
+     * reducer should be commutative as well as associative; a pending sort is skipped.
+     * <p>
+     * This is a terminal operation.
+     *
+     * @param <A>     The type of the reduced results
+     * @param mapper  A non-interfering, stateless function of the cached values, that must not return null
+     * @param reducer An associative, non-interfering, stateless function combining two results
+     * @return a map from each accessable value to the reduction of its mapped cached values
+     */
+    public <A> Map<VALUE, A> reduceByKey(final Function<CACHE, A> mapper, final BinaryOperator<A> reducer) {
+
+        EventProbe event = terminalEvent("reduceByKey");
+        Stream<CacheTuple<CACHE, VALUE>> tuples = observed(event, unorderedResolved());
+        Map<VALUE, A> reductions = tuples.isParallel() ? new ConcurrentHashMap<>() : new HashMap<>();
+        tuples.forEach(pair -> reductions.merge(pair.getRight(), mapper.apply(pair.getLeft()), reducer));
+        complete(event);
+        return reductions;
+    }
+
+    /**
+     * Builds an immutable {@link CacheIndex} from each accessable value to the cached values associated with
+     * it, for repeated lookups. Exact lookups take constant time; if the accessable values are comparable, the
+     * index also answers range queries, and prefix queries over Strings. For parallel streams, the keys are
+     * sorted in parallel.
+     * <p>
+     * This is a terminal operation.
+     *
+     * @return the index of the cached values by accessable value
+     */
+    public CacheIndex<VALUE, CACHE> toIndex() {
+
+        EventProbe event = terminalEvent("toIndex");
+        CacheIndex<VALUE, CACHE> index =
+                CacheIndex.build(observed(event, resolved()).toArray(), innerStream.isParallel());
+        complete(event);
+        return index;
+    }
+
+    /**
+     * Builds a {@link LongMembership} of the keys of the accessable values, in one pass over the stream. The
+     * membership can then filter other streams with {@link #filterIn} or {@link #filterNotIn}.
+     * <p>
+     * This is a terminal operation.
+     *
+     * @param key A non-interfering, stateless function returning the key of an accessable value
+     * @return the membership of the keys
+     */
+    public LongMembership toMembership(final ToLongFunction<VALUE> key) {
+        return collect(LongMembership.collector(key));
+    }
+
+    /**
+     * Returns a CacheStream that records statistics for every stage added after this call, and passes them to
+     * the listener once a terminal operation completes: the number of elements in and out of each stage, the
+     * time spent in its function, and an estimate of the bytes the function allocated. A stream that is never
+     * instrumented does not pay for any of this.
+     * <p>
+     * For {@link #toStream()}, the statistics are reported when the returned stream is closed. Calling this on
+     * an instrumented stream replaces its listener, and starts recording afresh.
+     *
+     * @param listener The listener to report the statistics to
+     * @return the instrumented CacheStream
+     */
+    public CacheStream<CACHE, VALUE> instrument(final StageListener listener) {
+
+        Objects.requireNonNull(listener, "Stage listener must not be null");
+        return new CacheStream<>(innerStream, plan, pendingSort, new PipelineProbes(listener));
+    }
+
+    /**
+     * Returns a description of the logical plan of this stream: each operation applied so far, as rewritten
+     * by the stream, followed by what is known about the order and uniqueness of its elements. Operations that
+     * were skipped are marked as elided; operations moved ahead of a deferred sort are marked as such.
+     * <p>
+     * This does not consume the stream.
+     *
+     * @return the plan, one operation per line
+     */
+    public String explain() {
+        return plan.explain();
+    }
+
+    /**
+     * Returns the inner stream, sorted if a sort is pending.
+     */
+    private Stream<CacheTuple<CACHE, VALUE>> resolved() {
+
+        if (pendingSort == null)
+            return innerStream;
+        return counted("sorted", innerStream, upstream -> upstream.sorted(pendingSort),
+                EventProbe.barrier("sorted", plan, innerStream.isParallel(), Long.MAX_VALUE));
+    }
+
+    /**
+     * Returns the inner stream for an operation that does not keep encounter order when parallel. A pending sort
+     * is then skipped, as it could not change the result.
+     */
+    private Stream<CacheTuple<CACHE, VALUE>> unorderedResolved() {
+        return innerStream.isParallel() ? innerStream : resolved();
+    }
+
+    private <C, V> CacheStream<C, V> windowed(
+            final String operation,
+            final String step,
+            final Function<Spliterator<CacheTuple<CACHE, VALUE>>, Spliterator<CacheTuple<C, V>>> windowing) {
+
+        return windowed(operation, step, StreamPlan.ALIASED, windowing);
+    }
+
+    /**
+     * Applies a windowing spliterator to the resolved inner stream. The source is pulled in encounter order, one
+     * window at a time, when the first element is requested.
+     */
+    private <C, V> CacheStream<C, V> windowed(
+            final String operation,
+            final String step,
+            final int characteristics,
+            final Function<Spliterator<CacheTuple<CACHE, VALUE>>, Spliterator<CacheTuple<C, V>>> windowing) {
+
+        Stream<CacheTuple<C, V>> windowStream = counted(operation, resolved(), upstream ->
+                StreamSupport.stream(
+                        () -> windowing.apply(upstream.spliterator()), Spliterator.ORDERED, upstream.isParallel())
+                        .onClose(upstream::close));
+        return next(windowStream, plan.then(step, characteristics));
+    }
+
+    private static void requirePositive(final String name, final int value) {
+
+        if (value < 1)
+            throw new IllegalArgumentException(name + " must be positive: " + value);
+    }
+
+    private <C, V> CacheStream<C, V> next(final Stream<CacheTuple<C, V>> stream, final StreamPlan nextPlan) {
+        return new CacheStream<>(stream, nextPlan, null, probes);
+    }
+
+    private <C, V> CacheStream<C, V> next(
+            final Stream<CacheTuple<C, V>> stream,
+            final StreamPlan nextPlan,
+            final Comparator<CacheTuple<C, V>> sort) {
+
+        return new CacheStream<>(stream, nextPlan, sort, probes);
+    }
+
+    private <T, R> Function<T, R> instrumented(final String operation, final Function<T, R> function) {
+        return probes == null ? function : probes.stage(operation).map(function);
+    }
+
+    private <T, R> Stream<R> counted(
+            final String operation, final Stream<T> upstream, final Function<Stream<T>, Stream<R>> stage) {
+
+        return counted(operation, upstream, stage, null);
+    }
+
+    /**
+     * Applies a stage whose work is done by the inner stream itself, counting the elements into and out of it
+     * if the stream is instrumented, or if an event is being recorded for it.
+     */
+    private <T, R> Stream<R> counted(
+            final String operation,
+            final Stream<T> upstream,
+            final Function<Stream<T>, Stream<R>> stage,
+            final EventProbe event) {
+
+        if (probes == null && event == null)
+            return stage.apply(upstream);
+
+        Stream<T> input = event == null ? upstream : event.input(upstream);
+        StageProbe probe = probes == null ? null : probes.stage(operation);
+        if (probe != null)
+            input = input.peek(probe.countIn());
+
+        Stream<R> output = stage.apply(input);
+        if (probe != null)
+            output = output.peek(probe.countOut());
+        return event == null ? output : event.output(output);
+    }
+
+    private EventProbe terminalEvent(final String operation) {
+        return EventProbe.terminal(operation, plan, innerStream.isParallel());
+    }
+
+    /**
+     * Returns the mapped inner stream for a terminal operation that hands the stream to its caller. The events
+     * are finished, and the probes reported, when the stream is closed.
+     */
+    private <T> Stream<T> terminalStream(final String operation, final Function<CacheTuple<CACHE, VALUE>, T> mapper) {
+
+        EventProbe event = terminalEvent(operation);
+        Stream<T> values = observed(event, resolved()).map(mapper).onClose(plan::finishStageEvents);
+        if (probes != null)
+            values = values.onClose(probes::report);
+        return event == null ? values : values.onClose(event::finish);
+    }
+
+    private <T> Stream<T> observed(final EventProbe event, final Stream<T> stream) {
+        return event == null ? stream : event.observe(stream);
+    }
+
+    private void complete(final EventProbe event) {
+
+        report();
+        plan.finishStageEvents();
+        if (event != null)
+            event.finish();
+    }
+
+    private void complete(final EventProbe event, final long elements) {
+
+        report();
+        plan.finishStageEvents();
+        if (event != null)
+            event.finish(elements);
+    }
+
+    private void report() {
+
+        if (probes != null)
+            probes.report();
+    }
+
+    private String belowPendingSort(final String step) {
+        return pendingSort == null ? step : step + " (moved before sort)";
+    }
+
+    /**
+     * Returns a CacheStream over tuples of a different type, that keeps any pending sort. This is only used for
+     * operations that leave the accessable values unchanged, so the pending sort still applies.
+     */
+    @SuppressWarnings("unchecked")
+    private <C, V> CacheStream<C, V> retyped(final Stream<?> stream, final StreamPlan nextPlan) {
+
+        Comparator<CacheTuple<C, V>> sort = (Comparator<CacheTuple<C, V>>) (Comparator<?>) pendingSort;
+        return new CacheStream<>((Stream<CacheTuple<C, V>>) stream, nextPlan, sort, probes);
+    }
     //TODO: anyMatch
     //TODO: allMatch
     //TODO: noneMatch
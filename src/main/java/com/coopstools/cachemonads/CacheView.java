@@ -0,0 +1,210 @@
+package com.coopstools.cachemonads;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * The results of a {@link CachePipeline} over a changing collection of elements, kept up to date as elements
+ * are inserted, updated and removed. Each change runs only the changed element through the pipeline, so it
+ * costs in proportion to what the element produces, rather than to the size of the collection.
+ * <p>
+ * <pre>{@code
+ *      CacheView<String, Parent, Parent> goodParents = CacheView.of(GOOD_PARENTS, Parent::getName);
+ *      goodParents.insertAll(millionsOfParents);
+ *
+ *      parent.setChildren(newChildren);
+ *      goodParents.update(parent);
+ *
+ *      boolean good = goodParents.contains(parent);
+ * }</pre>
+ * <p>
+ * Elements are identified by a key, such as an id, so an element can be updated after it has been changed in
+ * place. The results are kept as a multiset, with the accessable values each element produced, so reads take
+ * constant time. As the pipeline is stateless, the results of each element depend only on that element.
+ * <p>
+ * A view is not safe for use by several threads at once, without external synchronization.
+ *
+ * @param <K>   The type of the keys of the elements
+ * @param <IN>  The type of the elements
+ * @param <OUT> The type of the accessable values produced by the pipeline
+ */
+public final class CacheView<K, IN, OUT> {
+
+    private final CachePipeline<IN, OUT> pipeline;
+    private final Function<? super IN, ? extends K> key;
+    private final Map<K, List<OUT>> resultsByKey = new HashMap<>();
+    private final Map<OUT, int[]> counts = new HashMap<>();
+    private int size;
+
+    private CacheView(final CachePipeline<IN, OUT> pipeline, final Function<? super IN, ? extends K> key) {
+
+        this.pipeline = pipeline;
+        this.key = key;
+    }
+
+    /**
+     * Returns an empty view of the pipeline's results.
+     *
+     * @param pipeline The pipeline each element is run through
+     * @param key      A function returning the key that identifies each element
+     * @param <K>      The type of the keys of the elements
+     * @param <IN>     The type of the elements
+     * @param <OUT>    The type of the accessable values produced by the pipeline
+     * @return the empty view
+     */
+    public static <K, IN, OUT> CacheView<K, IN, OUT> of(
+            final CachePipeline<IN, OUT> pipeline, final Function<? super IN, ? extends K> key) {
+
+        Objects.requireNonNull(pipeline, "Pipeline must not be null");
+        Objects.requireNonNull(key, "Key function must not be null");
+        return new CacheView<>(pipeline, key);
+    }
+
+    /**
+     * Runs the element through the pipeline, and adds its results.
+     *
+     * @param element The new element
+     * @throws IllegalArgumentException if the view already holds an element with the same key
+     */
+    public void insert(final IN element) {
+
+        K elementKey = key.apply(element);
+        if (resultsByKey.containsKey(elementKey))
+            throw new IllegalArgumentException("The view already holds an element with key " + elementKey);
+        add(elementKey, evaluate(element));
+    }
+
+    public void insertAll(final Collection<? extends IN> elements) {
+
+        for (IN element : elements)
+            insert(element);
+    }
+
+    /**
+     * Replaces the results of the element with the same key by those of the given element, which may be the
+     * same instance, changed in place.
+     *
+     * @param element The changed element
+     * @throws IllegalArgumentException if the view holds no element with the same key
+     */
+    public void update(final IN element) {
+
+        K elementKey = key.apply(element);
+        List<OUT> previous = resultsByKey.get(elementKey);
+        if (previous == null)
+            throw new IllegalArgumentException("The view holds no element with key " + elementKey);
+        List<OUT> results = evaluate(element);
+        subtract(previous);
+        add(elementKey, results);
+    }
+
+    /**
+     * Removes the results of the element with the key.
+     *
+     * @param elementKey The key of the removed element
+     * @return whether the view held an element with the key
+     */
+    public boolean remove(final K elementKey) {
+
+        List<OUT> previous = resultsByKey.remove(elementKey);
+        if (previous == null)
+            return false;
+        subtract(previous);
+        return true;
+    }
+
+    /**
+     * @param value An accessable value
+     * @return whether any element produced the value
+     */
+    public boolean contains(final OUT value) {
+        return counts.containsKey(value);
+    }
+
+    /**
+     * @param value An accessable value
+     * @return the number of times the value was produced, across every element
+     */
+    public int count(final OUT value) {
+
+        int[] count = counts.get(value);
+        return count == null ? 0 : count[0];
+    }
+
+    /**
+     * @param elementKey The key of an element
+     * @return the accessable values the element produced, in order; or an empty list if the view holds no
+     * element with the key
+     */
+    public List<OUT> resultsOf(final K elementKey) {
+
+        List<OUT> results = resultsByKey.get(elementKey);
+        return results == null ? Collections.emptyList() : results;
+    }
+
+    public boolean containsKey(final K elementKey) {
+        return resultsByKey.containsKey(elementKey);
+    }
+
+    /**
+     * @return the distinct accessable values produced by the elements, as an unmodifiable, live set
+     */
+    public Set<OUT> values() {
+        return Collections.unmodifiableSet(counts.keySet());
+    }
+
+    /**
+     * @return the number of accessable values produced, counting duplicates
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the number of elements in the view
+     */
+    public int elementCount() {
+        return resultsByKey.size();
+    }
+
+    @Override
+    public String toString() {
+        return "CacheView[elements=" + resultsByKey.size() + ", results=" + size + ", " + pipeline + "]";
+    }
+
+    /**
+     * Runs the element through the pipeline, before the view is changed, so that a failing pipeline leaves the
+     * view as it was.
+     */
+    private List<OUT> evaluate(final IN element) {
+
+        List<OUT> results = new ArrayList<>(1);
+        pipeline.forEach(element, results::add);
+        return results.isEmpty() ? Collections.emptyList() : Collections.unmodifiableList(results);
+    }
+
+    private void add(final K elementKey, final List<OUT> results) {
+
+        for (OUT result : results)
+            counts.computeIfAbsent(result, value -> new int[1])[0]++;
+        size += results.size();
+        resultsByKey.put(elementKey, results);
+    }
+
+    private void subtract(final List<OUT> results) {
+
+        for (OUT result : results) {
+            int[] count = counts.get(result);
+            if (--count[0] == 0)
+                counts.remove(result);
+        }
+        size -= results.size();
+    }
+}
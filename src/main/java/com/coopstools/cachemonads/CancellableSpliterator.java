@@ -0,0 +1,107 @@
+package com.coopstools.cachemonads;
+
+import java.util.Comparator;
+import java.util.Spliterator;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * A spliterator that stops once its {@link CancellationToken} is cancelled. The token is checked once every
+ * {@value #CHECK_INTERVAL} elements, and before each split; splits share the token, so cancelling it stops
+ * every split of a parallel stream. As a cancelled spliterator ends early, it never reports a known size.
+ */
+final class CancellableSpliterator<T> implements Spliterator<T> {
+
+    static final int CHECK_INTERVAL = 64;
+
+    private final Spliterator<T> source;
+    private final CancellationToken token;
+    private final AtomicBoolean aborted;
+    private int untilCheck = 1;
+    private boolean stopped;
+
+    /**
+     * @param aborted Set if the spliterator ends because the token was cancelled; may be null
+     */
+    private CancellableSpliterator(
+            final Spliterator<T> source, final CancellationToken token, final AtomicBoolean aborted) {
+
+        this.source = source;
+        this.token = token;
+        this.aborted = aborted;
+    }
+
+    /**
+     * Returns a stream of the elements of the given stream, which ends early once the token is cancelled. The
+     * given stream is not traversed until the returned one is, and closing the returned one closes it.
+     */
+    static <T> Stream<T> checkpoint(
+            final Stream<T> stream, final CancellationToken token, final AtomicBoolean aborted) {
+
+        return StreamSupport.stream(
+                () -> new CancellableSpliterator<>(stream.spliterator(), token, aborted),
+                Spliterator.ORDERED,
+                stream.isParallel())
+                .onClose(stream::close);
+    }
+
+    @Override
+    public boolean tryAdvance(final Consumer<? super T> action) {
+        return !cancelled() && source.tryAdvance(action);
+    }
+
+    @Override
+    public void forEachRemaining(final Consumer<? super T> action) {
+
+        while (!cancelled()) {
+            for (int i = 0; i < CHECK_INTERVAL; i++) {
+                if (!source.tryAdvance(action))
+                    return;
+            }
+            untilCheck = 1;
+        }
+    }
+
+    @Override
+    public Spliterator<T> trySplit() {
+
+        untilCheck = 1;
+        if (cancelled())
+            return null;
+        Spliterator<T> prefix = source.trySplit();
+        return prefix == null ? null : new CancellableSpliterator<>(prefix, token, aborted);
+    }
+
+    @Override
+    public long estimateSize() {
+        return stopped ? 0 : source.estimateSize();
+    }
+
+    @Override
+    public int characteristics() {
+        return source.characteristics() & ~(SIZED | SUBSIZED);
+    }
+
+    @Override
+    public Comparator<? super T> getComparator() {
+        return source.getComparator();
+    }
+
+    private boolean cancelled() {
+
+        if (stopped)
+            return true;
+        if (--untilCheck > 0)
+            return false;
+
+        untilCheck = CHECK_INTERVAL;
+        if (!token.isCancelled())
+            return false;
+        stopped = true;
+        if (aborted != null)
+            aborted.set(true);
+        return true;
+    }
+}
@@ -0,0 +1,96 @@
+package com.coopstools.cachemonads;
+
+import java.time.Duration;
+import java.util.Objects;
+
+/**
+ * A signal that CacheStream operations should stop early, used by {@link CacheStream#cancellable} and by
+ * terminal operations such as {@link CacheStream#findFirst(CancellationToken)}. A token is cancelled either by
+ * calling {@link #cancel()}, from any thread, or once its deadline passes.
+ * <p>
+ * Operations check the token once per batch of elements, and once per split of a parallel stream, rather than
+ * once per element; each check costs a volatile read, plus a clock read if the token has a deadline. A token
+ * may be shared by several operations, for instance by every stream run while serving one request.
+ * <p>
+ * <pre>{@code
+ *      CancellationToken budget = CancellationToken.withTimeout(Duration.ofMillis(200));
+ *      List<Parent> parents = CacheStream.of(hugeListOfParents)
+ *              .cancellable(budget)
+ *              .cache()
+ *              .flatMap(parent -> parent.getChildren().stream())
+ *              .filter(Child::isEnrolled)
+ *              .load()
+ *              .collect(Collectors.toList(), budget);
+ *
+ *      boolean partial = budget.isCancelled();
+ * }</pre>
+ */
+public final class CancellationToken {
+
+    private static final long MAX_TIMEOUT_NANOS = Long.MAX_VALUE >> 1;
+
+    private final boolean hasDeadline;
+    private final long deadline;
+    private volatile boolean cancelled;
+
+    private CancellationToken(final boolean hasDeadline, final long deadline) {
+
+        this.hasDeadline = hasDeadline;
+        this.deadline = deadline;
+    }
+
+    /**
+     * @return a token that is only cancelled by calling {@link #cancel()}
+     */
+    public static CancellationToken create() {
+        return new CancellationToken(false, 0);
+    }
+
+    /**
+     * Returns a token that is cancelled once the timeout has passed from now, or by calling {@link #cancel()}.
+     *
+     * @param timeout The time after which the token is cancelled
+     * @return the new token
+     */
+    public static CancellationToken withTimeout(final Duration timeout) {
+
+        Objects.requireNonNull(timeout, "Timeout must not be null");
+        long nanos;
+        try {
+            nanos = timeout.toNanos();
+        } catch (ArithmeticException aEx) {
+            nanos = timeout.isNegative() ? -MAX_TIMEOUT_NANOS : MAX_TIMEOUT_NANOS;
+        }
+        // deadlines are compared by the difference with nanoTime, which only holds within half the range of a long
+        nanos = Math.max(-MAX_TIMEOUT_NANOS, Math.min(nanos, MAX_TIMEOUT_NANOS));
+        return new CancellationToken(true, System.nanoTime() + nanos);
+    }
+
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * @return whether {@link #cancel()} has been called, or the deadline has passed
+     */
+    public boolean isCancelled() {
+
+        if (cancelled)
+            return true;
+        if (hasDeadline && System.nanoTime() - deadline >= 0) {
+            cancelled = true;
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public String toString() {
+
+        if (isCancelled())
+            return "CancellationToken[cancelled]";
+        return hasDeadline
+                ? "CancellationToken[" + (deadline - System.nanoTime()) / 1_000_000 + "ms left]"
+                : "CancellationToken[active]";
+    }
+}
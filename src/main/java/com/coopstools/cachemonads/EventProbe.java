@@ -0,0 +1,246 @@
+package com.coopstools.cachemonads;
+
+import java.util.Comparator;
+import java.util.Spliterator;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Counts the elements of a terminal operation or stateful stage for its {@link PipelineEvent}, and decides when
+ * the event is complete. A probe only exists while an event is being recorded.
+ * <p>
+ * A streaming stage is complete once its output is exhausted, as some, such as a parallel distinct, only emit
+ * after their input is exhausted. For barrier stages, such as a sort, the work is done after the input is
+ * exhausted, so they are complete once the first element comes out instead. A stage whose output is cut short
+ * by a short-circuiting operation downstream is completed by the terminal operation, with the elements counted
+ * so far; see {@link StreamPlan#withEvent}.
+ */
+final class EventProbe {
+
+    private final PipelineEvent event;
+    private final boolean barrier;
+    private final long limit;
+    private final LongAdder elementsIn = new LongAdder();
+    private final LongAdder elementsOut = new LongAdder();
+    private final AtomicBoolean started = new AtomicBoolean();
+    private final AtomicBoolean committed = new AtomicBoolean();
+    private final AtomicInteger openInputSplits = new AtomicInteger(1);
+    private final AtomicInteger openOutputSplits = new AtomicInteger(1);
+    private volatile boolean inputDone;
+
+    private EventProbe(final PipelineEvent event, final boolean barrier, final long limit) {
+
+        this.event = event;
+        this.barrier = barrier;
+        this.limit = limit;
+    }
+
+    /**
+     * Returns a probe for the event, which is either a barrier that emits at most {@code limit} elements, or not.
+     */
+    static EventProbe of(final PipelineEvent event, final boolean barrier, final long limit) {
+        return event == null ? null : new EventProbe(event, barrier, limit);
+    }
+
+    static EventProbe terminal(final String operation, final StreamPlan plan, final boolean parallel) {
+
+        EventProbe probe = of(PipelineEvents.terminal(operation, plan, parallel), false, Long.MAX_VALUE);
+        if (probe != null)
+            probe.start();
+        return probe;
+    }
+
+    /**
+     * Returns a probe for a stage that emits elements as they arrive, such as distinct.
+     */
+    static EventProbe streaming(final String operation, final StreamPlan plan, final boolean parallel) {
+
+        return of(PipelineEvents.stage(operation, plan, parallel), false, Long.MAX_VALUE);
+    }
+
+    /**
+     * Returns a probe for a stage that consumes all of its input before emitting at most {@code limit} elements.
+     */
+    static EventProbe barrier(
+            final String operation, final StreamPlan plan, final boolean parallel, final long limit) {
+
+        return of(PipelineEvents.stage(operation, plan, parallel), true, limit);
+    }
+
+    /**
+     * Counts the elements that reach a terminal operation.
+     */
+    <T> Stream<T> observe(final Stream<T> stream) {
+        return stream.peek(element -> elementsIn.increment());
+    }
+
+    void finish() {
+        finish(elementsIn.sum());
+    }
+
+    void finish(final long elements) {
+
+        if (committed.compareAndSet(false, true))
+            event.complete(elements, elements);
+    }
+
+    /**
+     * Completes a stage whose output was not exhausted, with the elements counted so far. Does nothing if the
+     * stage is already complete.
+     */
+    void finishStage() {
+        commit();
+    }
+
+    /**
+     * Wraps the input of a stage, to count its elements and notice when every split of it is exhausted.
+     */
+    <T> Stream<T> input(final Stream<T> upstream) {
+
+        return StreamSupport.stream(new CountingSpliterator<>(upstream.spliterator(), true), upstream.isParallel())
+                .onClose(upstream::close);
+    }
+
+    /**
+     * Wraps the output of a stage, to count its elements and notice when every split of it is exhausted.
+     */
+    <T> Stream<T> output(final Stream<T> downstream) {
+
+        return StreamSupport.stream(
+                new CountingSpliterator<>(downstream.spliterator(), false), downstream.isParallel())
+                .onClose(downstream::close);
+    }
+
+    private void start() {
+
+        if (!started.get() && started.compareAndSet(false, true))
+            event.start();
+    }
+
+    private void elementIn() {
+
+        start();
+        elementsIn.increment();
+    }
+
+    private void elementOut() {
+
+        if (!barrier)
+            elementsOut.increment();
+        else if (inputDone)
+            commit();
+    }
+
+    private void inputExhausted() {
+
+        if (openInputSplits.decrementAndGet() != 0)
+            return;
+
+        inputDone = true;
+        if (barrier && elementsIn.sum() == 0)
+            commit();
+    }
+
+    private void outputExhausted() {
+
+        if (openOutputSplits.decrementAndGet() == 0)
+            commit();
+    }
+
+    private void commit() {
+
+        if (!committed.compareAndSet(false, true))
+            return;
+
+        start();
+        long in = elementsIn.sum();
+        event.complete(in, barrier ? Math.min(in, limit) : elementsOut.sum());
+    }
+
+    /**
+     * Counts the elements of one side of a stage, and the splits of that side that are still open.
+     */
+    private final class CountingSpliterator<T> implements Spliterator<T> {
+
+        private final Spliterator<T> source;
+        private final boolean input;
+        private boolean exhausted;
+
+        private CountingSpliterator(final Spliterator<T> source, final boolean input) {
+
+            this.source = source;
+            this.input = input;
+        }
+
+        @Override
+        public boolean tryAdvance(final Consumer<? super T> action) {
+
+            boolean advanced = source.tryAdvance(element -> {
+                count();
+                action.accept(element);
+            });
+            if (!advanced)
+                exhausted();
+            return advanced;
+        }
+
+        @Override
+        public void forEachRemaining(final Consumer<? super T> action) {
+
+            source.forEachRemaining(element -> {
+                count();
+                action.accept(element);
+            });
+            exhausted();
+        }
+
+        @Override
+        public Spliterator<T> trySplit() {
+
+            Spliterator<T> prefix = source.trySplit();
+            if (prefix == null)
+                return null;
+
+            (input ? openInputSplits : openOutputSplits).incrementAndGet();
+            return new CountingSpliterator<>(prefix, input);
+        }
+
+        @Override
+        public long estimateSize() {
+            return source.estimateSize();
+        }
+
+        @Override
+        public int characteristics() {
+            return source.characteristics();
+        }
+
+        @Override
+        public Comparator<? super T> getComparator() {
+            return source.getComparator();
+        }
+
+        private void count() {
+
+            if (input)
+                elementIn();
+            else
+                elementOut();
+        }
+
+        private void exhausted() {
+
+            if (exhausted)
+                return;
+            exhausted = true;
+            if (input)
+                inputExhausted();
+            else
+                outputExhausted();
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package com.coopstools.cachemonads;
+
+import java.nio.file.Path;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Options for sorting a {@link CacheStream} that may not fit in the heap. Elements are buffered up to the
+ * memory budget, sorted, and spilled to temporary files as runs of cache/accessable value pairs. The runs are
+ * then lazily merged back together, so that only one element per run is held in memory while the sorted
+ * stream is consumed.
+ * <p>
+ * <pre>{@code
+ *      List<Parent> parents = CacheStream.of(hugeListOfParents)
+ *              .cache()
+ *              .map(Parent::getName)
+ *              .sorted(ExternalSort.withBudget(
+ *                      1_000_000, SpillSerializer.serializable(), SpillSerializer.strings()))
+ *              .load()
+ *              .collect(Collectors.toList());
+ * }</pre>
+ * <p>
+ * Instances are immutable; the {@code with} methods return modified copies.
+ *
+ * @param <C> The type of the cached values being spilled
+ * @param <V> The type of the accessable values being spilled
+ */
+public final class ExternalSort<C, V> {
+
+    private static final int DEFAULT_FAN_IN = 128;
+
+    private final int memoryBudget;
+    private final SpillSerializer<C> cacheSerializer;
+    private final SpillSerializer<V> valueSerializer;
+    private final Path directory;
+    private final int parallelRuns;
+    private final int fanIn;
+    private final Executor executor;
+
+    private ExternalSort(
+            final int memoryBudget,
+            final SpillSerializer<C> cacheSerializer,
+            final SpillSerializer<V> valueSerializer,
+            final Path directory,
+            final int parallelRuns,
+            final int fanIn,
+            final Executor executor) {
+
+        if (memoryBudget < 1)
+            throw new IllegalArgumentException("Memory budget must be at least one element: " + memoryBudget);
+        if (parallelRuns < 1)
+            throw new IllegalArgumentException("At least one run must be built at a time: " + parallelRuns);
+        if (fanIn < 2)
+            throw new IllegalArgumentException("Merge fan in must be at least two: " + fanIn);
+
+        this.memoryBudget = memoryBudget;
+        this.cacheSerializer = Objects.requireNonNull(cacheSerializer, "Cache serializer must not be null");
+        this.valueSerializer = Objects.requireNonNull(valueSerializer, "Value serializer must not be null");
+        this.directory = directory;
+        this.parallelRuns = parallelRuns;
+        this.fanIn = fanIn;
+        this.executor = executor;
+    }
+
+    /**
+     * Returns options that keep at most {@code memoryBudget} elements on the heap while building runs. Runs are
+     * built one at a time, and spilled to the default temporary directory.
+     *
+     * @param memoryBudget    The maximum number of cache/accessable pairs held in memory while building runs
+     * @param cacheSerializer The serializer used for the cached values
+     * @param valueSerializer The serializer used for the accessable values
+     * @param <C>             The type of the cached values
+     * @param <V>             The type of the accessable values
+     * @return the new options
+     */
+    public static <C, V> ExternalSort<C, V> withBudget(
+            final int memoryBudget,
+            final SpillSerializer<C> cacheSerializer,
+            final SpillSerializer<V> valueSerializer) {
+
+        return new ExternalSort<>(memoryBudget, cacheSerializer, valueSerializer, null, 1, DEFAULT_FAN_IN, null);
+    }
+
+    /**
+     * Returns a copy of these options that spill into the given directory.
+     *
+     * @param directory An existing, writable directory
+     * @return the new options
+     */
+    public ExternalSort<C, V> withDirectory(final Path directory) {
+
+        Objects.requireNonNull(directory, "Spill directory must not be null");
+        return new ExternalSort<>(
+                memoryBudget, cacheSerializer, valueSerializer, directory, parallelRuns, fanIn, executor);
+    }
+
+    /**
+     * Returns a copy of these options that sort and spill up to {@code parallelRuns} runs concurrently, on the
+     * executor given to {@link #withExecutor}, or else on daemon threads kept for spilling. The memory budget is
+     * shared between the runs being built, so each run holds {@code memoryBudget / (parallelRuns + 1)} elements.
+     *
+     * @param parallelRuns The number of runs that may be sorted and written at the same time
+     * @return the new options
+     */
+    public ExternalSort<C, V> withParallelRuns(final int parallelRuns) {
+
+        return new ExternalSort<>(
+                memoryBudget, cacheSerializer, valueSerializer, directory, parallelRuns, fanIn, executor);
+    }
+
+    /**
+     * Returns a copy of these options that merge at most {@code fanIn} runs at once. When there are more runs,
+     * they are first merged into larger intermediate runs, which bounds the number of open files.
+     *
+     * @param fanIn The maximum number of runs read from at the same time
+     * @return the new options
+     */
+    public ExternalSort<C, V> withFanIn(final int fanIn) {
+
+        return new ExternalSort<>(
+                memoryBudget, cacheSerializer, valueSerializer, directory, parallelRuns, fanIn, executor);
+    }
+
+    /**
+     * Returns a copy of these options that sort and spill parallel runs on the given executor. Runs block on
+     * file I/O, so the executor should not be one that the source stream, or the caller, also depends on, such
+     * as the common fork join pool that drives parallel streams.
+     *
+     * @param executor The executor of the runs sorted and written in parallel
+     * @return the new options
+     */
+    public ExternalSort<C, V> withExecutor(final Executor executor) {
+
+        Objects.requireNonNull(executor, "Executor must not be null");
+        return new ExternalSort<>(
+                memoryBudget, cacheSerializer, valueSerializer, directory, parallelRuns, fanIn, executor);
+    }
+
+    int getMemoryBudget() {
+        return memoryBudget;
+    }
+
+    SpillSerializer<C> getCacheSerializer() {
+        return cacheSerializer;
+    }
+
+    SpillSerializer<V> getValueSerializer() {
+        return valueSerializer;
+    }
+
+    Path getDirectory() {
+        return directory;
+    }
+
+    int getParallelRuns() {
+        return parallelRuns;
+    }
+
+    int getFanIn() {
+        return fanIn;
+    }
+
+    Executor getExecutor() {
+        return executor == null ? SpillThreads.EXECUTOR : executor;
+    }
+
+    int getRunSize() {
+        return Math.max(1, memoryBudget / (parallelRuns == 1 ? 1 : parallelRuns + 1));
+    }
+
+    /**
+     * Holds the default executor of parallel runs, which is only created once a sort asks for it.
+     */
+    private static final class SpillThreads {
+
+        private static final AtomicInteger THREAD_IDS = new AtomicInteger();
+        private static final ExecutorService EXECUTOR = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "cachemonads-spill-" + THREAD_IDS.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+}
@@ -0,0 +1,334 @@
+package com.coopstools.cachemonads;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Performs the external merge sort described by {@link ExternalSort}. Nothing is read from the source stream
+ * until the sorted stream is consumed. If the source fits within a single run, it is sorted in memory and
+ * nothing is written to disk.
+ *
+ * @param <C> The type of the cached values
+ * @param <V> The type of the accessable values
+ */
+final class ExternalSorter<C, V> {
+
+    private static final int PRESENT_CACHE = 1;
+    private static final int PRESENT_VALUE = 2;
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final ExternalSort<C, V> options;
+    private final Comparator<CacheTuple<C, V>> comparator;
+
+    ExternalSorter(final ExternalSort<C, V> options, final Comparator<CacheTuple<C, V>> comparator) {
+
+        this.options = options;
+        this.comparator = comparator;
+    }
+
+    Stream<CacheTuple<C, V>> sort(final Stream<CacheTuple<C, V>> source) {
+
+        SpillFiles spillFiles = new SpillFiles();
+        return StreamSupport.stream(
+                () -> Spliterators.spliteratorUnknownSize(sortedIterator(source, spillFiles), Spliterator.ORDERED),
+                Spliterator.ORDERED,
+                source.isParallel())
+                .onClose(spillFiles::close)
+                .onClose(source::close);
+    }
+
+    private Iterator<CacheTuple<C, V>> sortedIterator(
+            final Stream<CacheTuple<C, V>> source, final SpillFiles spillFiles) {
+
+        int runSize = options.getRunSize();
+        Iterator<CacheTuple<C, V>> iterator = source.iterator();
+        Deque<CompletableFuture<Run>> pending = new ArrayDeque<>();
+        List<Run> runs = new ArrayList<>();
+        PipelineEvent event = PipelineEvents.spill(source.isParallel());
+        if (event != null)
+            event.start();
+
+        try {
+            long elements = 0;
+            List<CacheTuple<C, V>> buffer = new ArrayList<>(Math.min(runSize, 1024));
+            while (iterator.hasNext()) {
+                buffer.add(iterator.next());
+                elements++;
+                if (buffer.size() < runSize || (runs.isEmpty() && pending.isEmpty() && !iterator.hasNext()))
+                    continue;
+
+                pending.add(spill(buffer, spillFiles));
+                if (pending.size() > options.getParallelRuns())
+                    runs.add(await(pending.poll()));
+                buffer = new ArrayList<>(Math.min(runSize, 1024));
+            }
+
+            if (runs.isEmpty() && pending.isEmpty()) {
+                buffer.sort(comparator);
+                if (event != null)
+                    event.complete(elements, 0);
+                return buffer.iterator();
+            }
+
+            if (!buffer.isEmpty())
+                pending.add(spill(buffer, spillFiles));
+            while (!pending.isEmpty())
+                runs.add(await(pending.poll()));
+            if (event != null)
+                event.complete(elements, runs.size());
+
+            return new MergeIterator(reduceRuns(runs, spillFiles), spillFiles);
+        } catch (RuntimeException rtEx) {
+            pending.forEach(future -> future.cancel(false));
+            spillFiles.close();
+            throw rtEx;
+        }
+    }
+
+    private CompletableFuture<Run> spill(final List<CacheTuple<C, V>> buffer, final SpillFiles spillFiles) {
+
+        if (options.getParallelRuns() == 1) {
+            buffer.sort(comparator);
+            return CompletableFuture.completedFuture(writeRun(buffer.iterator(), buffer.size(), spillFiles));
+        }
+
+        return CompletableFuture.supplyAsync(() -> {
+            buffer.sort(comparator);
+            return writeRun(buffer.iterator(), buffer.size(), spillFiles);
+        }, options.getExecutor());
+    }
+
+    private Run await(final CompletableFuture<Run> future) {
+
+        try {
+            return future.join();
+        } catch (CompletionException cEx) {
+            if (cEx.getCause() instanceof RuntimeException)
+                throw (RuntimeException) cEx.getCause();
+            throw cEx;
+        }
+    }
+
+    /**
+     * Merges runs in groups of the configured fan in until few enough remain to be read at the same time.
+     * The groups are contiguous, so elements which compare as equal keep their encounter order.
+     */
+    private List<Run> reduceRuns(final List<Run> runs, final SpillFiles spillFiles) {
+
+        List<Run> remaining = runs;
+        while (remaining.size() > options.getFanIn()) {
+            List<Run> merged = new ArrayList<>();
+            for (int start = 0; start < remaining.size(); start += options.getFanIn()) {
+                List<Run> group = remaining.subList(start, Math.min(start + options.getFanIn(), remaining.size()));
+                long count = group.stream().mapToLong(run -> run.count).sum();
+                merged.add(writeRun(new MergeIterator(group, spillFiles), count, spillFiles));
+            }
+            remaining = merged;
+        }
+        return remaining;
+    }
+
+    private Run writeRun(
+            final Iterator<CacheTuple<C, V>> tuples, final long count, final SpillFiles spillFiles) {
+
+        Path file = spillFiles.create(options.getDirectory());
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(file), BUFFER_SIZE))) {
+
+            while (tuples.hasNext()) {
+                CacheTuple<C, V> tuple = tuples.next();
+                C left = tuple.getLeft();
+                V right = tuple.getRight();
+                out.writeByte((left == null ? 0 : PRESENT_CACHE) | (right == null ? 0 : PRESENT_VALUE));
+                if (left != null)
+                    options.getCacheSerializer().write(out, left);
+                if (right != null)
+                    options.getValueSerializer().write(out, right);
+            }
+        } catch (IOException ioEx) {
+            throw new UncheckedIOException("Unable to spill sorted run to " + file, ioEx);
+        }
+        return new Run(file, count);
+    }
+
+    private static final class Run {
+
+        private final Path file;
+        private final long count;
+
+        private Run(final Path file, final long count) {
+
+            this.file = file;
+            this.count = count;
+        }
+    }
+
+    private final class RunReader implements Closeable {
+
+        private final Run run;
+        private final int order;
+        private final DataInputStream in;
+        private long remaining;
+        private CacheTuple<C, V> head;
+
+        private RunReader(final Run run, final int order) throws IOException {
+
+            this.run = run;
+            this.order = order;
+            this.in = new DataInputStream(new BufferedInputStream(Files.newInputStream(run.file), BUFFER_SIZE));
+            this.remaining = run.count;
+        }
+
+        private boolean advance() throws IOException {
+
+            if (remaining == 0) {
+                head = null;
+                return false;
+            }
+
+            int present = in.readUnsignedByte();
+            C left = (present & PRESENT_CACHE) != 0 ? options.getCacheSerializer().read(in) : null;
+            V right = (present & PRESENT_VALUE) != 0 ? options.getValueSerializer().read(in) : null;
+            head = new CacheTuple<>(left, right);
+            remaining--;
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+
+            in.close();
+            Files.deleteIfExists(run.file);
+        }
+    }
+
+    /**
+     * Lazily merges sorted runs using a heap of their head elements. Ties are broken by run order, so the merge
+     * is stable. Each run is closed and deleted as soon as it is exhausted.
+     */
+    private final class MergeIterator implements Iterator<CacheTuple<C, V>> {
+
+        private final PriorityQueue<RunReader> heap;
+        private final SpillFiles spillFiles;
+
+        private MergeIterator(final List<Run> runs, final SpillFiles spillFiles) {
+
+            this.spillFiles = spillFiles;
+            Comparator<RunReader> byHead = (r1, r2) -> comparator.compare(r1.head, r2.head);
+            this.heap = new PriorityQueue<>(Math.max(1, runs.size()), byHead.thenComparingInt(r -> r.order));
+
+            try {
+                for (int i = 0; i < runs.size(); i++) {
+                    RunReader reader = spillFiles.track(new RunReader(runs.get(i), i));
+                    if (reader.advance())
+                        heap.add(reader);
+                    else
+                        spillFiles.release(reader);
+                }
+            } catch (IOException ioEx) {
+                throw new UncheckedIOException("Unable to open sorted run", ioEx);
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !heap.isEmpty();
+        }
+
+        @Override
+        public CacheTuple<C, V> next() {
+
+            RunReader reader = heap.poll();
+            if (reader == null)
+                throw new NoSuchElementException();
+
+            CacheTuple<C, V> next = reader.head;
+            try {
+                if (reader.advance())
+                    heap.add(reader);
+                else
+                    spillFiles.release(reader);
+            } catch (IOException ioEx) {
+                throw new UncheckedIOException("Unable to read sorted run " + reader.run.file, ioEx);
+            }
+            return next;
+        }
+    }
+
+    /**
+     * Keeps track of every spill file and open reader, so that they can all be removed when the sorted stream
+     * is closed, even if it was not fully consumed.
+     */
+    private static final class SpillFiles {
+
+        private final List<Path> files = new ArrayList<>();
+        private final List<Closeable> readers = new ArrayList<>();
+
+        private synchronized Path create(final Path directory) {
+
+            try {
+                Path file = directory == null
+                        ? Files.createTempFile("cachemonads-", ".run")
+                        : Files.createTempFile(directory, "cachemonads-", ".run");
+                files.add(file);
+                return file;
+            } catch (IOException ioEx) {
+                throw new UncheckedIOException("Unable to create spill file", ioEx);
+            }
+        }
+
+        private synchronized <R extends Closeable> R track(final R reader) {
+
+            readers.add(reader);
+            return reader;
+        }
+
+        private synchronized void release(final Closeable reader) throws IOException {
+
+            readers.remove(reader);
+            reader.close();
+        }
+
+        private synchronized void close() {
+
+            for (Closeable reader : readers) {
+                try {
+                    reader.close();
+                } catch (IOException ignored) {
+                    //the files are deleted below, or on exit
+                }
+            }
+            readers.clear();
+
+            for (Path file : files) {
+                try {
+                    Files.deleteIfExists(file);
+                } catch (IOException ignored) {
+                    //marked for deletion on exit when created
+                }
+            }
+            files.clear();
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package com.coopstools.cachemonads;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * A hash join of the tuples of a CacheStream against a collection of rows, matched by key. Keys are compared
+ * with {@link Object#equals(Object)}.
+ * <p>
+ * The hash table is built on the smaller side. Usually that is the rows, and the table is built once, on first
+ * use, then shared by every split of the stream; for parallel streams over many rows, it is built in
+ * partitions, one task per partition, with no locking. If the stream knows its exact size and it is smaller
+ * than the rows, the stream is read into the table instead, and the rows are scanned against it. Either way,
+ * the tuples come out in the encounter order of the stream, and each tuple's matches in the order of the rows.
+ */
+final class HashJoin<C, V, R, K> {
+
+    private static final int PARALLEL_BUILD_THRESHOLD = 1 << 13;
+
+    private final Collection<R> rows;
+    private final Function<? super V, ? extends K> valueKey;
+    private final Function<? super R, ? extends K> rowKey;
+    private volatile JoinTable<K, R> table;
+
+    HashJoin(
+            final Collection<R> rows,
+            final Function<? super V, ? extends K> valueKey,
+            final Function<? super R, ? extends K> rowKey) {
+
+        this.rows = rows;
+        this.valueKey = valueKey;
+        this.rowKey = rowKey;
+    }
+
+    /**
+     * Pairs each accessable value with each of its matching rows. If {@code keepUnmatched} is set, values with
+     * no match are kept, paired with null.
+     */
+    Stream<CacheTuple<C, Map.Entry<V, R>>> pairs(
+            final Stream<CacheTuple<C, V>> source, final boolean keepUnmatched) {
+
+        return probe(source, (tuple, matches) -> {
+            C cache = tuple.getLeft();
+            V value = tuple.getRight();
+            if (matches.isEmpty())
+                return keepUnmatched ? Stream.of(new CacheTuple<>(cache, entry(value, null))) : Stream.empty();
+            return matches.stream().map(row -> new CacheTuple<>(cache, entry(value, row)));
+        });
+    }
+
+    /**
+     * Keeps the tuples whose accessable value has at least one matching row.
+     */
+    Stream<CacheTuple<C, V>> matching(final Stream<CacheTuple<C, V>> source) {
+        return probe(source, (tuple, matches) -> matches.isEmpty() ? Stream.empty() : Stream.of(tuple));
+    }
+
+    private <T> Stream<T> probe(
+            final Stream<CacheTuple<C, V>> source,
+            final BiFunction<CacheTuple<C, V>, List<R>, Stream<T>> emit) {
+
+        Spliterator<CacheTuple<C, V>> spliterator = source.spliterator();
+        long size = spliterator.getExactSizeIfKnown();
+        boolean parallel = source.isParallel();
+
+        if (size >= 0 && size < rows.size())
+            return StreamSupport.stream(
+                    () -> buildOnSource(spliterator, (int) size, emit).spliterator(),
+                    Spliterator.ORDERED,
+                    parallel)
+                    .onClose(source::close);
+
+        return StreamSupport.stream(spliterator, parallel)
+                .onClose(source::close)
+                .flatMap(tuple -> emit.apply(tuple, table(parallel).get(valueKey.apply(tuple.getRight()))));
+    }
+
+    /**
+     * Reads the stream into a table of its keys, then scans the rows once, collecting each tuple's matches.
+     * Tuples with equal keys are chained by index, so the table holds one entry per distinct key.
+     */
+    private <T> Stream<T> buildOnSource(
+            final Spliterator<CacheTuple<C, V>> spliterator,
+            final int size,
+            final BiFunction<CacheTuple<C, V>, List<R>, Stream<T>> emit) {
+
+        List<CacheTuple<C, V>> tuples = new ArrayList<>(size);
+        spliterator.forEachRemaining(tuples::add);
+
+        int[] next = new int[tuples.size()];
+        Map<K, Integer> heads = new HashMap<>();
+        for (int i = tuples.size() - 1; i >= 0; i--) {
+            Integer head = heads.put(valueKey.apply(tuples.get(i).getRight()), i);
+            next[i] = head == null ? -1 : head;
+        }
+
+        List<List<R>> matches = new ArrayList<>(Collections.nCopies(tuples.size(), null));
+        for (R row : rows) {
+            Integer head = heads.get(rowKey.apply(row));
+            for (int i = head == null ? -1 : head; i >= 0; i = next[i]) {
+                if (matches.get(i) == null)
+                    matches.set(i, new ArrayList<>(1));
+                matches.get(i).add(row);
+            }
+        }
+
+        return IntStream.range(0, tuples.size())
+                .boxed()
+                .flatMap(i -> emit.apply(
+                        tuples.get(i), matches.get(i) == null ? Collections.emptyList() : matches.get(i)));
+    }
+
+    private JoinTable<K, R> table(final boolean parallel) {
+
+        JoinTable<K, R> built = table;
+        if (built == null) {
+            synchronized (this) {
+                built = table;
+                if (built == null)
+                    table = built = JoinTable.build(rows, rowKey, parallel);
+            }
+        }
+        return built;
+    }
+
+    private static <V, R> Map.Entry<V, R> entry(final V value, final R row) {
+        return new AbstractMap.SimpleImmutableEntry<>(value, row);
+    }
+
+    /**
+     * An immutable hash table of rows by key, split into partitions by the hash of the key. A parallel build
+     * computes each row's key and partition once, buckets the rows by partition, and then builds each partition
+     * from its own bucket in a single task, so it needs no locking; once built, the table is only read.
+     */
+    private static final class JoinTable<K, R> {
+
+        private final List<Map<K, List<R>>> partitions;
+        private final int mask;
+
+        private JoinTable(final List<Map<K, List<R>>> partitions) {
+
+            this.partitions = partitions;
+            this.mask = partitions.size() - 1;
+        }
+
+        static <K, R> JoinTable<K, R> build(
+                final Collection<R> rows, final Function<? super R, ? extends K> rowKey, final boolean parallel) {
+
+            if (!parallel || rows.size() < PARALLEL_BUILD_THRESHOLD) {
+                Map<K, List<R>> partition = new HashMap<>();
+                for (R row : rows)
+                    partition.computeIfAbsent(rowKey.apply(row), key -> new ArrayList<>(1)).add(row);
+                return new JoinTable<>(Collections.singletonList(partition));
+            }
+
+            List<R> rowList = new ArrayList<>(rows);
+            int size = rowList.size();
+            int count = Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 2 - 1) << 1;
+            Object[] keys = new Object[size];
+            int[] partitionOf = new int[size];
+            IntStream.range(0, size).parallel().forEach(i -> {
+                keys[i] = rowKey.apply(rowList.get(i));
+                partitionOf[i] = spread(keys[i]) & (count - 1);
+            });
+
+            // Counting sort of the row indices by partition, which keeps the rows of each partition in order
+            int[] starts = new int[count + 1];
+            for (int partition : partitionOf)
+                starts[partition + 1]++;
+            for (int p = 0; p < count; p++)
+                starts[p + 1] += starts[p];
+            int[] ordered = new int[size];
+            int[] next = Arrays.copyOf(starts, count);
+            for (int i = 0; i < size; i++)
+                ordered[next[partitionOf[i]]++] = i;
+
+            List<Map<K, List<R>>> partitions = new ArrayList<>(Collections.nCopies(count, null));
+            IntStream.range(0, count).parallel().forEach(p -> {
+                Map<K, List<R>> partition = new HashMap<>();
+                for (int j = starts[p]; j < starts[p + 1]; j++) {
+                    int i = ordered[j];
+                    @SuppressWarnings("unchecked")
+                    K key = (K) keys[i];
+                    partition.computeIfAbsent(key, k -> new ArrayList<>(1)).add(rowList.get(i));
+                }
+                partitions.set(p, partition);
+            });
+            return new JoinTable<>(partitions);
+        }
+
+        List<R> get(final K key) {
+
+            List<R> matches = partitions.get(spread(key) & mask).get(key);
+            return matches == null ? Collections.emptyList() : matches;
+        }
+
+        private static int spread(final Object key) {
+
+            int hash = key == null ? 0 : key.hashCode();
+            return (hash ^ (hash >>> 16)) * 0x9E3779B9 >>> 16;
+        }
+    }
+}
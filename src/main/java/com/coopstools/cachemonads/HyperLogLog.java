@@ -0,0 +1,210 @@
+package com.coopstools.cachemonads;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.stream.Collector;
+
+/**
+ * A HyperLogLog sketch, which estimates the number of distinct elements added to it in a fixed amount of
+ * memory: {@code 2^precision} bytes, whatever the number of elements. The standard error of the estimate is
+ * about {@code 1.04 / sqrt(2^precision)}; for instance, 0.8% at precision 14, in 16KB.
+ * <p>
+ * Sketches of the same precision can be merged, giving the sketch of the union of their elements. So the splits
+ * of a parallel stream each fill their own sketch; and sketches can be stored, with {@link #toBytes()} or Java
+ * serialization, then merged with others later.
+ * <p>
+ * Elements are hashed to 64 bits. Longs, Integers and Strings are hashed from their contents, and as with
+ * {@code equals}, an Integer and a Long of the same value are different elements. Other elements are hashed
+ * from their {@code hashCode}, which limits them to about four billion distinct hashes. A sketch is not safe
+ * for use by several threads at once.
+ */
+public final class HyperLogLog implements Serializable {
+
+    public static final int MIN_PRECISION = 4;
+    public static final int MAX_PRECISION = 18;
+
+    private static final long serialVersionUID = 1L;
+    private static final byte FORMAT_VERSION = 1;
+    private static final long INTEGER_SEED = 0x9e3779b97f4a7c15L;
+
+    private final int precision;
+    private final byte[] registers;
+
+    private HyperLogLog(final int precision, final byte[] registers) {
+
+        this.precision = precision;
+        this.registers = registers;
+    }
+
+    /**
+     * Creates an empty sketch.
+     *
+     * @param precision The number of bits of each hash used to pick a register, from 4 to 18
+     * @return the empty sketch
+     */
+    public static HyperLogLog withPrecision(final int precision) {
+
+        if (precision < MIN_PRECISION || precision > MAX_PRECISION)
+            throw new IllegalArgumentException(
+                    "Precision must be from " + MIN_PRECISION + " to " + MAX_PRECISION + ": " + precision);
+        return new HyperLogLog(precision, new byte[1 << precision]);
+    }
+
+    /**
+     * Restores a sketch written by {@link #toBytes()}.
+     *
+     * @param bytes The bytes of the sketch
+     * @return the sketch
+     */
+    public static HyperLogLog fromBytes(final byte[] bytes) {
+
+        if (bytes.length < 2 || bytes[0] != FORMAT_VERSION)
+            throw new IllegalArgumentException("Not a serialized HyperLogLog sketch");
+
+        HyperLogLog sketch = withPrecision(bytes[1]);
+        if (bytes.length != sketch.registers.length + 2)
+            throw new IllegalArgumentException("Truncated HyperLogLog sketch: " + bytes.length + " bytes");
+        System.arraycopy(bytes, 2, sketch.registers, 0, sketch.registers.length);
+        return sketch;
+    }
+
+    /**
+     * Returns a collector that sketches the elements of a stream. In parallel, each split fills its own sketch,
+     * and the sketches are merged.
+     *
+     * @param precision The precision of the sketch
+     * @return the collector
+     */
+    public static Collector<Object, ?, HyperLogLog> collector(final int precision) {
+
+        withPrecision(precision);
+        return Collector.of(
+                () -> withPrecision(precision),
+                HyperLogLog::add,
+                HyperLogLog::merge,
+                Collector.Characteristics.UNORDERED,
+                Collector.Characteristics.IDENTITY_FINISH);
+    }
+
+    public HyperLogLog add(final Object element) {
+
+        if (element instanceof Long)
+            return addHash(LongHashSet.mix((Long) element));
+        if (element instanceof Integer)
+            return addHash(LongHashSet.mix((Integer) element ^ INTEGER_SEED));
+        if (element instanceof String)
+            return addHash(hash((String) element));
+        return addHash(LongHashSet.mix(element == null ? 0 : element.hashCode()));
+    }
+
+    public HyperLogLog addLong(final long element) {
+        return addHash(LongHashSet.mix(element));
+    }
+
+    /**
+     * Merges the other sketch into this one, which then sketches the elements of both.
+     *
+     * @param other A sketch of the same precision
+     * @return this sketch
+     */
+    public HyperLogLog merge(final HyperLogLog other) {
+
+        if (other.precision != precision)
+            throw new IllegalArgumentException(
+                    "Cannot merge sketches of precision " + precision + " and " + other.precision);
+        for (int i = 0; i < registers.length; i++)
+            if (other.registers[i] > registers[i])
+                registers[i] = other.registers[i];
+        return this;
+    }
+
+    /**
+     * @return the estimated number of distinct elements added to the sketch
+     */
+    public long estimate() {
+
+        int count = registers.length;
+        double sum = 0;
+        int zeros = 0;
+        for (byte register : registers) {
+            sum += Double.longBitsToDouble((1023L - register) << 52);
+            zeros += register == 0 ? 1 : 0;
+        }
+
+        double estimate = alpha(count) * count * count / sum;
+        if (estimate <= 2.5 * count && zeros > 0)
+            estimate = count * Math.log((double) count / zeros);
+        return Math.round(estimate);
+    }
+
+    public int getPrecision() {
+        return precision;
+    }
+
+    /**
+     * Returns the sketch as bytes: a format version, the precision, and then the registers.
+     *
+     * @return the bytes of the sketch
+     */
+    public byte[] toBytes() {
+
+        byte[] bytes = new byte[registers.length + 2];
+        bytes[0] = FORMAT_VERSION;
+        bytes[1] = (byte) precision;
+        System.arraycopy(registers, 0, bytes, 2, registers.length);
+        return bytes;
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+
+        if (!(obj instanceof HyperLogLog))
+            return false;
+        HyperLogLog other = (HyperLogLog) obj;
+        return precision == other.precision && Arrays.equals(registers, other.registers);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(registers);
+    }
+
+    @Override
+    public String toString() {
+        return "HyperLogLog[precision=" + precision + ", estimate=" + estimate() + "]";
+    }
+
+    /**
+     * Picks a register with the top bits of the hash, and records the position of the first one bit in the rest.
+     */
+    private HyperLogLog addHash(final long hash) {
+
+        int register = (int) (hash >>> (64 - precision));
+        int rank = Math.min(Long.numberOfLeadingZeros(hash << precision), 64 - precision) + 1;
+        if (rank > registers[register])
+            registers[register] = (byte) rank;
+        return this;
+    }
+
+    private static long hash(final String element) {
+
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < element.length(); i++)
+            hash = (hash ^ element.charAt(i)) * 0x100000001b3L;
+        return LongHashSet.mix(hash);
+    }
+
+    private static double alpha(final int count) {
+
+        switch (count) {
+            case 16:
+                return 0.673;
+            case 32:
+                return 0.697;
+            case 64:
+                return 0.709;
+            default:
+                return 0.7213 / (1 + 1.079 / count);
+        }
+    }
+}
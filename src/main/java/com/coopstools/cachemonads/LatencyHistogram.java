@@ -0,0 +1,72 @@
+package com.coopstools.cachemonads;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A fixed-size, lock-free histogram of latencies, recorded in microseconds. Buckets grow geometrically: each
+ * power of two is split into eight, so a recorded value is reported within 12.5% of its true value, in a few
+ * kilobytes whatever the number of values recorded.
+ */
+final class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (64 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    void record(final long nanos) {
+        counts.incrementAndGet(bucket(Math.max(0, nanos) / 1000));
+    }
+
+    /**
+     * @return a copy of the count of each bucket
+     */
+    long[] snapshot() {
+
+        long[] copy = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++)
+            copy[i] = counts.get(i);
+        return copy;
+    }
+
+    /**
+     * Returns the upper bound, in nanoseconds, of the bucket holding the given percentile of the counts; or 0 if
+     * nothing was recorded.
+     */
+    static long percentile(final long[] counts, final double percentile) {
+
+        long total = 0;
+        for (long count : counts)
+            total += count;
+        if (total == 0)
+            return 0;
+
+        long rank = Math.max(1, (long) Math.ceil(total * percentile / 100));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank)
+                return upperBound(i) * 1000;
+        }
+        return upperBound(counts.length - 1) * 1000;
+    }
+
+    private static int bucket(final long micros) {
+
+        if (micros < SUB_BUCKETS)
+            return (int) micros;
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        int subBucket = (int) (micros >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    private static long upperBound(final int bucket) {
+
+        if (bucket < SUB_BUCKETS)
+            return bucket;
+        int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long subBucket = bucket % SUB_BUCKETS;
+        return ((SUB_BUCKETS + subBucket + 1) << (exponent - SUB_BUCKET_BITS)) - 1;
+    }
+}
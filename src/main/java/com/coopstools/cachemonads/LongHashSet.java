@@ -0,0 +1,88 @@
+package com.coopstools.cachemonads;
+
+import java.util.function.LongConsumer;
+
+/**
+ * A set of primitive longs, stored in a single open-addressing table with linear probing. Zero marks an empty
+ * slot, so the key zero is tracked separately. Keys are only added while the set is built; after that, it is
+ * only read, and can be shared between threads.
+ */
+final class LongHashSet {
+
+    private final long[] table;
+    private final int mask;
+    private boolean containsZero;
+    private int size;
+
+    LongHashSet(final int expectedSize) {
+
+        int capacity = Integer.highestOneBit(Math.max(2, expectedSize) * 2 - 1) << 1;
+        this.table = new long[capacity];
+        this.mask = capacity - 1;
+    }
+
+    /**
+     * Adds the key, and returns whether it was not already present. The set must have been created with an
+     * expected size of at least the number of distinct keys added.
+     */
+    boolean add(final long key) {
+
+        if (key == 0) {
+            boolean added = !containsZero;
+            containsZero = true;
+            size += added ? 1 : 0;
+            return added;
+        }
+
+        int slot = (int) mix(key) & mask;
+        while (table[slot] != 0) {
+            if (table[slot] == key)
+                return false;
+            slot = (slot + 1) & mask;
+        }
+        table[slot] = key;
+        size++;
+        return true;
+    }
+
+    boolean contains(final long key) {
+
+        if (key == 0)
+            return containsZero;
+
+        int slot = (int) mix(key) & mask;
+        for (long stored = table[slot]; stored != 0; stored = table[slot]) {
+            if (stored == key)
+                return true;
+            slot = (slot + 1) & mask;
+        }
+        return false;
+    }
+
+    int size() {
+        return size;
+    }
+
+    void forEach(final LongConsumer action) {
+
+        if (containsZero)
+            action.accept(0);
+        for (long key : table)
+            if (key != 0)
+                action.accept(key);
+    }
+
+    /**
+     * Spreads the bits of a key over the whole hash (the finalizer of MurmurHash3).
+     */
+    static long mix(final long key) {
+
+        long hash = key;
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -0,0 +1,141 @@
+package com.coopstools.cachemonads;
+
+import java.util.Arrays;
+import java.util.function.ToLongFunction;
+import java.util.stream.Collector;
+
+/**
+ * An immutable set of long keys, such as ids, made for testing membership of many elements against a very
+ * large allow or deny list. It holds the keys in a primitive open-addressing table, at 16 to 32 bytes a key,
+ * in front of which sits a blocked Bloom filter of 1.5 to 3 bytes a key. Most keys that are not in the set
+ * are rejected by the filter after reading a single cache line; the rest, and every key that is in the set,
+ * are confirmed exactly by the table.
+ * <p>
+ * A membership is built once, from an array, a {@link Builder} or a stream (see {@link #collector}); after
+ * that, it is only read, so it can be shared by every split of a parallel stream without locking.
+ */
+public final class LongMembership {
+
+    private static final int BITS_PER_KEY = 12;
+    private static final int BLOCK_BITS = 512;
+    private static final int HASHES = 6;
+
+    private final long[] blocks;
+    private final int blockMask;
+    private final LongHashSet keys;
+
+    private LongMembership(final LongHashSet keys) {
+
+        int minimumBlocks = (int) Math.max(1, (long) keys.size() * BITS_PER_KEY / BLOCK_BITS);
+        int blockCount = Integer.highestOneBit(minimumBlocks * 2 - 1);
+        this.blocks = new long[blockCount * (BLOCK_BITS / 64)];
+        this.blockMask = blockCount - 1;
+        this.keys = keys;
+        keys.forEach(this::addToFilter);
+    }
+
+    /**
+     * Returns a membership of the given keys.
+     *
+     * @param keys The keys in the set
+     * @return the membership
+     */
+    public static LongMembership of(final long... keys) {
+
+        Builder builder = builder();
+        for (long key : keys)
+            builder.add(key);
+        return builder.build();
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Returns a collector that builds a membership of the keys of the elements in one pass. In parallel, each
+     * split gathers its own keys, and the set is built once they are combined.
+     *
+     * @param <T> The type of the elements
+     * @param key A non-interfering, stateless function returning the key of an element
+     * @return the collector
+     */
+    public static <T> Collector<T, ?, LongMembership> collector(final ToLongFunction<? super T> key) {
+
+        return Collector.of(
+                Builder::new,
+                (builder, element) -> builder.add(key.applyAsLong(element)),
+                Builder::addAll,
+                Builder::build,
+                Collector.Characteristics.UNORDERED);
+    }
+
+    public boolean contains(final long key) {
+
+        long hash = LongHashSet.mix(key);
+        int block = ((int) hash & blockMask) * (BLOCK_BITS / 64);
+        long positions = LongHashSet.mix(hash);
+        for (int i = 0; i < HASHES; i++) {
+            int bit = (int) (positions >>> (i * 9)) & (BLOCK_BITS - 1);
+            if ((blocks[block + (bit >>> 6)] & (1L << bit)) == 0)
+                return false;
+        }
+        return keys.contains(key);
+    }
+
+    /**
+     * @return the number of distinct keys in the set
+     */
+    public int size() {
+        return keys.size();
+    }
+
+    private void addToFilter(final long key) {
+
+        long hash = LongHashSet.mix(key);
+        int block = ((int) hash & blockMask) * (BLOCK_BITS / 64);
+        long positions = LongHashSet.mix(hash);
+        for (int i = 0; i < HASHES; i++) {
+            int bit = (int) (positions >>> (i * 9)) & (BLOCK_BITS - 1);
+            blocks[block + (bit >>> 6)] |= 1L << bit;
+        }
+    }
+
+    /**
+     * Gathers keys into a growing primitive array, for a membership to be built from. A builder is not safe
+     * for use by several threads at once.
+     */
+    public static final class Builder {
+
+        private long[] keys = new long[16];
+        private int count;
+
+        private Builder() {
+        }
+
+        public Builder add(final long key) {
+
+            if (count == keys.length)
+                keys = Arrays.copyOf(keys, count * 2);
+            keys[count++] = key;
+            return this;
+        }
+
+        Builder addAll(final Builder other) {
+
+            if (count + other.count > keys.length)
+                keys = Arrays.copyOf(keys, Math.max(keys.length * 2, count + other.count));
+            System.arraycopy(other.keys, 0, keys, count, other.count);
+            count += other.count;
+            return this;
+        }
+
+        public LongMembership build() {
+
+            LongHashSet set = new LongHashSet(count);
+            for (int i = 0; i < count; i++)
+                set.add(keys[i]);
+            return new LongMembership(set);
+        }
+    }
+}
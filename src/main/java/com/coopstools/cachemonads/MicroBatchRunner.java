@@ -0,0 +1,332 @@
+package com.coopstools.cachemonads;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs a {@link CachePipeline} continuously over the elements arriving on a {@link BlockingQueue}, which unlike
+ * a CacheStream need never end. Elements are drained in micro-batches: a batch is closed once it holds
+ * {@code batchSize} elements, or {@code maxDelay} after its first element was taken, whichever comes first.
+ * Each batch is run through the pipeline, and its results are passed to the sink as one list.
+ * <p>
+ * <pre>{@code
+ *      MicroBatchRunner<Order, Order> runner = MicroBatchRunner.builder(incomingOrders, LARGE_ORDERS)
+ *              .batchSize(500)
+ *              .maxDelay(20, TimeUnit.MILLISECONDS)
+ *              .parallelism(4)
+ *              .start(orders -> alerts.send(orders));
+ *
+ *      ...
+ *      LOGGER.info("Order alerts: {}", runner.stats());
+ *      runner.close();
+ * }</pre>
+ * <p>
+ * Each of the {@code parallelism} worker threads drains and processes its own batches, so with more than one,
+ * the sink is called concurrently, and batches may reach it out of order. Memory is bounded by the batches in
+ * flight: at most {@code parallelism * batchSize} elements are held by the runner at once, and the queue
+ * itself bounds whatever has not been taken yet. If the pipeline or sink throws, the exception is passed to the
+ * error handler, which by default logs it; none of that batch's results are kept, and the runner carries on.
+ * <p>
+ * The workers are daemon threads, so a runner that is never closed does not keep the JVM alive; but batches it
+ * has taken are then lost at exit. Close the runner to have them finished.
+ *
+ * @param <IN>  The type of the elements on the queue
+ * @param <OUT> The type of the accessable values produced by the pipeline
+ */
+public final class MicroBatchRunner<IN, OUT> implements AutoCloseable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(MicroBatchRunner.class);
+    private static final long IDLE_POLL_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+    private static final AtomicInteger RUNNER_IDS = new AtomicInteger();
+
+    private final BlockingQueue<? extends IN> queue;
+    private final CachePipeline<IN, OUT> pipeline;
+    private final Consumer<? super List<OUT>> sink;
+    private final Consumer<? super Throwable> errorHandler;
+    private final int batchSize;
+    private final long maxDelayNanos;
+    private final List<Thread> workers;
+
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder failedBatches = new LongAdder();
+    private final LongAdder elementsIn = new LongAdder();
+    private final LongAdder elementsOut = new LongAdder();
+    private final LatencyHistogram latencies = new LatencyHistogram();
+    private volatile boolean running = true;
+
+    private MicroBatchRunner(final Builder<IN, OUT> builder, final Consumer<? super List<OUT>> sink) {
+
+        this.queue = builder.queue;
+        this.pipeline = builder.pipeline;
+        this.sink = sink;
+        this.errorHandler = builder.errorHandler;
+        this.batchSize = builder.batchSize;
+        this.maxDelayNanos = builder.maxDelayNanos;
+
+        int runnerId = RUNNER_IDS.incrementAndGet();
+        List<Thread> threads = new ArrayList<>(builder.parallelism);
+        for (int i = 0; i < builder.parallelism; i++) {
+            Thread thread = new Thread(this::work, "cachemonads-microbatch-" + runnerId + "-" + i);
+            thread.setDaemon(true);
+            threads.add(thread);
+        }
+        this.workers = Collections.unmodifiableList(threads);
+    }
+
+    /**
+     * Returns a builder of a runner that takes elements from the queue, and runs them through the pipeline. By
+     * default, batches hold up to 256 elements and wait up to 50 milliseconds, on a single worker thread.
+     *
+     * @param queue    The queue the elements arrive on
+     * @param pipeline The pipeline to run each element through
+     * @param <IN>     The type of the elements on the queue
+     * @param <OUT>    The type of the accessable values produced by the pipeline
+     * @return the new builder
+     */
+    public static <IN, OUT> Builder<IN, OUT> builder(
+            final BlockingQueue<? extends IN> queue, final CachePipeline<IN, OUT> pipeline) {
+
+        return new Builder<>(
+                Objects.requireNonNull(queue, "Queue must not be null"),
+                Objects.requireNonNull(pipeline, "Pipeline must not be null"));
+    }
+
+    /**
+     * @return a snapshot of the batches processed so far, and their latencies
+     */
+    public MicroBatchStats stats() {
+
+        return new MicroBatchStats(
+                batches.sum(), failedBatches.sum(), elementsIn.sum(), elementsOut.sum(), latencies.snapshot());
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Stops taking elements from the queue. Batches already taken are still processed; elements left on the
+     * queue stay there. This does not wait for the workers to finish.
+     */
+    public void stop() {
+        running = false;
+    }
+
+    /**
+     * Stops taking elements from the queue, and waits for the workers to finish the batches they have taken.
+     *
+     * @param timeout The maximum time to wait
+     * @param unit    The unit of the timeout
+     * @return whether every worker finished in time
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public boolean awaitTermination(final long timeout, final TimeUnit unit) throws InterruptedException {
+
+        stop();
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        for (Thread worker : workers) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining > 0)
+                TimeUnit.NANOSECONDS.timedJoin(worker, remaining);
+            if (worker.isAlive())
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Stops taking elements from the queue, and waits for the workers to finish the batches they have taken.
+     */
+    @Override
+    public void close() {
+
+        stop();
+        boolean interrupted = false;
+        for (Thread worker : workers) {
+            while (worker.isAlive()) {
+                try {
+                    worker.join();
+                } catch (InterruptedException iEx) {
+                    interrupted = true;
+                }
+            }
+        }
+        if (interrupted)
+            Thread.currentThread().interrupt();
+    }
+
+    private void start() {
+        workers.forEach(Thread::start);
+    }
+
+    private void work() {
+
+        List<IN> batch = new ArrayList<>(batchSize);
+        try {
+            while (running) {
+                long start = fill(batch);
+                if (start >= 0)
+                    process(batch, start);
+            }
+        } catch (InterruptedException iEx) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Waits for a first element, then takes elements until the batch is full or its delay is up. Returns the
+     * time the first element was taken, or -1 if none arrived while idling.
+     */
+    private long fill(final List<IN> batch) throws InterruptedException {
+
+        IN first = queue.poll(IDLE_POLL_NANOS, TimeUnit.NANOSECONDS);
+        if (first == null)
+            return -1;
+
+        long start = System.nanoTime();
+        long deadline = start + maxDelayNanos;
+        batch.add(first);
+        while (batch.size() < batchSize) {
+            queue.drainTo(batch, batchSize - batch.size());
+            long remaining = deadline - System.nanoTime();
+            if (batch.size() >= batchSize || remaining <= 0)
+                break;
+            IN next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+            if (next == null)
+                break;
+            batch.add(next);
+        }
+        return start;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void process(final List<IN> batch, final long start) {
+
+        List<OUT> results = new ArrayList<>(batch.size());
+        BiConsumer<Object, Object> collecting = (cache, value) -> results.add((OUT) value);
+        try {
+            for (IN element : batch)
+                pipeline.push(element, collecting);
+            sink.accept(results);
+            elementsOut.add(results.size());
+        } catch (Throwable t) {
+            failedBatches.increment();
+            handle(t);
+        }
+
+        // elements in are counted last, so whoever sees them counted also sees the rest of the batch's stats
+        batches.increment();
+        latencies.record(System.nanoTime() - start);
+        elementsIn.add(batch.size());
+        batch.clear();
+    }
+
+    /**
+     * Passes the failure of a batch to the error handler, making sure that nothing the handler throws ends the
+     * worker.
+     */
+    private void handle(final Throwable failure) {
+
+        try {
+            errorHandler.accept(failure);
+        } catch (Throwable t) {
+            t.addSuppressed(failure);
+            LOGGER.error("Micro-batch error handler failed", t);
+        }
+    }
+
+    /**
+     * The settings of a {@link MicroBatchRunner}, which is created and started by {@link #start}.
+     *
+     * @param <IN>  The type of the elements on the queue
+     * @param <OUT> The type of the accessable values produced by the pipeline
+     */
+    public static final class Builder<IN, OUT> {
+
+        private final BlockingQueue<? extends IN> queue;
+        private final CachePipeline<IN, OUT> pipeline;
+        private int batchSize = 256;
+        private long maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(50);
+        private int parallelism = 1;
+        private Consumer<? super Throwable> errorHandler = error -> LOGGER.error("Micro-batch failed", error);
+
+        private Builder(final BlockingQueue<? extends IN> queue, final CachePipeline<IN, OUT> pipeline) {
+
+            this.queue = queue;
+            this.pipeline = pipeline;
+        }
+
+        /**
+         * @param batchSize The most elements a batch may hold
+         * @return this builder
+         */
+        public Builder<IN, OUT> batchSize(final int batchSize) {
+
+            if (batchSize < 1)
+                throw new IllegalArgumentException("Batch size must be at least one element: " + batchSize);
+            this.batchSize = batchSize;
+            return this;
+        }
+
+        /**
+         * @param maxDelay The longest a batch may wait for more elements after its first was taken
+         * @param unit     The unit of the delay
+         * @return this builder
+         */
+        public Builder<IN, OUT> maxDelay(final long maxDelay, final TimeUnit unit) {
+
+            if (maxDelay < 0)
+                throw new IllegalArgumentException("Maximum delay must not be negative: " + maxDelay);
+            this.maxDelayNanos = unit.toNanos(maxDelay);
+            return this;
+        }
+
+        /**
+         * @param parallelism The number of worker threads, each processing its own batches
+         * @return this builder
+         */
+        public Builder<IN, OUT> parallelism(final int parallelism) {
+
+            if (parallelism < 1)
+                throw new IllegalArgumentException("Parallelism must be at least one thread: " + parallelism);
+            this.parallelism = parallelism;
+            return this;
+        }
+
+        /**
+         * @param errorHandler The handler of exceptions thrown by the pipeline or the sink; anything it throws is
+         *                     logged
+         * @return this builder
+         */
+        public Builder<IN, OUT> errorHandler(final Consumer<? super Throwable> errorHandler) {
+
+            this.errorHandler = Objects.requireNonNull(errorHandler, "Error handler must not be null");
+            return this;
+        }
+
+        /**
+         * Creates a runner with these settings, and starts its workers.
+         *
+         * @param sink The consumer of the results of each batch
+         * @return the running runner
+         */
+        public MicroBatchRunner<IN, OUT> start(final Consumer<? super List<OUT>> sink) {
+
+            MicroBatchRunner<IN, OUT> runner =
+                    new MicroBatchRunner<>(this, Objects.requireNonNull(sink, "Sink must not be null"));
+            runner.start();
+            return runner;
+        }
+    }
+}
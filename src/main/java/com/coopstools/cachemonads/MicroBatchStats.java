@@ -0,0 +1,72 @@
+package com.coopstools.cachemonads;
+
+/**
+ * An immutable snapshot of what a {@link MicroBatchRunner} has done since it started. The latency of a batch is
+ * the time from its first element being taken from the queue to the sink returning, which is the longest any
+ * of its elements spent in the runner. Latencies are kept in a histogram, so percentiles are accurate to
+ * within 12.5%.
+ */
+public final class MicroBatchStats {
+
+    private final long batches;
+    private final long failedBatches;
+    private final long elementsIn;
+    private final long elementsOut;
+    private final long[] latencyCounts;
+
+    MicroBatchStats(
+            final long batches,
+            final long failedBatches,
+            final long elementsIn,
+            final long elementsOut,
+            final long[] latencyCounts) {
+
+        this.batches = batches;
+        this.failedBatches = failedBatches;
+        this.elementsIn = elementsIn;
+        this.elementsOut = elementsOut;
+        this.latencyCounts = latencyCounts;
+    }
+
+    /**
+     * @return the number of batches processed, including those that failed
+     */
+    public long getBatches() {
+        return batches;
+    }
+
+    /**
+     * @return the number of batches whose pipeline or sink threw an exception
+     */
+    public long getFailedBatches() {
+        return failedBatches;
+    }
+
+    public long getElementsIn() {
+        return elementsIn;
+    }
+
+    public long getElementsOut() {
+        return elementsOut;
+    }
+
+    /**
+     * Returns the batch latency below which the given percentage of batches completed.
+     *
+     * @param percentile The percentile, from 0 to 100; for instance, 99 for the 99th percentile
+     * @return the latency in nanoseconds, or 0 if no batch has completed
+     */
+    public long getLatencyPercentile(final double percentile) {
+
+        if (percentile < 0 || percentile > 100)
+            throw new IllegalArgumentException("Percentile must be from 0 to 100: " + percentile);
+        return LatencyHistogram.percentile(latencyCounts, percentile);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("batches=%d failed=%d in=%d out=%d p50=%.3fms p99=%.3fms max=%.3fms",
+                batches, failedBatches, elementsIn, elementsOut,
+                getLatencyPercentile(50) / 1e6, getLatencyPercentile(99) / 1e6, getLatencyPercentile(100) / 1e6);
+    }
+}
@@ -0,0 +1,295 @@
+package com.coopstools.cachemonads;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.ref.PhantomReference;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.reflect.Constructor;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Turns the stages of a {@link CachePipeline} into an instance of a class dedicated to the pipeline's shape:
+ * the kind of each stage, and the class of the function it calls. The class is a fresh definition of the
+ * {@link PipelineKernel} template, made by its own class loader, so its call sites are profiled separately from
+ * every other shape. The constructor of each shape's class is looked up once, and cached by shape. The cache is
+ * held by the class of the shape's first function, so that the shapes of an application do not keep its class
+ * loader from being collected.
+ * <p>
+ * The compiler is used by {@link CachePipeline.Builder#compile()}. It can be switched off with the system
+ * property {@code cachemonads.compiler.disabled=true}, in which case every pipeline uses the interpreter. The
+ * interpreter is also used for pipelines with more stages than the kernel has positions, and while
+ * {@link #MAX_SHAPES} shapes are compiled. The shapes cached by a class count against that budget until the class
+ * is collected. If the JVM refuses to define a new class, the shape shares the template class itself.
+ */
+final class PipelineCompiler {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PipelineCompiler.class);
+
+    static final int MAX_SHAPES = 256;
+
+    private static final boolean DISABLED = Boolean.getBoolean("cachemonads.compiler.disabled");
+    private static final String KERNEL_NAME = PipelineKernel.class.getName();
+    private static final MethodType KERNEL_CONSTRUCTOR =
+            MethodType.methodType(void.class, int[].class, Object[].class);
+
+    private static final ClassValue<ShapeCache> SHAPES = new ClassValue<ShapeCache>() {
+        @Override
+        protected ShapeCache computeValue(final Class<?> type) {
+            return new ShapeCache();
+        }
+    };
+    private static final AtomicInteger SHAPE_COUNT = new AtomicInteger();
+    private static final ReferenceQueue<ShapeCache> COLLECTED = new ReferenceQueue<>();
+    private static final Set<Budget> BUDGETS = ConcurrentHashMap.newKeySet();
+    private static volatile byte[] kernelBytes;
+
+    private PipelineCompiler() {
+    }
+
+    /**
+     * Returns a kernel running the given stages, or null if the stages must be interpreted.
+     */
+    static BiConsumer<Object, BiConsumer<Object, Object>> compile(final PipelineStage[] stages) {
+
+        if (DISABLED || stages.length > PipelineKernel.MAX_STAGES)
+            return null;
+
+        Shape shape = new Shape(stages);
+        ShapeCache cache = SHAPES.get(shape.owner());
+        MethodHandle constructor = cache.shapes.get(shape);
+        if (constructor == null) {
+            releaseCollectedShapes();
+            constructor = cache.shapes.computeIfAbsent(shape, cache::define);
+            if (constructor == null)
+                return null;
+        }
+
+        int[] kinds = new int[stages.length];
+        Object[] functions = new Object[stages.length];
+        for (int i = 0; i < stages.length; i++) {
+            kinds[i] = stages[i].kind;
+            functions[i] = stages[i].function;
+        }
+
+        try {
+            @SuppressWarnings("unchecked")
+            BiConsumer<Object, BiConsumer<Object, Object>> kernel =
+                    (BiConsumer<Object, BiConsumer<Object, Object>>) constructor.invoke(kinds, functions);
+            return kernel;
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new IllegalStateException("Unable to construct pipeline kernel for " + shape, t);
+        }
+    }
+
+    static int compiledShapes() {
+
+        releaseCollectedShapes();
+        return SHAPE_COUNT.get();
+    }
+
+    /**
+     * Takes one of the {@link #MAX_SHAPES} places for compiled shapes, unless none is left.
+     */
+    private static boolean reserveShape() {
+
+        for (int count = SHAPE_COUNT.get(); count < MAX_SHAPES; count = SHAPE_COUNT.get())
+            if (SHAPE_COUNT.compareAndSet(count, count + 1))
+                return true;
+        return false;
+    }
+
+    /**
+     * Gives back the places of the shapes cached by classes that have since been collected.
+     */
+    private static void releaseCollectedShapes() {
+
+        for (Reference<? extends ShapeCache> collected = COLLECTED.poll(); collected != null;
+                collected = COLLECTED.poll()) {
+            Budget budget = (Budget) collected;
+            BUDGETS.remove(budget);
+            SHAPE_COUNT.addAndGet(-budget.compiled.get());
+        }
+    }
+
+    private static MethodHandle defineKernel(final Shape shape) {
+
+        try {
+            Class<?> kernelClass = new ShapeClassLoader(readKernelBytes()).loadClass(KERNEL_NAME);
+            return kernelConstructor(kernelClass);
+        } catch (ReflectiveOperationException | IOException | SecurityException | LinkageError e) {
+            LOGGER.debug("Unable to define a pipeline kernel for {}; using the shared kernel", shape, e);
+            try {
+                return MethodHandles.lookup().findConstructor(PipelineKernel.class, KERNEL_CONSTRUCTOR);
+            } catch (ReflectiveOperationException roEx) {
+                throw new IllegalStateException("Pipeline kernel constructor is not accessible", roEx);
+            }
+        }
+    }
+
+    /**
+     * Returns the constructor of a copy of the kernel. The copies are package-private, and in a runtime package
+     * of their own, so the constructor is made accessible before it is unreflected.
+     */
+    private static MethodHandle kernelConstructor(final Class<?> kernelClass) throws ReflectiveOperationException {
+
+        Constructor<?> constructor = kernelClass.getDeclaredConstructor(KERNEL_CONSTRUCTOR.parameterArray());
+        constructor.setAccessible(true);
+        return MethodHandles.lookup().unreflectConstructor(constructor);
+    }
+
+    private static byte[] readKernelBytes() throws IOException {
+
+        byte[] bytes = kernelBytes;
+        if (bytes != null)
+            return bytes;
+
+        String resource = PipelineKernel.class.getSimpleName() + ".class";
+        try (InputStream in = PipelineKernel.class.getResourceAsStream(resource)) {
+            if (in == null)
+                throw new IOException("Pipeline kernel class file not found: " + resource);
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] chunk = new byte[4096];
+            for (int read = in.read(chunk); read != -1; read = in.read(chunk))
+                out.write(chunk, 0, read);
+            kernelBytes = bytes = out.toByteArray();
+            return bytes;
+        }
+    }
+
+    /**
+     * Defines its own copy of the kernel template, and delegates every other class to the loader of the
+     * template.
+     */
+    private static final class ShapeClassLoader extends ClassLoader {
+
+        private final byte[] bytes;
+
+        private ShapeClassLoader(final byte[] bytes) {
+
+            super(PipelineKernel.class.getClassLoader());
+            this.bytes = bytes;
+        }
+
+        @Override
+        protected Class<?> loadClass(final String name, final boolean resolve) throws ClassNotFoundException {
+
+            if (!KERNEL_NAME.equals(name))
+                return super.loadClass(name, resolve);
+
+            synchronized (getClassLoadingLock(name)) {
+                Class<?> kernelClass = findLoadedClass(name);
+                if (kernelClass == null)
+                    kernelClass = defineClass(name, bytes, 0, bytes.length, PipelineKernel.class.getProtectionDomain());
+                if (resolve)
+                    resolveClass(kernelClass);
+                return kernelClass;
+            }
+        }
+    }
+
+    /**
+     * The shapes cached by one class, and the number of them that took a place in the budget.
+     */
+    private static final class ShapeCache {
+
+        private final ConcurrentMap<Shape, MethodHandle> shapes = new ConcurrentHashMap<>();
+        private final AtomicInteger compiled = new AtomicInteger();
+
+        private ShapeCache() {
+            BUDGETS.add(new Budget(this));
+        }
+
+        /**
+         * Returns the constructor of a new kernel for the shape, or null if the budget of shapes is spent.
+         */
+        private MethodHandle define(final Shape shape) {
+
+            if (!reserveShape())
+                return null;
+            compiled.incrementAndGet();
+            return defineKernel(shape);
+        }
+    }
+
+    /**
+     * Notices when the cache of a class is collected, along with the class, and keeps the count of its shapes.
+     */
+    private static final class Budget extends PhantomReference<ShapeCache> {
+
+        private final AtomicInteger compiled;
+
+        private Budget(final ShapeCache cache) {
+
+            super(cache, COLLECTED);
+            this.compiled = cache.compiled;
+        }
+    }
+
+    private static final class Shape {
+
+        private final int[] kinds;
+        private final Class<?>[] functionClasses;
+        private final int hash;
+
+        private Shape(final PipelineStage[] stages) {
+
+            this.kinds = new int[stages.length];
+            this.functionClasses = new Class<?>[stages.length];
+            for (int i = 0; i < stages.length; i++) {
+                kinds[i] = stages[i].kind;
+                functionClasses[i] = stages[i].function == null ? null : stages[i].function.getClass();
+            }
+            this.hash = 31 * Arrays.hashCode(kinds) + Arrays.hashCode(functionClasses);
+        }
+
+        /**
+         * Returns the class that holds the cache of this shape: the class of the first function, or the compiler
+         * for shapes with no functions.
+         */
+        private Class<?> owner() {
+
+            for (Class<?> functionClass : functionClasses)
+                if (functionClass != null)
+                    return functionClass;
+            return PipelineCompiler.class;
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+
+            if (this == obj)
+                return true;
+            if (!(obj instanceof Shape))
+                return false;
+
+            Shape other = (Shape) obj;
+            return Arrays.equals(kinds, other.kinds) && Arrays.equals(functionClasses, other.functionClasses);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public String toString() {
+            return Arrays.toString(functionClasses);
+        }
+    }
+}
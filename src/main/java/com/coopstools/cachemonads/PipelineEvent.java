@@ -0,0 +1,19 @@
+package com.coopstools.cachemonads;
+
+/**
+ * A timed event describing one execution of part of a {@link CacheStream} pipeline. On JDK 11 and later, the
+ * events are JDK Flight Recorder events; see {@link PipelineEvents}.
+ */
+interface PipelineEvent {
+
+    /**
+     * Starts timing the event.
+     */
+    void start();
+
+    /**
+     * Stops timing the event, and commits it along with the number of elements that went into and came out of
+     * the stage or terminal operation.
+     */
+    void complete(long elementsIn, long elementsOut);
+}
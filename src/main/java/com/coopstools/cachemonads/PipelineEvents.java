@@ -0,0 +1,26 @@
+package com.coopstools.cachemonads;
+
+/**
+ * Creates the {@link PipelineEvent}s of {@link CacheStream} executions. This version is used on JDK 8, which
+ * has no Flight Recorder API, and never creates an event. The jar also contains a version for JDK 11 and later,
+ * under {@code META-INF/versions/11}, which creates Flight Recorder events while a recording has them enabled.
+ * <p>
+ * Every method returns null when no event should be recorded, so callers add no work to the pipeline.
+ */
+final class PipelineEvents {
+
+    private PipelineEvents() {
+    }
+
+    static PipelineEvent terminal(final String operation, final StreamPlan plan, final boolean parallel) {
+        return null;
+    }
+
+    static PipelineEvent stage(final String operation, final StreamPlan plan, final boolean parallel) {
+        return null;
+    }
+
+    static PipelineEvent spill(final boolean parallel) {
+        return null;
+    }
+}
@@ -0,0 +1,353 @@
+package com.coopstools.cachemonads;
+
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+/**
+ * The template from which {@link PipelineCompiler} builds a dedicated class for each pipeline shape. Every stage
+ * position has its own method, and so its own call sites; once the bytes of this class are defined again for a
+ * single shape, each of those call sites only ever sees one function class, and the JIT can inline the whole
+ * chain into a straight line.
+ * <p>
+ * Each copy is defined by its own class loader, and so is in a runtime package of its own. The template only
+ * refers to JDK types, and to compile time constants, so that the copies resolve nothing from this package.
+ */
+@SuppressWarnings("unchecked")
+final class PipelineKernel implements BiConsumer<Object, BiConsumer<Object, Object>> {
+
+    static final int MAX_STAGES = 8;
+
+    private final int size;
+    private final int k0;
+    private final int k1;
+    private final int k2;
+    private final int k3;
+    private final int k4;
+    private final int k5;
+    private final int k6;
+    private final int k7;
+    private final Object f0;
+    private final Object f1;
+    private final Object f2;
+    private final Object f3;
+    private final Object f4;
+    private final Object f5;
+    private final Object f6;
+    private final Object f7;
+
+    PipelineKernel(final int[] kinds, final Object[] functions) {
+
+        if (kinds.length > MAX_STAGES || kinds.length != functions.length)
+            throw new IllegalArgumentException("Unsupported pipeline shape: " + kinds.length + " stages");
+
+        this.size = kinds.length;
+        this.k0 = size > 0 ? kinds[0] : -1;
+        this.f0 = size > 0 ? functions[0] : null;
+        this.k1 = size > 1 ? kinds[1] : -1;
+        this.f1 = size > 1 ? functions[1] : null;
+        this.k2 = size > 2 ? kinds[2] : -1;
+        this.f2 = size > 2 ? functions[2] : null;
+        this.k3 = size > 3 ? kinds[3] : -1;
+        this.f3 = size > 3 ? functions[3] : null;
+        this.k4 = size > 4 ? kinds[4] : -1;
+        this.f4 = size > 4 ? functions[4] : null;
+        this.k5 = size > 5 ? kinds[5] : -1;
+        this.f5 = size > 5 ? functions[5] : null;
+        this.k6 = size > 6 ? kinds[6] : -1;
+        this.f6 = size > 6 ? functions[6] : null;
+        this.k7 = size > 7 ? kinds[7] : -1;
+        this.f7 = size > 7 ? functions[7] : null;
+    }
+
+    @Override
+    public void accept(final Object element, final BiConsumer<Object, Object> sink) {
+        at0(null, element, sink);
+    }
+
+    private void at0(Object cache, Object value, final BiConsumer<Object, Object> sink) {
+
+        if (size == 0) {
+            sink.accept(cache, value);
+            return;
+        }
+
+        switch (k0) {
+            case PipelineStage.CACHE:
+                cache = value;
+                break;
+            case PipelineStage.LOAD:
+                value = cache;
+                break;
+            case PipelineStage.MAP:
+                value = ((Function<Object, Object>) f0).apply(value);
+                break;
+            case PipelineStage.FILTER:
+                if (!((Predicate<Object>) f0).test(value))
+                    return;
+                break;
+            case PipelineStage.PEEK:
+                ((Consumer<Object>) f0).accept(value);
+                break;
+            default:
+                Object flatCache = cache;
+                try (Stream<Object> subStream = ((Function<Object, Stream<Object>>) f0).apply(value)) {
+                    if (subStream != null)
+                        subStream.forEachOrdered(subValue -> at1(flatCache, subValue, sink));
+                }
+                return;
+        }
+        at1(cache, value, sink);
+    }
+
+    private void at1(Object cache, Object value, final BiConsumer<Object, Object> sink) {
+
+        if (size == 1) {
+            sink.accept(cache, value);
+            return;
+        }
+
+        switch (k1) {
+            case PipelineStage.CACHE:
+                cache = value;
+                break;
+            case PipelineStage.LOAD:
+                value = cache;
+                break;
+            case PipelineStage.MAP:
+                value = ((Function<Object, Object>) f1).apply(value);
+                break;
+            case PipelineStage.FILTER:
+                if (!((Predicate<Object>) f1).test(value))
+                    return;
+                break;
+            case PipelineStage.PEEK:
+                ((Consumer<Object>) f1).accept(value);
+                break;
+            default:
+                Object flatCache = cache;
+                try (Stream<Object> subStream = ((Function<Object, Stream<Object>>) f1).apply(value)) {
+                    if (subStream != null)
+                        subStream.forEachOrdered(subValue -> at2(flatCache, subValue, sink));
+                }
+                return;
+        }
+        at2(cache, value, sink);
+    }
+
+    private void at2(Object cache, Object value, final BiConsumer<Object, Object> sink) {
+
+        if (size == 2) {
+            sink.accept(cache, value);
+            return;
+        }
+
+        switch (k2) {
+            case PipelineStage.CACHE:
+                cache = value;
+                break;
+            case PipelineStage.LOAD:
+                value = cache;
+                break;
+            case PipelineStage.MAP:
+                value = ((Function<Object, Object>) f2).apply(value);
+                break;
+            case PipelineStage.FILTER:
+                if (!((Predicate<Object>) f2).test(value))
+                    return;
+                break;
+            case PipelineStage.PEEK:
+                ((Consumer<Object>) f2).accept(value);
+                break;
+            default:
+                Object flatCache = cache;
+                try (Stream<Object> subStream = ((Function<Object, Stream<Object>>) f2).apply(value)) {
+                    if (subStream != null)
+                        subStream.forEachOrdered(subValue -> at3(flatCache, subValue, sink));
+                }
+                return;
+        }
+        at3(cache, value, sink);
+    }
+
+    private void at3(Object cache, Object value, final BiConsumer<Object, Object> sink) {
+
+        if (size == 3) {
+            sink.accept(cache, value);
+            return;
+        }
+
+        switch (k3) {
+            case PipelineStage.CACHE:
+                cache = value;
+                break;
+            case PipelineStage.LOAD:
+                value = cache;
+                break;
+            case PipelineStage.MAP:
+                value = ((Function<Object, Object>) f3).apply(value);
+                break;
+            case PipelineStage.FILTER:
+                if (!((Predicate<Object>) f3).test(value))
+                    return;
+                break;
+            case PipelineStage.PEEK:
+                ((Consumer<Object>) f3).accept(value);
+                break;
+            default:
+                Object flatCache = cache;
+                try (Stream<Object> subStream = ((Function<Object, Stream<Object>>) f3).apply(value)) {
+                    if (subStream != null)
+                        subStream.forEachOrdered(subValue -> at4(flatCache, subValue, sink));
+                }
+                return;
+        }
+        at4(cache, value, sink);
+    }
+
+    private void at4(Object cache, Object value, final BiConsumer<Object, Object> sink) {
+
+        if (size == 4) {
+            sink.accept(cache, value);
+            return;
+        }
+
+        switch (k4) {
+            case PipelineStage.CACHE:
+                cache = value;
+                break;
+            case PipelineStage.LOAD:
+                value = cache;
+                break;
+            case PipelineStage.MAP:
+                value = ((Function<Object, Object>) f4).apply(value);
+                break;
+            case PipelineStage.FILTER:
+                if (!((Predicate<Object>) f4).test(value))
+                    return;
+                break;
+            case PipelineStage.PEEK:
+                ((Consumer<Object>) f4).accept(value);
+                break;
+            default:
+                Object flatCache = cache;
+                try (Stream<Object> subStream = ((Function<Object, Stream<Object>>) f4).apply(value)) {
+                    if (subStream != null)
+                        subStream.forEachOrdered(subValue -> at5(flatCache, subValue, sink));
+                }
+                return;
+        }
+        at5(cache, value, sink);
+    }
+
+    private void at5(Object cache, Object value, final BiConsumer<Object, Object> sink) {
+
+        if (size == 5) {
+            sink.accept(cache, value);
+            return;
+        }
+
+        switch (k5) {
+            case PipelineStage.CACHE:
+                cache = value;
+                break;
+            case PipelineStage.LOAD:
+                value = cache;
+                break;
+            case PipelineStage.MAP:
+                value = ((Function<Object, Object>) f5).apply(value);
+                break;
+            case PipelineStage.FILTER:
+                if (!((Predicate<Object>) f5).test(value))
+                    return;
+                break;
+            case PipelineStage.PEEK:
+                ((Consumer<Object>) f5).accept(value);
+                break;
+            default:
+                Object flatCache = cache;
+                try (Stream<Object> subStream = ((Function<Object, Stream<Object>>) f5).apply(value)) {
+                    if (subStream != null)
+                        subStream.forEachOrdered(subValue -> at6(flatCache, subValue, sink));
+                }
+                return;
+        }
+        at6(cache, value, sink);
+    }
+
+    private void at6(Object cache, Object value, final BiConsumer<Object, Object> sink) {
+
+        if (size == 6) {
+            sink.accept(cache, value);
+            return;
+        }
+
+        switch (k6) {
+            case PipelineStage.CACHE:
+                cache = value;
+                break;
+            case PipelineStage.LOAD:
+                value = cache;
+                break;
+            case PipelineStage.MAP:
+                value = ((Function<Object, Object>) f6).apply(value);
+                break;
+            case PipelineStage.FILTER:
+                if (!((Predicate<Object>) f6).test(value))
+                    return;
+                break;
+            case PipelineStage.PEEK:
+                ((Consumer<Object>) f6).accept(value);
+                break;
+            default:
+                Object flatCache = cache;
+                try (Stream<Object> subStream = ((Function<Object, Stream<Object>>) f6).apply(value)) {
+                    if (subStream != null)
+                        subStream.forEachOrdered(subValue -> at7(flatCache, subValue, sink));
+                }
+                return;
+        }
+        at7(cache, value, sink);
+    }
+
+    private void at7(Object cache, Object value, final BiConsumer<Object, Object> sink) {
+
+        if (size == 7) {
+            sink.accept(cache, value);
+            return;
+        }
+
+        switch (k7) {
+            case PipelineStage.CACHE:
+                cache = value;
+                break;
+            case PipelineStage.LOAD:
+                value = cache;
+                break;
+            case PipelineStage.MAP:
+                value = ((Function<Object, Object>) f7).apply(value);
+                break;
+            case PipelineStage.FILTER:
+                if (!((Predicate<Object>) f7).test(value))
+                    return;
+                break;
+            case PipelineStage.PEEK:
+                ((Consumer<Object>) f7).accept(value);
+                break;
+            default:
+                Object flatCache = cache;
+                try (Stream<Object> subStream = ((Function<Object, Stream<Object>>) f7).apply(value)) {
+                    if (subStream != null)
+                        subStream.forEachOrdered(subValue -> at8(flatCache, subValue, sink));
+                }
+                return;
+        }
+        at8(cache, value, sink);
+    }
+
+    private void at8(final Object cache, final Object value, final BiConsumer<Object, Object> sink) {
+        sink.accept(cache, value);
+    }
+}
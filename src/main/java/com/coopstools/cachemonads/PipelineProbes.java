@@ -0,0 +1,45 @@
+package com.coopstools.cachemonads;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * The probes of every instrumented stage of one {@link CacheStream} pipeline, and the listener they report to.
+ * Shared by every CacheStream in the chain after {@code instrument} was called.
+ */
+final class PipelineProbes {
+
+    private final StageListener listener;
+    private final List<StageProbe> probes = new ArrayList<>();
+    private final AtomicBoolean reported = new AtomicBoolean();
+
+    PipelineProbes(final StageListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Adds a probe for the next stage. Stages are added while the pipeline is being built, before any element
+     * flows through it.
+     */
+    StageProbe stage(final String operation) {
+
+        StageProbe probe = new StageProbe(operation + "#" + (probes.size() + 1));
+        probes.add(probe);
+        return probe;
+    }
+
+    /**
+     * Reports the statistics to the listener, the first time a terminal operation completes.
+     */
+    void report() {
+
+        if (!reported.compareAndSet(false, true))
+            return;
+
+        List<StageStats> stats = new ArrayList<>(probes.size());
+        for (StageProbe probe : probes)
+            stats.add(probe.snapshot());
+        listener.onComplete(stats);
+    }
+}
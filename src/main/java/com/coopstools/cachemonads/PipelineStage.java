@@ -0,0 +1,84 @@
+package com.coopstools.cachemonads;
+
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+/**
+ * A single, stateless stage of a {@link CachePipeline}. Stages are plain data; they are executed by the
+ * pipeline's interpreter loop, which switches on the kind of each stage.
+ */
+final class PipelineStage {
+
+    static final int CACHE = 0;
+    static final int LOAD = 1;
+    static final int MAP = 2;
+    static final int FILTER = 3;
+    static final int PEEK = 4;
+    static final int FLAT_MAP = 5;
+
+    private static final String[] NAMES = {"cache", "load", "map", "filter", "peek", "flatMap"};
+
+    final int kind;
+    final Object function;
+
+    private PipelineStage(final int kind, final Object function) {
+
+        this.kind = kind;
+        this.function = function;
+    }
+
+    static PipelineStage cache() {
+        return new PipelineStage(CACHE, null);
+    }
+
+    static PipelineStage load() {
+        return new PipelineStage(LOAD, null);
+    }
+
+    static PipelineStage map(final Function<Object, Object> mapper) {
+        return new PipelineStage(MAP, mapper);
+    }
+
+    static PipelineStage filter(final Predicate<Object> predicate) {
+        return new PipelineStage(FILTER, predicate);
+    }
+
+    static PipelineStage peek(final Consumer<Object> action) {
+        return new PipelineStage(PEEK, action);
+    }
+
+    static PipelineStage flatMap(final Function<Object, Stream<Object>> mapper) {
+        return new PipelineStage(FLAT_MAP, mapper);
+    }
+
+    @SuppressWarnings("unchecked")
+    Function<Object, Object> mapper() {
+        return (Function<Object, Object>) function;
+    }
+
+    @SuppressWarnings("unchecked")
+    Predicate<Object> predicate() {
+        return (Predicate<Object>) function;
+    }
+
+    @SuppressWarnings("unchecked")
+    Consumer<Object> action() {
+        return (Consumer<Object>) function;
+    }
+
+    @SuppressWarnings("unchecked")
+    Function<Object, Stream<Object>> streamMapper() {
+        return (Function<Object, Stream<Object>>) function;
+    }
+
+    String name() {
+        return NAMES[kind];
+    }
+
+    @Override
+    public String toString() {
+        return name();
+    }
+}
@@ -0,0 +1,145 @@
+package com.coopstools.cachemonads;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.stream.Collector;
+
+/**
+ * Keeps a uniform random sample of {@code k} elements of a stream, in O(k) memory. Each split of a stream fills
+ * its own reservoir, skipping ahead between replacements (Vitter's Algorithm L, as improved by Li), so most
+ * elements cost no random numbers at all.
+ * <p>
+ * Reservoirs of two splits are merged by weight: each slot of the merged sample is drawn from one side or the
+ * other in proportion to the number of elements that side has yet to contribute. Since each reservoir is itself
+ * a uniform sample of its split, the merged reservoir is a uniform sample of both. A full merged reservoir
+ * takes any further elements one random number at a time, as the skip state no longer applies. Used for
+ * {@code CacheStream.sample}.
+ *
+ * @param <T> The type of the elements
+ */
+final class Reservoir<T> {
+
+    private final int k;
+    private final SplittableRandom random;
+    private Object[] items;
+    private int size;
+    private long seen;
+    private double weight;
+    private long next;
+    private boolean skipping = true;
+
+    private Reservoir(final int k, final SplittableRandom random) {
+
+        this.k = k;
+        this.random = random;
+        this.items = new Object[Math.min(k, 16)];
+    }
+
+    /**
+     * Returns a collector of a sample of {@code k} elements. With a seed, each split's random numbers are
+     * derived from it, so a sequential stream always gives the same sample.
+     */
+    static <T> Collector<T, ?, List<T>> collector(final int k, final Long seed) {
+
+        AtomicLong splits = new AtomicLong(seed == null ? ThreadLocalRandom.current().nextLong() : seed);
+        Supplier<Reservoir<T>> supplier = () ->
+                new Reservoir<>(k, new SplittableRandom(splits.getAndAdd(0x9E3779B97F4A7C15L)));
+        return Collector.of(
+                supplier,
+                Reservoir::add,
+                Reservoir::merge,
+                Reservoir::toList,
+                Collector.Characteristics.UNORDERED);
+    }
+
+    private void add(final T element) {
+
+        seen++;
+        if (size < k) {
+            if (size == items.length)
+                items = Arrays.copyOf(items, Math.min(k, size * 2));
+            items[size++] = element;
+            if (size == k)
+                skip(true);
+        } else if (!skipping) {
+            long slot = random.nextLong(seen);
+            if (slot < k)
+                items[(int) slot] = element;
+        } else if (seen == next) {
+            items[random.nextInt(k)] = element;
+            skip(false);
+        }
+    }
+
+    /**
+     * Draws the position of the next element to replace a sampled one.
+     */
+    private void skip(final boolean first) {
+
+        weight = first ? Math.exp(Math.log(uniform()) / k) : weight * Math.exp(Math.log(uniform()) / k);
+        next = seen + (long) Math.floor(Math.log(uniform()) / Math.log1p(-weight)) + 1;
+        if (next <= seen)
+            next = Long.MAX_VALUE;
+    }
+
+    private double uniform() {
+
+        double uniform = random.nextDouble();
+        return uniform == 0 ? Double.MIN_VALUE : uniform;
+    }
+
+    private Reservoir<T> merge(final Reservoir<T> other) {
+
+        if (other.seen == 0)
+            return this;
+        if (seen == 0)
+            return other;
+
+        int mergedSize = (int) Math.min(k, seen + other.seen);
+        Object[] merged = new Object[mergedSize];
+        long remaining = seen;
+        long otherRemaining = other.seen;
+        int left = size;
+        int otherLeft = other.size;
+        for (int i = 0; i < mergedSize; i++) {
+            if (random.nextDouble() * (remaining + otherRemaining) < remaining) {
+                merged[i] = take(items, left--);
+                remaining--;
+            } else {
+                merged[i] = other.take(other.items, otherLeft--);
+                otherRemaining--;
+            }
+        }
+
+        items = merged;
+        size = mergedSize;
+        seen += other.seen;
+        skipping = size < k;
+        return this;
+    }
+
+    /**
+     * Removes a random one of the first {@code count} items, by swapping it with the last of them.
+     */
+    private Object take(final Object[] from, final int count) {
+
+        int index = random.nextInt(count);
+        Object item = from[index];
+        from[index] = from[count - 1];
+        return item;
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<T> toList() {
+
+        List<T> sample = new ArrayList<>(size);
+        for (int i = 0; i < size; i++)
+            sample.add((T) items[i]);
+        return sample;
+    }
+}
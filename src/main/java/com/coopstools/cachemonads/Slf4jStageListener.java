@@ -0,0 +1,28 @@
+package com.coopstools.cachemonads;
+
+import java.util.List;
+
+import org.slf4j.Logger;
+
+/**
+ * The default {@link StageListener}, which writes the statistics of each stage to an SLF4J logger at debug
+ * level.
+ */
+final class Slf4jStageListener implements StageListener {
+
+    private final Logger logger;
+
+    Slf4jStageListener(final Logger logger) {
+        this.logger = logger;
+    }
+
+    @Override
+    public void onComplete(final List<StageStats> stages) {
+
+        if (!logger.isDebugEnabled())
+            return;
+
+        for (StageStats stage : stages)
+            logger.debug("{}", stage);
+    }
+}
@@ -0,0 +1,64 @@
+package com.coopstools.cachemonads;
+
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+/**
+ * Lazily merges iterators that are each sorted in the same order, using a heap of their head elements. Ties
+ * are broken by the position of the iterator, so the merge is stable: equal elements come out in the order of
+ * the iterators they came from. Each element is read from its iterator only when it is needed.
+ *
+ * @param <T> The type of the elements
+ */
+final class SortedMerge<T> implements Iterator<T> {
+
+    private final PriorityQueue<Head<T>> heap;
+
+    SortedMerge(final List<? extends Iterator<? extends T>> sources, final Comparator<? super T> comparator) {
+
+        Comparator<Head<T>> byElement = (h1, h2) -> comparator.compare(h1.element, h2.element);
+        this.heap = new PriorityQueue<>(Math.max(1, sources.size()), byElement.thenComparingInt(h -> h.source));
+        for (int i = 0; i < sources.size(); i++) {
+            Iterator<? extends T> source = sources.get(i);
+            if (source.hasNext())
+                heap.add(new Head<>(source.next(), source, i));
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        return !heap.isEmpty();
+    }
+
+    @Override
+    public T next() {
+
+        Head<T> head = heap.poll();
+        if (head == null)
+            throw new NoSuchElementException();
+
+        T element = head.element;
+        if (head.iterator.hasNext()) {
+            head.element = head.iterator.next();
+            heap.add(head);
+        }
+        return element;
+    }
+
+    private static final class Head<T> {
+
+        private final Iterator<? extends T> iterator;
+        private final int source;
+        private T element;
+
+        private Head(final T element, final Iterator<? extends T> iterator, final int source) {
+
+            this.element = element;
+            this.iterator = iterator;
+            this.source = source;
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package com.coopstools.cachemonads;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes and reads a single, non-null value to and from a spill file. Used by {@link ExternalSort} to move
+ * the cached and accessable values of a {@code CacheStream} out of the heap while sorted runs are merged.
+ * Null values never reach the serializer; they are flagged by the spill file itself.
+ *
+ * @param <T> The type of the value being spilled
+ */
+public interface SpillSerializer<T> {
+
+    void write(DataOutput out, T value) throws IOException;
+
+    T read(DataInput in) throws IOException;
+
+    /**
+     * Returns a serializer of strings of any length, written as their UTF-8 bytes after the number of bytes.
+     * Unlike {@link DataOutput#writeUTF}, it is not limited to 65535 bytes; it also writes null, as a length of -1.
+     *
+     * @return a serializer of strings
+     */
+    static SpillSerializer<String> strings() {
+
+        return new SpillSerializer<String>() {
+            @Override
+            public void write(final DataOutput out, final String value) throws IOException {
+
+                if (value == null) {
+                    out.writeInt(-1);
+                    return;
+                }
+                byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            }
+
+            @Override
+            public String read(final DataInput in) throws IOException {
+
+                int length = in.readInt();
+                if (length < 0)
+                    return null;
+                byte[] bytes = new byte[length];
+                in.readFully(bytes);
+                return new String(bytes, StandardCharsets.UTF_8);
+            }
+        };
+    }
+
+    static SpillSerializer<Integer> integers() {
+
+        return new SpillSerializer<Integer>() {
+            @Override
+            public void write(final DataOutput out, final Integer value) throws IOException {
+                out.writeInt(value);
+            }
+
+            @Override
+            public Integer read(final DataInput in) throws IOException {
+                return in.readInt();
+            }
+        };
+    }
+
+    static SpillSerializer<Long> longs() {
+
+        return new SpillSerializer<Long>() {
+            @Override
+            public void write(final DataOutput out, final Long value) throws IOException {
+                out.writeLong(value);
+            }
+
+            @Override
+            public Long read(final DataInput in) throws IOException {
+                return in.readLong();
+            }
+        };
+    }
+
+    /**
+     * Returns a serializer that falls back on java serialization. It works for any {@link Serializable}
+     * value, but is considerably slower and larger on disk than a purpose written serializer.
+     *
+     * @param <T> The type of the value being spilled
+     * @return a serializer backed by {@link ObjectOutputStream}
+     */
+    static <T extends Serializable> SpillSerializer<T> serializable() {
+
+        return new SpillSerializer<T>() {
+            @Override
+            public void write(final DataOutput out, final T value) throws IOException {
+
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                try (ObjectOutputStream objectOut = new ObjectOutputStream(bytes)) {
+                    objectOut.writeObject(value);
+                }
+                out.writeInt(bytes.size());
+                out.write(bytes.toByteArray());
+            }
+
+            @Override
+            public T read(final DataInput in) throws IOException {
+
+                byte[] bytes = new byte[in.readInt()];
+                in.readFully(bytes);
+                try (ObjectInputStream objectIn = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+                    @SuppressWarnings("unchecked")
+                    T value = (T) objectIn.readObject();
+                    return value;
+                } catch (ClassNotFoundException cnfEx) {
+                    InvalidObjectException ioEx = new InvalidObjectException("Unknown spilled class");
+                    ioEx.initCause(cnfEx);
+                    throw ioEx;
+                }
+            }
+        };
+    }
+}
@@ -0,0 +1,43 @@
+package com.coopstools.cachemonads;
+
+import java.util.List;
+
+import org.slf4j.LoggerFactory;
+
+/**
+ * Receives the statistics of every instrumented stage of a {@link CacheStream}, once a terminal operation has
+ * completed. Instrumentation is switched on for the stages that follow a call to
+ * {@link CacheStream#instrument(StageListener)}; streams that are never instrumented pay nothing for it.
+ * <p>
+ * <pre>{@code
+ *      List<Parent> parents = CacheStream.of(parents)
+ *              .instrument(StageListener.slf4j())
+ *              .cache()
+ *              .map(Parent::getChildren)
+ *              .flatMap(Collection::stream)
+ *              .filter(child -> child.getAttribute1() > 10)
+ *              .load()
+ *              .collect(Collectors.toList());
+ * }</pre>
+ * <p>
+ * Listeners are called on the thread that ran the terminal operation.
+ */
+@FunctionalInterface
+public interface StageListener {
+
+    /**
+     * Called once per terminal operation, with the statistics of each instrumented stage in pipeline order.
+     *
+     * @param stages The statistics of each stage
+     */
+    void onComplete(List<StageStats> stages);
+
+    /**
+     * Returns a listener that logs one line per stage, at debug level, to the logger of {@link CacheStream}.
+     *
+     * @return an SLF4J backed listener
+     */
+    static StageListener slf4j() {
+        return new Slf4jStageListener(LoggerFactory.getLogger(CacheStream.class));
+    }
+}
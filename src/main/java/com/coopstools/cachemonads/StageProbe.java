@@ -0,0 +1,125 @@
+package com.coopstools.cachemonads;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+/**
+ * Counts the elements flowing into and out of one stage of an instrumented {@link CacheStream}, and measures the
+ * time and allocation of the stage's function. The counters are striped, so probes can be shared by every
+ * thread of a parallel stream.
+ */
+final class StageProbe {
+
+    private static final com.sun.management.ThreadMXBean ALLOCATION = allocationBean();
+
+    private final String name;
+    private final LongAdder elementsIn = new LongAdder();
+    private final LongAdder elementsOut = new LongAdder();
+    private final LongAdder nanos = new LongAdder();
+    private final LongAdder allocatedBytes = new LongAdder();
+
+    StageProbe(final String name) {
+        this.name = name;
+    }
+
+    <T, R> Function<T, R> map(final Function<T, R> mapper) {
+
+        return value -> {
+            elementsIn.increment();
+            long allocated = allocated();
+            long start = System.nanoTime();
+            R result = mapper.apply(value);
+            nanos.add(System.nanoTime() - start);
+            allocatedBytes.add(allocated() - allocated);
+            elementsOut.increment();
+            return result;
+        };
+    }
+
+    <T> Predicate<T> filter(final Predicate<T> predicate) {
+
+        return value -> {
+            elementsIn.increment();
+            long allocated = allocated();
+            long start = System.nanoTime();
+            boolean kept = predicate.test(value);
+            nanos.add(System.nanoTime() - start);
+            allocatedBytes.add(allocated() - allocated);
+            if (kept)
+                elementsOut.increment();
+            return kept;
+        };
+    }
+
+    <T, R> Function<T, Stream<R>> flatMap(final Function<T, Stream<R>> mapper) {
+
+        return value -> {
+            elementsIn.increment();
+            long allocated = allocated();
+            long start = System.nanoTime();
+            Stream<R> results = mapper.apply(value);
+            nanos.add(System.nanoTime() - start);
+            allocatedBytes.add(allocated() - allocated);
+            return results.peek(result -> elementsOut.increment());
+        };
+    }
+
+    <T> Consumer<T> peek(final Consumer<T> action) {
+
+        return value -> {
+            elementsIn.increment();
+            long allocated = allocated();
+            long start = System.nanoTime();
+            action.accept(value);
+            nanos.add(System.nanoTime() - start);
+            allocatedBytes.add(allocated() - allocated);
+            elementsOut.increment();
+        };
+    }
+
+    /**
+     * Counts elements entering a stage whose work is done by the stream itself, such as distinct or sorted.
+     */
+    <T> Consumer<T> countIn() {
+        return value -> elementsIn.increment();
+    }
+
+    <T> Consumer<T> countOut() {
+        return value -> elementsOut.increment();
+    }
+
+    StageStats snapshot() {
+
+        return new StageStats(
+                name,
+                elementsIn.sum(),
+                elementsOut.sum(),
+                nanos.sum(),
+                ALLOCATION == null ? -1 : allocatedBytes.sum());
+    }
+
+    private static long allocated() {
+        return ALLOCATION == null ? 0 : ALLOCATION.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private static com.sun.management.ThreadMXBean allocationBean() {
+
+        try {
+            ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+            if (!(threads instanceof com.sun.management.ThreadMXBean))
+                return null;
+
+            com.sun.management.ThreadMXBean allocation = (com.sun.management.ThreadMXBean) threads;
+            return allocation.isThreadAllocatedMemorySupported() && allocation.isThreadAllocatedMemoryEnabled()
+                    ? allocation
+                    : null;
+        } catch (LinkageError | SecurityException e) {
+            return null;
+        }
+    }
+}
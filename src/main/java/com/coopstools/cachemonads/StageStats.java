@@ -0,0 +1,72 @@
+package com.coopstools.cachemonads;
+
+/**
+ * An immutable snapshot of what a single instrumented stage of a {@link CacheStream} did during one terminal
+ * operation. Time and allocation are only measured for stages that call a user function per element (such as
+ * map and filter); for the other stages they are reported as zero.
+ */
+public final class StageStats {
+
+    private final String name;
+    private final long elementsIn;
+    private final long elementsOut;
+    private final long nanos;
+    private final long allocatedBytes;
+
+    StageStats(
+            final String name,
+            final long elementsIn,
+            final long elementsOut,
+            final long nanos,
+            final long allocatedBytes) {
+
+        this.name = name;
+        this.elementsIn = elementsIn;
+        this.elementsOut = elementsOut;
+        this.nanos = nanos;
+        this.allocatedBytes = allocatedBytes;
+    }
+
+    /**
+     * @return the operation and its position in the pipeline, for example {@code filter#3}
+     */
+    public String getName() {
+        return name;
+    }
+
+    public long getElementsIn() {
+        return elementsIn;
+    }
+
+    public long getElementsOut() {
+        return elementsOut;
+    }
+
+    /**
+     * @return the ratio of elements out to elements in, or 1 if no elements reached the stage
+     */
+    public double getSelectivity() {
+        return elementsIn == 0 ? 1.0 : (double) elementsOut / elementsIn;
+    }
+
+    /**
+     * @return the time spent in the stage's function, summed across every thread
+     */
+    public long getNanos() {
+        return nanos;
+    }
+
+    /**
+     * @return an estimate of the bytes allocated by the stage's function, summed across every thread; or -1 if
+     * the JVM cannot measure thread allocation
+     */
+    public long getAllocatedBytes() {
+        return allocatedBytes;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: in=%d out=%d selectivity=%.3f time=%.3fms allocated=%dB",
+                name, elementsIn, elementsOut, getSelectivity(), nanos / 1e6, allocatedBytes);
+    }
+}
@@ -0,0 +1,170 @@
+package com.coopstools.cachemonads;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.StringJoiner;
+
+/**
+ * The logical plan of a {@link CacheStream}: the operations that have been applied, or rewritten, so far, along
+ * with what is known about the elements they produce. A plan is immutable; each operation on a CacheStream
+ * extends the plan of the stream it was called on.
+ * <p>
+ * The characteristics mirror those of a {@code Spliterator}, but describe the accessable values, which are
+ * what {@code sorted} and {@code distinct} act on. {@link #ALIASED} records that the cached and accessable
+ * values are the same reference, which makes a following {@code cache} or {@code load} an identity.
+ */
+final class StreamPlan {
+
+    static final int SORTED = 1;
+    static final int DISTINCT = 2;
+    static final int ALIASED = 4;
+
+    /**
+     * The order recorded for streams sorted by the natural order of their accessable values.
+     */
+    static final Object NATURAL_ORDER = new Object() {
+        @Override
+        public String toString() {
+            return "natural";
+        }
+    };
+
+    private final StreamPlan previous;
+    private final String step;
+    private final int characteristics;
+    private final Object order;
+    private final EventProbe stageEvent;
+
+    private StreamPlan(
+            final StreamPlan previous, final String step, final int characteristics, final Object order) {
+
+        this(previous, step, characteristics, order, null);
+    }
+
+    private StreamPlan(
+            final StreamPlan previous,
+            final String step,
+            final int characteristics,
+            final Object order,
+            final EventProbe stageEvent) {
+
+        this.previous = previous;
+        this.step = step;
+        this.characteristics = characteristics;
+        this.order = (characteristics & SORTED) != 0 ? order : null;
+        this.stageEvent = stageEvent;
+    }
+
+    static StreamPlan source(final String description, final int characteristics) {
+        return new StreamPlan(null, description, characteristics, NATURAL_ORDER);
+    }
+
+    /**
+     * Returns the plan of a source that is already sorted in the given order.
+     */
+    static StreamPlan sortedSource(final String description, final int characteristics, final Object order) {
+        return new StreamPlan(null, description, characteristics | SORTED, order);
+    }
+
+    /**
+     * Returns a plan with the step appended, and the given characteristics replacing the current ones.
+     */
+    StreamPlan then(final String step, final int characteristics) {
+        return new StreamPlan(this, step, characteristics, order);
+    }
+
+    /**
+     * Returns a plan with the step appended, keeping the current characteristics.
+     */
+    StreamPlan then(final String step) {
+        return new StreamPlan(this, step, characteristics, order);
+    }
+
+    /**
+     * Returns a plan sorted in the given order, which is either {@link #NATURAL_ORDER} or the comparator
+     * supplied for the accessable values.
+     */
+    StreamPlan sortedBy(final String step, final Object order) {
+        return new StreamPlan(this, step, characteristics | SORTED, order);
+    }
+
+    /**
+     * Returns a plan noting that an operation was skipped, as it could not change the elements.
+     */
+    StreamPlan elide(final String step) {
+        return new StreamPlan(this, step + " (elided)", characteristics, order);
+    }
+
+    /**
+     * Returns this plan with the event being recorded for its last step, so that the terminal operation can
+     * complete the event if the output of the step is cut short.
+     */
+    StreamPlan withEvent(final EventProbe event) {
+        return event == null ? this : new StreamPlan(previous, step, characteristics, order, event);
+    }
+
+    /**
+     * Completes the events of the steps that have not completed themselves, as happens when a short-circuiting
+     * terminal operation stops pulling elements.
+     */
+    void finishStageEvents() {
+
+        for (StreamPlan plan = this; plan != null; plan = plan.previous)
+            if (plan.stageEvent != null)
+                plan.stageEvent.finishStage();
+    }
+
+    boolean has(final int characteristic) {
+        return (characteristics & characteristic) != 0;
+    }
+
+    int characteristics() {
+        return characteristics;
+    }
+
+    boolean isSortedBy(final Object order) {
+        return has(SORTED) && this.order == order;
+    }
+
+    /**
+     * Returns the steps of the plan on one line, as a short description of the shape of the pipeline.
+     */
+    String shape() {
+
+        Deque<StreamPlan> steps = new ArrayDeque<>();
+        for (StreamPlan plan = this; plan != null; plan = plan.previous)
+            steps.push(plan);
+
+        StringJoiner shape = new StringJoiner(" -> ");
+        for (StreamPlan plan : steps)
+            shape.add(plan.step);
+        return shape.toString();
+    }
+
+    String explain() {
+
+        Deque<StreamPlan> steps = new ArrayDeque<>();
+        for (StreamPlan plan = this; plan != null; plan = plan.previous)
+            steps.push(plan);
+
+        StringBuilder explanation = new StringBuilder();
+        for (StreamPlan plan : steps)
+            explanation.append(plan.step).append('\n');
+
+        explanation.append("characteristics:");
+        if (has(SORTED))
+            explanation.append(" SORTED(").append(order == NATURAL_ORDER ? order : "comparator").append(')');
+        if (has(DISTINCT))
+            explanation.append(" DISTINCT");
+        if (has(ALIASED))
+            explanation.append(" ALIASED");
+        if (characteristics == 0)
+            explanation.append(" none");
+        return explanation.toString();
+    }
+
+    @Override
+    public String toString() {
+        return explain();
+    }
+}
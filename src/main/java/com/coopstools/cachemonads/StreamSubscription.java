@@ -0,0 +1,198 @@
+package com.coopstools.cachemonads;
+
+import java.util.Objects;
+import java.util.Spliterator;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A subscription that pulls the elements of a stream as the subscriber requests them. The stream is not started
+ * until the first request, and is closed once it is exhausted, fails, or the subscription is cancelled.
+ * <p>
+ * Signals are serialized by a work-in-progress counter: whichever thread requests or cancels while no other is
+ * emitting does the emitting, and picks up any requests made in the meantime, including those made from within
+ * {@code onNext}. Elements are emitted in batches, and the outstanding demand is only updated once per batch.
+ * <p>
+ * No element is pulled from the stream before it is requested. If the stream knows its exact size, it is
+ * completed along with its last element; otherwise, only a request that finds it exhausted can complete it.
+ * Failures of the stream are sent to {@code onError}; a subscriber that throws from {@code onNext} has broken
+ * its contract (rule 2.13), so its subscription is cancelled instead, and the exception logged.
+ */
+final class StreamSubscription<T> implements Subscription {
+
+    static final int BATCH_SIZE = 128;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(StreamSubscription.class);
+
+    private static final Subscription CANCELLED = new Subscription() {
+
+        @Override
+        public void request(final long n) {
+        }
+
+        @Override
+        public void cancel() {
+        }
+    };
+
+    private final Stream<T> stream;
+    private final Subscriber<? super T> subscriber;
+    private final Consumer<T> holder;
+    private final AtomicLong requested = new AtomicLong();
+    private final AtomicInteger wip = new AtomicInteger();
+    private volatile boolean cancelled;
+    private volatile IllegalArgumentException invalidRequest;
+
+    // Only read and written by the emitting thread
+    private Spliterator<T> spliterator;
+    private long remaining = -1;
+    private T next;
+    private boolean done;
+
+    private StreamSubscription(final Stream<T> stream, final Subscriber<? super T> subscriber) {
+
+        this.stream = stream;
+        this.subscriber = subscriber;
+        this.holder = this::hold;
+    }
+
+    /**
+     * Subscribes the subscriber to the stream, unless the stream already has a subscriber, in which case the new
+     * one is sent an error.
+     */
+    static <T> void subscribe(
+            final Stream<T> stream, final AtomicBoolean subscribed, final Subscriber<? super T> subscriber) {
+
+        Objects.requireNonNull(subscriber, "Subscriber must not be null");
+        if (subscribed.getAndSet(true)) {
+            subscriber.onSubscribe(CANCELLED);
+            subscriber.onError(new IllegalStateException("A CachePublisher only accepts a single subscriber"));
+            return;
+        }
+        subscriber.onSubscribe(new StreamSubscription<>(stream, subscriber));
+    }
+
+    @Override
+    public void request(final long n) {
+
+        if (n <= 0)
+            invalidRequest = new IllegalArgumentException(
+                    "Requests must be for a positive number of elements (rule 3.9): " + n);
+        else
+            requested.accumulateAndGet(n, (current, added) -> current + added < 0 ? Long.MAX_VALUE : current + added);
+        drain();
+    }
+
+    @Override
+    public void cancel() {
+
+        cancelled = true;
+        drain();
+    }
+
+    private void drain() {
+
+        if (wip.getAndIncrement() != 0)
+            return;
+
+        int missed = 1;
+        do {
+            if (!done)
+                emit();
+            missed = wip.addAndGet(-missed);
+        } while (missed != 0);
+    }
+
+    /**
+     * Emits batches for as long as there is demand, then returns; or finishes the stream.
+     */
+    private void emit() {
+
+        while (true) {
+            if (cancelled) {
+                finish();
+                return;
+            }
+            if (invalidRequest != null) {
+                finish();
+                subscriber.onError(invalidRequest);
+                return;
+            }
+
+            long demand = requested.get();
+            if (demand == 0)
+                return;
+
+            long batch = Math.min(demand, BATCH_SIZE);
+            long emitted = 0;
+            while (emitted < batch && !cancelled) {
+                if (!pull())
+                    return;
+
+                T element = next;
+                next = null;
+                try {
+                    subscriber.onNext(element);
+                } catch (RuntimeException | Error ex) {
+                    LOGGER.warn("Subscriber {} threw from onNext; cancelling its subscription", subscriber, ex);
+                    cancelled = true;
+                    finish();
+                    return;
+                }
+                emitted++;
+                if (remaining > 0 && --remaining == 0) {
+                    finish();
+                    subscriber.onComplete();
+                    return;
+                }
+            }
+
+            if (demand != Long.MAX_VALUE)
+                requested.addAndGet(-emitted);
+        }
+    }
+
+    /**
+     * Pulls the next element of the stream into {@link #next}. If the stream is exhausted, or fails, the
+     * subscriber is sent the terminal signal, and false is returned.
+     */
+    private boolean pull() {
+
+        try {
+            if (spliterator == null) {
+                spliterator = stream.spliterator();
+                remaining = spliterator.getExactSizeIfKnown();
+            }
+            if (remaining != 0 && spliterator.tryAdvance(holder))
+                return true;
+        } catch (RuntimeException | Error ex) {
+            finish();
+            subscriber.onError(ex);
+            return false;
+        }
+
+        finish();
+        subscriber.onComplete();
+        return false;
+    }
+
+    private void hold(final T element) {
+        next = element;
+    }
+
+    private void finish() {
+
+        done = true;
+        spliterator = null;
+        next = null;
+        stream.close();
+    }
+}
@@ -0,0 +1,87 @@
+package com.coopstools.cachemonads;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.BinaryOperator;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collector;
+
+/**
+ * A collector that feeds each element to several collectors at once, so that a stream only has to be
+ * traversed once to produce all of their results. Each split of a parallel stream holds one container per
+ * collector, which are combined collector by collector.
+ */
+final class TeeCollector<T> implements Collector<T, Object[], List<Object>> {
+
+    private final List<Collector<? super T, Object, ?>> collectors;
+
+    @SuppressWarnings("unchecked")
+    TeeCollector(final List<? extends Collector<? super T, ?, ?>> collectors) {
+
+        this.collectors = new ArrayList<>(collectors.size());
+        for (Collector<? super T, ?, ?> collector : collectors)
+            this.collectors.add((Collector<? super T, Object, ?>) collector);
+    }
+
+    @Override
+    public Supplier<Object[]> supplier() {
+
+        return () -> {
+            Object[] containers = new Object[collectors.size()];
+            for (int i = 0; i < containers.length; i++)
+                containers[i] = collectors.get(i).supplier().get();
+            return containers;
+        };
+    }
+
+    @Override
+    public BiConsumer<Object[], T> accumulator() {
+
+        List<BiConsumer<Object, ? super T>> accumulators = new ArrayList<>(collectors.size());
+        for (Collector<? super T, Object, ?> collector : collectors)
+            accumulators.add(collector.accumulator());
+
+        return (containers, element) -> {
+            for (int i = 0; i < containers.length; i++)
+                accumulators.get(i).accept(containers[i], element);
+        };
+    }
+
+    @Override
+    public BinaryOperator<Object[]> combiner() {
+
+        return (left, right) -> {
+            for (int i = 0; i < left.length; i++)
+                left[i] = collectors.get(i).combiner().apply(left[i], right[i]);
+            return left;
+        };
+    }
+
+    @Override
+    public Function<Object[], List<Object>> finisher() {
+
+        return containers -> {
+            List<Object> results = new ArrayList<>(containers.length);
+            for (int i = 0; i < containers.length; i++)
+                results.add(collectors.get(i).finisher().apply(containers[i]));
+            return Collections.unmodifiableList(results);
+        };
+    }
+
+    /**
+     * The tee is unordered only if every collector is; it is never concurrent, as its containers are not.
+     */
+    @Override
+    public Set<Characteristics> characteristics() {
+
+        for (Collector<? super T, Object, ?> collector : collectors)
+            if (!collector.characteristics().contains(Characteristics.UNORDERED))
+                return Collections.emptySet();
+        return Collections.unmodifiableSet(EnumSet.of(Characteristics.UNORDERED));
+    }
+}
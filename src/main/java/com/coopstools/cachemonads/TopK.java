@@ -0,0 +1,87 @@
+package com.coopstools.cachemonads;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.stream.Collector;
+
+/**
+ * Keeps the first {@code k} elements of a stream, in the order of a comparator, using a bounded heap. Elements
+ * which compare as equal are kept in encounter order, so the result is the same as a stable sort followed by a
+ * limit. Used to rewrite {@code sorted().limit(k)} on a {@link CacheStream}.
+ *
+ * @param <T> The type of the elements
+ */
+final class TopK<T> {
+
+    private final int k;
+    private final Comparator<Ranked<T>> order;
+    private final PriorityQueue<Ranked<T>> heap;
+    private long seen;
+
+    private TopK(final int k, final Comparator<? super T> comparator) {
+
+        this.k = k;
+        Comparator<Ranked<T>> byElement = (r1, r2) -> comparator.compare(r1.element, r2.element);
+        this.order = byElement.thenComparingLong(ranked -> ranked.rank);
+        this.heap = new PriorityQueue<>(Math.max(1, Math.min(k, 1024)), order.reversed());
+    }
+
+    static <T> Collector<T, ?, List<T>> collector(final int k, final Comparator<? super T> comparator) {
+
+        return Collector.of(
+                () -> new TopK<T>(k, comparator),
+                TopK::add,
+                TopK::combine,
+                TopK::toList);
+    }
+
+    private void add(final T element) {
+        offer(new Ranked<>(element, seen++));
+    }
+
+    private void offer(final Ranked<T> ranked) {
+
+        if (heap.size() < k) {
+            heap.add(ranked);
+        } else if (k > 0 && order.compare(ranked, heap.peek()) < 0) {
+            heap.poll();
+            heap.add(ranked);
+        }
+    }
+
+    /**
+     * Merges the elements kept from a later part of the stream, ranking them after every element seen here.
+     */
+    private TopK<T> combine(final TopK<T> later) {
+
+        for (Ranked<T> ranked : later.heap)
+            offer(new Ranked<>(ranked.element, seen + ranked.rank));
+        seen += later.seen;
+        return this;
+    }
+
+    private List<T> toList() {
+
+        List<Ranked<T>> ranked = new ArrayList<>(heap);
+        ranked.sort(order);
+
+        List<T> elements = new ArrayList<>(ranked.size());
+        for (Ranked<T> r : ranked)
+            elements.add(r.element);
+        return elements;
+    }
+
+    private static final class Ranked<T> {
+
+        private final T element;
+        private final long rank;
+
+        private Ranked(final T element, final long rank) {
+
+            this.element = element;
+            this.rank = rank;
+        }
+    }
+}
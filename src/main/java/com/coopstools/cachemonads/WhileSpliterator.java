@@ -0,0 +1,99 @@
+package com.coopstools.cachemonads;
+
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Spliterators that take or drop the longest prefix of a source whose elements match a predicate, as
+ * {@code Stream.takeWhile} and {@code Stream.dropWhile} do on Java 9 and later. The prefix is found by pulling
+ * the source in encounter order, so the result is the same for parallel ordered sources; as the spliterators
+ * extend {@code AbstractSpliterator}, the operations after them can still run in parallel.
+ */
+abstract class WhileSpliterator<T> extends Spliterators.AbstractSpliterator<T> implements Consumer<T> {
+
+    final Spliterator<T> source;
+    final Predicate<? super T> predicate;
+    T next;
+
+    private WhileSpliterator(final Spliterator<T> source, final Predicate<? super T> predicate) {
+
+        super(source.estimateSize(), ORDERED);
+        this.source = source;
+        this.predicate = predicate;
+    }
+
+    /**
+     * Returns the elements up to, and not including, the first that does not match. The source is not pulled
+     * any further once an element has failed to match.
+     */
+    static <T> Spliterator<T> taking(final Spliterator<T> source, final Predicate<? super T> predicate) {
+
+        return new WhileSpliterator<T>(source, predicate) {
+
+            private boolean done;
+
+            @Override
+            public boolean tryAdvance(final Consumer<? super T> action) {
+
+                if (done || !source.tryAdvance(this))
+                    return false;
+                if (!predicate.test(next)) {
+                    done = true;
+                    next = null;
+                    return false;
+                }
+                action.accept(next);
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Returns the elements from the first that does not match. Once it is found, the rest of the source is
+     * passed through without testing.
+     */
+    static <T> Spliterator<T> dropping(final Spliterator<T> source, final Predicate<? super T> predicate) {
+
+        return new WhileSpliterator<T>(source, predicate) {
+
+            private boolean dropped;
+
+            @Override
+            public boolean tryAdvance(final Consumer<? super T> action) {
+
+                if (dropped)
+                    return source.tryAdvance(action);
+
+                while (source.tryAdvance(this)) {
+                    if (!predicate.test(next)) {
+                        dropped = true;
+                        T first = next;
+                        next = null;
+                        action.accept(first);
+                        return true;
+                    }
+                }
+                return false;
+            }
+
+            @Override
+            public void forEachRemaining(final Consumer<? super T> action) {
+
+                if (dropped || tryAdvance(action))
+                    source.forEachRemaining(action);
+            }
+
+            @Override
+            public Spliterator<T> trySplit() {
+                return dropped ? source.trySplit() : super.trySplit();
+            }
+        };
+    }
+
+    @Override
+    public void accept(final T element) {
+        next = element;
+    }
+}
@@ -0,0 +1,212 @@
+package com.coopstools.cachemonads;
+
+import java.util.ArrayDeque;
+import java.util.Comparator;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.function.ToDoubleFunction;
+import java.util.function.ToLongFunction;
+
+/**
+ * Spliterators that group the tuples of a stream into windows, or aggregate over a window sliding along it.
+ * Each pulls from its source only as its own elements are consumed, and holds no more than one window of
+ * tuples. They run sequentially, in encounter order; but as they extend {@code AbstractSpliterator}, the
+ * operations after them can still run in parallel.
+ */
+final class Windows {
+
+    private Windows() {
+    }
+
+    /**
+     * Windows of {@code size} consecutive tuples, starting every {@code step} tuples. A trailing window of fewer
+     * than {@code size} tuples is only emitted if {@code partial} is set.
+     */
+    static <C, V> Spliterator<CacheTuple<CacheSeq<C, V>, CacheSeq<C, V>>> counted(
+            final Spliterator<CacheTuple<C, V>> source, final int size, final int step, final boolean partial) {
+
+        return new Pulling<CacheTuple<C, V>, CacheTuple<CacheSeq<C, V>, CacheSeq<C, V>>>(source) {
+
+            private final ArrayDeque<CacheTuple<C, V>> window = new ArrayDeque<>(size);
+            private long toSkip;
+
+            @Override
+            public boolean tryAdvance(final Consumer<? super CacheTuple<CacheSeq<C, V>, CacheSeq<C, V>>> action) {
+
+                while (window.size() < size && pull()) {
+                    if (toSkip > 0)
+                        toSkip--;
+                    else
+                        window.add(next);
+                }
+                if (window.isEmpty() || (window.size() < size && !partial))
+                    return false;
+
+                action.accept(windowTuple(window.toArray()));
+                if (window.size() < size) {
+                    window.clear();
+                    return true;
+                }
+                for (int i = 0; i < step && !window.isEmpty(); i++)
+                    window.poll();
+                toSkip = Math.max(0, (long) step - size);
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Windows of consecutive tuples whose timestamps fall in the same interval of {@code width}, counted from
+     * the epoch of the timestamps.
+     */
+    static <C, V> Spliterator<CacheTuple<CacheSeq<C, V>, CacheSeq<C, V>>> timed(
+            final Spliterator<CacheTuple<C, V>> source, final ToLongFunction<? super V> timestamp, final long width) {
+
+        return new Pulling<CacheTuple<C, V>, CacheTuple<CacheSeq<C, V>, CacheSeq<C, V>>>(source) {
+
+            private final ArrayDeque<CacheTuple<C, V>> window = new ArrayDeque<>();
+            private long interval;
+
+            @Override
+            public boolean tryAdvance(final Consumer<? super CacheTuple<CacheSeq<C, V>, CacheSeq<C, V>>> action) {
+
+                while (pull()) {
+                    long nextInterval = Math.floorDiv(timestamp.applyAsLong(next.getRight()), width);
+                    boolean closes = !window.isEmpty() && nextInterval != interval;
+                    Object[] closed = closes ? window.toArray() : null;
+                    if (closes)
+                        window.clear();
+                    window.add(next);
+                    interval = nextInterval;
+                    if (closes) {
+                        action.accept(windowTuple(closed));
+                        return true;
+                    }
+                }
+                if (window.isEmpty())
+                    return false;
+
+                action.accept(windowTuple(window.toArray()));
+                window.clear();
+                return true;
+            }
+        };
+    }
+
+    /**
+     * The sum of each window of {@code size} consecutive values, paired with the cached value of the last tuple
+     * in the window. The sum is updated as the window slides, and recomputed once per {@code size} tuples, so
+     * that rounding errors cannot build up.
+     */
+    static <C, V> Spliterator<CacheTuple<C, Double>> slidingSum(
+            final Spliterator<CacheTuple<C, V>> source, final int size, final ToDoubleFunction<? super V> mapper) {
+
+        return new Pulling<CacheTuple<C, V>, CacheTuple<C, Double>>(source) {
+
+            private final double[] values = new double[size];
+            private long count;
+            private double sum;
+
+            @Override
+            public boolean tryAdvance(final Consumer<? super CacheTuple<C, Double>> action) {
+
+                while (pull()) {
+                    int slot = (int) (count++ % size);
+                    double value = mapper.applyAsDouble(next.getRight());
+                    sum += value - values[slot];
+                    values[slot] = value;
+                    if (slot == size - 1) {
+                        sum = 0;
+                        for (double windowValue : values)
+                            sum += windowValue;
+                    }
+                    if (count >= size) {
+                        action.accept(new CacheTuple<>(next.getLeft(), sum));
+                        return true;
+                    }
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * The least tuple of each window of {@code size} consecutive tuples, by the order of their values; the
+     * earliest, if several are equally least. The candidates are kept in a monotonic deque: a tuple is dropped
+     * as soon as a later one is less, as it can then never be the least of a window, so each tuple is added and
+     * removed once.
+     */
+    static <C, V> Spliterator<CacheTuple<C, V>> slidingLeast(
+            final Spliterator<CacheTuple<C, V>> source, final int size, final Comparator<? super V> order) {
+
+        return new Pulling<CacheTuple<C, V>, CacheTuple<C, V>>(source) {
+
+            private final Object[] candidates = new Object[size];
+            private final long[] positions = new long[size];
+            private int head;
+            private int length;
+            private long count;
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public boolean tryAdvance(final Consumer<? super CacheTuple<C, V>> action) {
+
+                while (pull()) {
+                    long position = count++;
+                    if (length > 0 && positions[head] <= position - size) {
+                        candidates[head] = null;
+                        head = (head + 1) % size;
+                        length--;
+                    }
+                    while (length > 0) {
+                        int tail = (head + length - 1) % size;
+                        if (order.compare(((CacheTuple<C, V>) candidates[tail]).getRight(), next.getRight()) <= 0)
+                            break;
+                        candidates[tail] = null;
+                        length--;
+                    }
+                    int slot = (head + length++) % size;
+                    candidates[slot] = next;
+                    positions[slot] = position;
+
+                    if (count >= size) {
+                        action.accept((CacheTuple<C, V>) candidates[head]);
+                        return true;
+                    }
+                }
+                return false;
+            }
+        };
+    }
+
+    private static <C, V> CacheTuple<CacheSeq<C, V>, CacheSeq<C, V>> windowTuple(final Object[] tuples) {
+
+        CacheSeq<C, V> window = CacheSeq.fromTuples(tuples);
+        return new CacheTuple<>(window, window);
+    }
+
+    /**
+     * A spliterator that pulls one tuple at a time from its source into {@code next}.
+     */
+    private abstract static class Pulling<T, R> extends Spliterators.AbstractSpliterator<R> implements Consumer<T> {
+
+        private final Spliterator<T> source;
+        T next;
+
+        Pulling(final Spliterator<T> source) {
+
+            super(Long.MAX_VALUE, Spliterator.ORDERED);
+            this.source = source;
+        }
+
+        @Override
+        public void accept(final T tuple) {
+            next = tuple;
+        }
+
+        boolean pull() {
+            return source.tryAdvance(this);
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.coopstools.cachemonads;
+
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+import org.reactivestreams.FlowAdapters;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+
+/**
+ * A Reactive Streams {@link Publisher} of the results of a CacheStream pipeline, which is also a
+ * {@link Flow.Publisher}. This version replaces the JDK 8 version on JDK 11 and later; Flow subscribers are
+ * adapted to Reactive Streams subscribers, and share the same demand-driven subscription.
+ *
+ * @param <T> The type of the published elements
+ */
+public final class CachePublisher<T> implements Publisher<T>, Flow.Publisher<T> {
+
+    private final Stream<T> stream;
+    private final AtomicBoolean subscribed = new AtomicBoolean();
+
+    CachePublisher(final Stream<T> stream) {
+        this.stream = stream;
+    }
+
+    @Override
+    public void subscribe(final Subscriber<? super T> subscriber) {
+        StreamSubscription.subscribe(stream, subscribed, subscriber);
+    }
+
+    @Override
+    public void subscribe(final Flow.Subscriber<? super T> subscriber) {
+        StreamSubscription.subscribe(stream, subscribed, FlowAdapters.toSubscriber(subscriber));
+    }
+}
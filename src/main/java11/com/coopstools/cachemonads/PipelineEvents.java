@@ -0,0 +1,30 @@
+package com.coopstools.cachemonads;
+
+import jdk.jfr.EventType;
+
+/**
+ * Creates the JDK Flight Recorder events of {@link CacheStream} executions. This version replaces the JDK 8
+ * version on JDK 11 and later. An event is only created while a recording has its type enabled, so pipelines
+ * run without recording pay only for the enabled check.
+ */
+final class PipelineEvents {
+
+    private static final EventType TERMINAL = EventType.getEventType(TerminalEvent.class);
+    private static final EventType STAGE = EventType.getEventType(StageEvent.class);
+    private static final EventType SPILL = EventType.getEventType(SpillEvent.class);
+
+    private PipelineEvents() {
+    }
+
+    static PipelineEvent terminal(final String operation, final StreamPlan plan, final boolean parallel) {
+        return TERMINAL.isEnabled() ? new TerminalEvent(operation, plan.shape(), parallel) : null;
+    }
+
+    static PipelineEvent stage(final String operation, final StreamPlan plan, final boolean parallel) {
+        return STAGE.isEnabled() ? new StageEvent(operation, plan.shape(), parallel) : null;
+    }
+
+    static PipelineEvent spill(final boolean parallel) {
+        return SPILL.isEnabled() ? new SpillEvent(parallel) : null;
+    }
+}
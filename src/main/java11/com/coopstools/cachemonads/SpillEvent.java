@@ -0,0 +1,44 @@
+package com.coopstools.cachemonads;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("com.coopstools.cachemonads.Spill")
+@Label("CacheStream Sort Spill")
+@Category({"CacheMonads", "CacheStream"})
+@Description("The building of the sorted runs of an external CacheStream sort, up to the start of the merge")
+final class SpillEvent extends Event implements PipelineEvent {
+
+    @Label("Elements")
+    long elements;
+
+    @Label("Runs")
+    @Description("The number of sorted runs written to disk, or zero if the input fit in memory")
+    long runs;
+
+    @Label("Parallel")
+    boolean parallel;
+
+    SpillEvent(final boolean parallel) {
+        this.parallel = parallel;
+    }
+
+    @Override
+    public void start() {
+        begin();
+    }
+
+    @Override
+    public void complete(final long elementsIn, final long elementsOut) {
+
+        end();
+        if (shouldCommit()) {
+            this.elements = elementsIn;
+            this.runs = elementsOut;
+            commit();
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package com.coopstools.cachemonads;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("com.coopstools.cachemonads.Stage")
+@Label("CacheStream Stateful Stage")
+@Category({"CacheMonads", "CacheStream"})
+@Description("A stateful stage of a CacheStream pipeline, such as sorted or distinct. Sorts are timed from their "
+        + "first input element until their first output element.")
+final class StageEvent extends Event implements PipelineEvent {
+
+    @Label("Operation")
+    String operation;
+
+    @Label("Pipeline Shape")
+    String shape;
+
+    @Label("Elements In")
+    long elementsIn;
+
+    @Label("Elements Out")
+    long elementsOut;
+
+    @Label("Parallel")
+    boolean parallel;
+
+    StageEvent(final String operation, final String shape, final boolean parallel) {
+
+        this.operation = operation;
+        this.shape = shape;
+        this.parallel = parallel;
+    }
+
+    @Override
+    public void start() {
+        begin();
+    }
+
+    @Override
+    public void complete(final long elementsIn, final long elementsOut) {
+
+        end();
+        if (shouldCommit()) {
+            this.elementsIn = elementsIn;
+            this.elementsOut = elementsOut;
+            commit();
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.coopstools.cachemonads;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("com.coopstools.cachemonads.Terminal")
+@Label("CacheStream Terminal Operation")
+@Category({"CacheMonads", "CacheStream"})
+@Description("The execution of a CacheStream pipeline by one of its terminal operations")
+final class TerminalEvent extends Event implements PipelineEvent {
+
+    @Label("Operation")
+    String operation;
+
+    @Label("Pipeline Shape")
+    String shape;
+
+    @Label("Elements")
+    @Description("The number of elements that reached the terminal operation")
+    long elements;
+
+    @Label("Parallel")
+    boolean parallel;
+
+    TerminalEvent(final String operation, final String shape, final boolean parallel) {
+
+        this.operation = operation;
+        this.shape = shape;
+        this.parallel = parallel;
+    }
+
+    @Override
+    public void start() {
+        begin();
+    }
+
+    @Override
+    public void complete(final long elementsIn, final long elementsOut) {
+
+        end();
+        if (shouldCommit()) {
+            elements = elementsIn;
+            commit();
+        }
+    }
+}
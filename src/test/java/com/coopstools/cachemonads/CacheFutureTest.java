@@ -0,0 +1,100 @@
+package com.coopstools.cachemonads;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class CacheFutureTest {
+
+    @Test
+    public void testCompletedValueRunsOnCallingThread() {
+
+        AtomicReference<Thread> mappedOn = new AtomicReference<>();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            CacheFuture<String, Integer> length = CacheFuture.of("monkey")
+                    .withExecutor(executor)
+                    .map(word -> {
+                        mappedOn.set(Thread.currentThread());
+                        return word.length();
+                    });
+
+            Assert.assertTrue(length.isDone());
+            Assert.assertSame(Thread.currentThread(), mappedOn.get());
+            Assert.assertEquals(Integer.valueOf(6), length.join().get());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testUnchangedStepsReturnSameInstance() {
+
+        CacheFuture<String, String> word = CacheFuture.of("code");
+
+        Assert.assertSame(word, word.cache());
+        Assert.assertSame(word, word.load());
+        Assert.assertSame(word, word.filter(value -> true));
+    }
+
+    @Test
+    public void testPendingStepsRunOnCompletion() {
+
+        CompletableFuture<String> source = new CompletableFuture<>();
+        CacheFuture<String, String> loaded = CacheFuture.from(source)
+                .cache()
+                .map(String::length)
+                .filter(length -> length > 3)
+                .load();
+
+        Assert.assertFalse(loaded.isDone());
+        source.complete("coffee");
+        Assert.assertEquals("coffee", loaded.join().get());
+    }
+
+    @Test
+    public void testFlatMapKeepsCache() throws Exception {
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            String result = CacheFuture.supplyAsync(() -> "up", executor)
+                    .cache()
+                    .flatMap(word -> CompletableFuture.supplyAsync(word::length, executor))
+                    .map(length -> length * 10)
+                    .toCompletableFuture()
+                    .thenApply(optional -> optional.load().get() + ":" + optional.get())
+                    .get();
+
+            Assert.assertEquals("up:20", result);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testEmptyAndFailedResults() {
+
+        Assert.assertFalse(CacheFuture.from(CompletableFuture.completedFuture(null)).join().isPresent());
+        Assert.assertFalse(CacheFuture.of("up")
+                .filter(word -> word.length() > 3)
+                .flatMap(word -> CompletableFuture.completedFuture(word.length()))
+                .join()
+                .isPresent());
+
+        CacheFuture<String, Integer> failed = CacheFuture.of("up").map(word -> {
+            throw new IllegalStateException("boom");
+        });
+        Assert.assertTrue(failed.isDone());
+        try {
+            failed.join();
+            Assert.fail();
+        } catch (CompletionException cEx) {
+            Assert.assertTrue(cEx.getCause() instanceof IllegalStateException);
+        }
+    }
+}
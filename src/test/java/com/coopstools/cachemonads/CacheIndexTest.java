@@ -0,0 +1,94 @@
+package com.coopstools.cachemonads;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+public class CacheIndexTest {
+
+    private final List<String> words = Arrays.asList("code", "monkey", "up", "coffee", "at", "cod");
+
+    @Test
+    public void testGetByIntegerKey() {
+
+        CacheIndex<Integer, String> byLength = CacheStream.of(words).cache().map(String::length).toIndex();
+
+        assertEquals(6, byLength.size());
+        assertEquals(4, byLength.keyCount());
+        assertEquals(Arrays.asList("monkey", "coffee"), byLength.get(6));
+        assertEquals(Collections.emptyList(), byLength.get(5));
+        assertTrue(byLength.containsKey(3));
+        assertFalse(byLength.containsKey(7));
+        assertEquals(Arrays.asList("cod", "code"), byLength.range(3, 6));
+    }
+
+    @Test
+    public void testLongKeysOnParallelStream() {
+
+        List<Long> ids = new ArrayList<>();
+        for (long id = 0; id < 20_000; id++)
+            ids.add(id * 7);
+
+        CacheIndex<Long, Long> byBucket = CacheStream.parrallelOf(ids).cache().map(id -> id / 70).toIndex();
+
+        assertEquals(2_000, byBucket.keyCount());
+        assertEquals(Arrays.asList(70L, 77L, 84L, 91L, 98L, 105L, 112L, 119L, 126L, 133L), byBucket.get(1L));
+        assertEquals(20, byBucket.range(5L, 7L).size());
+    }
+
+    @Test
+    public void testPrefixAndRangeOfStrings() {
+
+        CacheIndex<String, Integer> byWord = CacheStream.of(Arrays.asList(0, 1, 2, 3, 4, 5))
+                .cache()
+                .map(words::get)
+                .toIndex();
+
+        assertEquals(Arrays.asList(5, 0), byWord.prefix("cod"));
+        assertEquals(Arrays.asList(5, 0, 3), byWord.prefix("co"));
+        assertEquals(Collections.emptyList(), byWord.prefix("x"));
+        assertEquals(Arrays.asList(4, 5, 0), byWord.range("at", "coffee"));
+    }
+
+    @Test
+    public void testKeysThatCompareEqualShareAGroup() {
+
+        CacheIndex<BigDecimal, String> byPrice = CacheStream.of(Arrays.asList("1.0", "2", "1.00", "3.5"))
+                .cache()
+                .map(BigDecimal::new)
+                .toIndex();
+
+        assertEquals(3, byPrice.keyCount());
+        assertEquals(Arrays.asList("1.0", "1.00"), byPrice.get(new BigDecimal("1.0")));
+        assertEquals(Arrays.asList("1.0", "1.00"), byPrice.get(new BigDecimal("1.000")));
+        assertEquals(byPrice.range(new BigDecimal("1"), new BigDecimal("2")), byPrice.get(new BigDecimal("1")));
+        assertTrue(byPrice.containsKey(new BigDecimal("3.50")));
+        assertFalse(byPrice.containsKey(new BigDecimal("3")));
+    }
+
+    @Test
+    public void testIncomparableKeys() {
+
+        CacheIndex<Object, Object> byKey = CacheStream.of(Arrays.<Object>asList(1, "one", 1, 1L)).cache().toIndex();
+
+        assertEquals(3, byKey.keyCount());
+        assertEquals(Arrays.<Object>asList(1, 1), byKey.get(1));
+        assertEquals(Collections.<Object>singletonList(1L), byKey.get(1L));
+
+        try {
+            byKey.range(1, 2);
+            fail("UnsupportedOperationException should have been thrown");
+        } catch (UnsupportedOperationException uoEx) {
+            System.out.println("success");
+        }
+    }
+}
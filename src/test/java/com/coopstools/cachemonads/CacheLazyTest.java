@@ -0,0 +1,88 @@
+package com.coopstools.cachemonads;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class CacheLazyTest {
+
+    @Test
+    public void testStepsRunOnlyWhenRead() {
+
+        AtomicInteger calls = new AtomicInteger();
+        CacheLazy<String, Integer> length = CacheLazy.of("monkey")
+                .map(word -> {
+                    calls.incrementAndGet();
+                    return word.length();
+                });
+
+        Assert.assertEquals(0, calls.get());
+        Assert.assertFalse(length.isEvaluated());
+        Assert.assertEquals(Integer.valueOf(6), length.get());
+        Assert.assertEquals(Integer.valueOf(6), length.orElse(0));
+        Assert.assertEquals(1, calls.get());
+        Assert.assertTrue(length.isEvaluated());
+    }
+
+    @Test
+    public void testFilteredOutSkipsLaterSteps() {
+
+        AtomicInteger calls = new AtomicInteger();
+        String result = CacheLazy.of("up")
+                .cache()
+                .map(String::length)
+                .filter(length -> length > 3)
+                .map(length -> calls.incrementAndGet())
+                .load()
+                .orElse("none");
+
+        Assert.assertEquals("none", result);
+        Assert.assertEquals(0, calls.get());
+    }
+
+    @Test
+    public void testLoadReturnsCachedValue() {
+
+        CacheLazy<String, Integer> length = CacheLazy.supply(() -> "coffee").cache().map(String::length);
+
+        Assert.assertEquals("coffee", length.load().get());
+        Assert.assertFalse(CacheLazy.supply(() -> null).isPresent());
+    }
+
+    @Test
+    public void testSharedInstanceEvaluatesOnce() throws Exception {
+
+        AtomicInteger calls = new AtomicInteger();
+        CacheLazy<String, String> shared = CacheLazy.of("code").map(word -> {
+            calls.incrementAndGet();
+            return word.toUpperCase();
+        });
+
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < 8; i++)
+                results.add(executor.submit(() -> {
+                    start.await();
+                    return shared.get();
+                }));
+            start.countDown();
+
+            for (Future<String> result : results)
+                Assert.assertEquals("CODE", result.get(10, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+
+        Assert.assertEquals(1, calls.get());
+    }
+}
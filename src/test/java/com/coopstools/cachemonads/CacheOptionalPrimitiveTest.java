@@ -0,0 +1,59 @@
+package com.coopstools.cachemonads;
+
+import java.util.NoSuchElementException;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class CacheOptionalPrimitiveTest {
+
+    @Test
+    public void testMapToIntFilterAndLoad() {
+
+        CacheOptionalInt<String> length = CacheOptional.of("monkey").mapToInt(String::length);
+
+        Assert.assertEquals(6, length.getAsInt());
+        Assert.assertEquals(12, length.map(l -> l * 2).orElse(0));
+        Assert.assertEquals("monkey", length.filter(l -> l > 3).load().get());
+        Assert.assertFalse(length.filter(l -> l > 10).isPresent());
+        Assert.assertFalse(length.filter(l -> l > 10).load().isPresent());
+        Assert.assertEquals(-1, length.filter(l -> l > 10).orElse(-1));
+    }
+
+    @Test
+    public void testMapToLongKeepsCache() {
+
+        CacheOptional<String, Long> doubled = CacheOptional.of("code")
+                .mapToLong(word -> word.length() * 1_000_000_000L)
+                .map(l -> l * 2)
+                .mapToObj(Long::valueOf);
+
+        Assert.assertEquals(Long.valueOf(8_000_000_000L), doubled.get());
+        Assert.assertEquals("code", doubled.load().get());
+    }
+
+    @Test
+    public void testMapToDouble() {
+
+        CacheOptionalDouble<String> half = CacheOptional.of("up").mapToDouble(word -> word.length() / 4.0);
+
+        Assert.assertEquals(0.5, half.getAsDouble(), 0);
+        Assert.assertEquals(0.5, half.orElseGet(() -> 1.0), 0);
+        Assert.assertEquals("up", half.load().get());
+    }
+
+    @Test
+    public void testEmpty() {
+
+        CacheOptionalInt<String> absent = CacheOptional.<String>ofNullable(null).mapToInt(String::length);
+
+        Assert.assertFalse(absent.isPresent());
+        Assert.assertEquals(CacheOptionalInt.empty(), absent);
+        try {
+            absent.getAsInt();
+            Assert.fail("NoSuchElementException should have been thrown");
+        } catch (NoSuchElementException nseEx) {
+            System.out.println("success");
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package com.coopstools.cachemonads;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import org.junit.Test;
+
+import com.coopstools.Child;
+import com.coopstools.Parent;
+
+public class CachePipelineTest {
+
+    private static final CachePipeline<Parent, Parent> GOOD_PARENTS = CachePipeline.<Parent>builder()
+            .cache()
+            .map(Parent::getChildren)
+            .flatMap(Collection::stream)
+            .map(Child::getAttribute1)
+            .filter(att -> att > 10)
+            .load()
+            .build();
+
+    @Test
+    public void testApplyToCollection() {
+
+        Parent parent1 = new Parent("parent1");
+        parent1.setChildren(Arrays.asList(new Child(4), new Child(11)));
+        Parent parent2 = new Parent("parent2");
+        parent2.setChildren(Arrays.asList(new Child(3), new Child(6)));
+        Parent parent3 = new Parent("parent3");
+        parent3.setChildren(Arrays.asList(new Child(12), new Child(16)));
+
+        List<Parent> parents = GOOD_PARENTS.apply(Arrays.asList(parent1, parent2, parent3));
+
+        assertEquals(Arrays.asList(parent1, parent3, parent3), parents);
+        assertEquals(Collections.emptyList(), GOOD_PARENTS.apply(Collections.singletonList(parent2)));
+    }
+
+    @Test
+    public void testApplyToStream() {
+
+        CachePipeline<String, String> longWords = CachePipeline.<String>builder()
+                .cache()
+                .map(String::length)
+                .filter(length -> length > 3)
+                .load()
+                .build();
+
+        List<String> words = longWords.apply(Stream.of("code", "monkey", "get", "up", "coffee"))
+                .collect(Collectors.toList());
+
+        assertEquals(Arrays.asList("code", "monkey", "coffee"), words);
+    }
+
+    @Test
+    public void testApplyToParallelStream() {
+
+        CachePipeline<Integer, Integer> evenSquares = CachePipeline.<Integer>builder()
+                .filter(i -> i % 2 == 0)
+                .map(i -> i * i)
+                .build();
+
+        int sum = evenSquares.apply(IntStream.range(0, 1000).boxed().parallel())
+                .mapToInt(Integer::intValue)
+                .sum();
+
+        assertEquals(IntStream.range(0, 1000).filter(i -> i % 2 == 0).map(i -> i * i).sum(), sum);
+    }
+
+    @Test
+    public void testRedundantStagesAreOptimized() {
+
+        CachePipeline<String, Integer> pipeline = CachePipeline.<String>builder()
+                .cache()
+                .load()
+                .cache()
+                .map(String::trim)
+                .map(String::length)
+                .filter(length -> length > 1)
+                .filter(length -> length < 5)
+                .cache()
+                .build();
+
+        assertEquals("CachePipeline[map -> filter]", pipeline.toString());
+        assertEquals(Arrays.asList(4, 2), pipeline.apply(Arrays.asList(" code ", "a", "up", "monkey")));
+    }
+
+    @Test
+    public void testForEachOnSingleElement() {
+
+        List<Parent> results = new ArrayList<>();
+        Parent parent = new Parent("parent");
+        parent.setChildren(Arrays.asList(new Child(20), new Child(1)));
+
+        GOOD_PARENTS.forEach(parent, results::add);
+
+        assertEquals(Collections.singletonList(parent), results);
+    }
+
+    @Test
+    public void testCompiledPipelineMatchesInterpreted() {
+
+        CachePipeline.Builder<Parent, Parent, Parent> goodParents = CachePipeline.<Parent>builder()
+                .cache()
+                .map(Parent::getChildren)
+                .flatMap(Collection::stream)
+                .map(Child::getAttribute1)
+                .filter(att -> att > 10)
+                .load();
+
+        Parent parent1 = new Parent("parent1");
+        parent1.setChildren(Arrays.asList(new Child(4), new Child(11)));
+        Parent parent2 = new Parent("parent2");
+        parent2.setChildren(Arrays.asList(new Child(3), new Child(6)));
+        List<Parent> parents = Arrays.asList(parent1, parent2);
+
+        CachePipeline<Parent, Parent> compiled = goodParents.compile();
+
+        assertTrue(compiled.isCompiled());
+        assertEquals(goodParents.build().apply(parents), compiled.apply(parents));
+        assertEquals(Collections.singletonList(parent1), compiled.apply(parents.stream()).collect(Collectors.toList()));
+    }
+
+    @Test
+    public void testCompiledShapesAreShared() {
+
+        CachePipeline.Builder<String, String, Integer> lengths = CachePipeline.<String>builder()
+                .map(String::length);
+
+        lengths.compile();
+        int shapes = PipelineCompiler.compiledShapes();
+        CachePipeline<String, Integer> second = lengths.compile();
+
+        assertEquals(shapes, PipelineCompiler.compiledShapes());
+        assertEquals(Arrays.asList(4, 2), second.apply(Arrays.asList("code", "up")));
+    }
+
+    @Test
+    public void testShapesGetTheirOwnKernelClass() {
+
+        Function<Object, Object> identity = v -> v;
+        BiConsumer<Object, BiConsumer<Object, Object>> kernel =
+                PipelineCompiler.compile(new PipelineStage[] {PipelineStage.map(identity)});
+
+        assertNotNull(kernel);
+        assertEquals(PipelineKernel.class.getName(), kernel.getClass().getName());
+        assertNotSame(PipelineKernel.class, kernel.getClass());
+    }
+
+    @Test
+    public void testLongPipelinesAreInterpreted() {
+
+        CachePipeline.Builder<Integer, Integer, Integer> increments = CachePipeline.<Integer>builder();
+        for (int i = 0; i < PipelineKernel.MAX_STAGES + 1; i++)
+            increments = increments.map(v -> v + 1).cache();
+
+        CachePipeline<Integer, Integer> pipeline = increments.load().compile();
+
+        assertFalse(pipeline.isCompiled());
+        assertEquals(Collections.singletonList(9), pipeline.apply(Collections.singletonList(0)));
+    }
+}
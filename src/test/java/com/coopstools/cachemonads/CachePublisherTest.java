@@ -0,0 +1,204 @@
+package com.coopstools.cachemonads;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+public class CachePublisherTest {
+
+    @Test
+    public void testPullsOnlyRequestedElements() {
+
+        AtomicInteger pulled = new AtomicInteger();
+        CachePublisher<Integer> publisher = CacheStream.of(IntStream.range(0, 1000).boxed())
+                .peek(value -> pulled.incrementAndGet())
+                .map(value -> value * 2)
+                .publisher();
+
+        RecordingSubscriber<Integer> subscriber = new RecordingSubscriber<>();
+        publisher.subscribe(subscriber);
+        Assert.assertEquals(0, pulled.get());
+
+        subscriber.subscription.request(3);
+        Assert.assertEquals(Arrays.asList(0, 2, 4), subscriber.values);
+        Assert.assertEquals(3, pulled.get());
+
+        subscriber.subscription.request(300);
+        Assert.assertEquals(303, subscriber.values.size());
+        Assert.assertEquals(303, pulled.get());
+        Assert.assertFalse(subscriber.completed);
+    }
+
+    @Test
+    public void testCompletesAndClosesStream() {
+
+        AtomicBoolean closed = new AtomicBoolean();
+        RecordingSubscriber<Map.Entry<String, Integer>> subscriber = new RecordingSubscriber<>();
+        CacheStream.of(Arrays.asList("code", "up", "coffee").stream().onClose(() -> closed.set(true)))
+                .cache()
+                .map(String::length)
+                .sorted()
+                .pairPublisher()
+                .subscribe(subscriber);
+
+        subscriber.subscription.request(Long.MAX_VALUE);
+
+        Assert.assertTrue(subscriber.completed);
+        Assert.assertTrue(closed.get());
+        Assert.assertEquals(
+                Arrays.asList("up=2", "code=4", "coffee=6"),
+                subscriber.values.stream().map(Object::toString).collect(Collectors.toList()));
+    }
+
+    @Test
+    public void testCompletesWhenDemandIsMetExactly() {
+
+        AtomicBoolean closed = new AtomicBoolean();
+        RecordingSubscriber<Integer> subscriber = new RecordingSubscriber<>();
+        CacheStream.of(Arrays.asList(1, 2, 3).stream().onClose(() -> closed.set(true)))
+                .publisher()
+                .subscribe(subscriber);
+
+        subscriber.subscription.request(3);
+
+        Assert.assertEquals(Arrays.asList(1, 2, 3), subscriber.values);
+        Assert.assertTrue(subscriber.completed);
+        Assert.assertTrue(closed.get());
+    }
+
+    @Test
+    public void testStreamOfUnknownSizeCompletesOnNextRequest() {
+
+        AtomicInteger pulled = new AtomicInteger();
+        RecordingSubscriber<Integer> subscriber = new RecordingSubscriber<>();
+        CacheStream.of(Arrays.asList(1, 2, 3, 4))
+                .peek(value -> pulled.incrementAndGet())
+                .filter(value -> value % 2 == 0)
+                .publisher()
+                .subscribe(subscriber);
+
+        subscriber.subscription.request(2);
+        Assert.assertEquals(Arrays.asList(2, 4), subscriber.values);
+        Assert.assertEquals(4, pulled.get());
+        Assert.assertFalse(subscriber.completed);
+
+        subscriber.subscription.request(1);
+        Assert.assertTrue(subscriber.completed);
+    }
+
+    @Test
+    public void testThrowingSubscriberIsCancelledRatherThanSentAnError() {
+
+        AtomicBoolean closed = new AtomicBoolean();
+        AtomicInteger pulled = new AtomicInteger();
+        RecordingSubscriber<Integer> subscriber = new RecordingSubscriber<Integer>() {
+            @Override
+            public void onNext(final Integer value) {
+
+                super.onNext(value);
+                if (value == 2)
+                    throw new IllegalStateException("Subscriber failure");
+            }
+        };
+        CacheStream.of(IntStream.range(0, 100).boxed().onClose(() -> closed.set(true)))
+                .peek(value -> pulled.incrementAndGet())
+                .publisher()
+                .subscribe(subscriber);
+
+        subscriber.subscription.request(10);
+        subscriber.subscription.request(10);
+
+        Assert.assertEquals(Arrays.asList(0, 1, 2), subscriber.values);
+        Assert.assertNull(subscriber.error);
+        Assert.assertFalse(subscriber.completed);
+        Assert.assertTrue(closed.get());
+        Assert.assertEquals(3, pulled.get());
+    }
+
+    @Test
+    public void testCancelFromOnNextStopsStream() {
+
+        AtomicBoolean closed = new AtomicBoolean();
+        RecordingSubscriber<Integer> subscriber = new RecordingSubscriber<Integer>() {
+            @Override
+            public void onNext(final Integer value) {
+
+                super.onNext(value);
+                if (values.size() == 5)
+                    subscription.cancel();
+                else
+                    subscription.request(1);
+            }
+        };
+        CacheStream.of(IntStream.range(0, 100).boxed().onClose(() -> closed.set(true)))
+                .publisher()
+                .subscribe(subscriber);
+
+        subscriber.subscription.request(1);
+
+        Assert.assertEquals(Arrays.asList(0, 1, 2, 3, 4), subscriber.values);
+        Assert.assertTrue(closed.get());
+        Assert.assertFalse(subscriber.completed);
+    }
+
+    @Test
+    public void testErrors() {
+
+        RecordingSubscriber<Integer> failing = new RecordingSubscriber<>();
+        CacheStream.of(Arrays.asList(1, 0, 2))
+                .map(value -> 10 / value)
+                .publisher()
+                .subscribe(failing);
+        failing.subscription.request(5);
+        Assert.assertEquals(Arrays.asList(10), failing.values);
+        Assert.assertTrue(failing.error instanceof ArithmeticException);
+
+        CachePublisher<Integer> publisher = CacheStream.of(Arrays.asList(1, 2)).publisher();
+        RecordingSubscriber<Integer> first = new RecordingSubscriber<>();
+        RecordingSubscriber<Integer> second = new RecordingSubscriber<>();
+        publisher.subscribe(first);
+        publisher.subscribe(second);
+        Assert.assertTrue(second.error instanceof IllegalStateException);
+
+        first.subscription.request(0);
+        Assert.assertTrue(first.error instanceof IllegalArgumentException);
+    }
+
+    private static class RecordingSubscriber<T> implements Subscriber<T> {
+
+        final List<T> values = new ArrayList<>();
+        Subscription subscription;
+        Throwable error;
+        boolean completed;
+
+        @Override
+        public void onSubscribe(final Subscription subscription) {
+            this.subscription = subscription;
+        }
+
+        @Override
+        public void onNext(final T value) {
+            values.add(value);
+        }
+
+        @Override
+        public void onError(final Throwable error) {
+            this.error = error;
+        }
+
+        @Override
+        public void onComplete() {
+            completed = true;
+        }
+    }
+}
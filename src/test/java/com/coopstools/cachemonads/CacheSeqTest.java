@@ -0,0 +1,74 @@
+package com.coopstools.cachemonads;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.Test;
+
+public class CacheSeqTest {
+
+    private final CacheSeq<String, Integer> lengths = CacheStream.of(
+            Arrays.asList("code", "monkey", "get", "up", "get", "coffee"))
+            .cache()
+            .map(String::length)
+            .filter(length -> length >= 3)
+            .materialize();
+
+    @Test
+    public void testSizeAndRandomAccess() {
+
+        assertEquals(5, lengths.size());
+        assertEquals("monkey", lengths.getCache(1));
+        assertEquals(Integer.valueOf(6), lengths.getValue(1));
+    }
+
+    @Test
+    public void testOutOfBounds() {
+
+        try {
+            lengths.getValue(5);
+            fail("IndexOutOfBoundsException should have been thrown");
+        } catch (IndexOutOfBoundsException ioobEx) {
+            System.out.println("success");
+        }
+    }
+
+    @Test
+    public void testReplay() {
+
+        assertEquals(5L, lengths.stream().count());
+
+        List<String> longest = lengths.stream()
+                .sorted((l1, l2) -> Integer.compare(l2, l1))
+                .load()
+                .limit(2)
+                .collect(Collectors.toList());
+        assertEquals(Arrays.asList("monkey", "coffee"), longest);
+
+        assertEquals(Integer.valueOf(22), lengths.parallelStream().reduce(0, Integer::sum));
+    }
+
+    @Test
+    public void testBalancedSplit() {
+
+        CacheSeq<Integer, Integer> numbers = CacheStream.of(IntStream.range(0, 100).boxed()).materialize();
+        Spliterator<?> second = numbers.parallelStream().toStream().spliterator();
+        Spliterator<?> first = second.trySplit();
+        assertEquals(50L, first.getExactSizeIfKnown());
+        assertEquals(50L, second.getExactSizeIfKnown());
+    }
+
+    @Test
+    public void testEmpty() {
+
+        assertTrue(CacheStream.of(Arrays.<String>asList()).materialize().isEmpty());
+        assertEquals(0L, CacheSeq.empty().stream().count());
+    }
+}
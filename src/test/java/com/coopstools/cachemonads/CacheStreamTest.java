@@ -1,15 +1,28 @@
 package com.coopstools.cachemonads;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.time.Duration;
+import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -366,4 +379,634 @@ public class CacheStreamTest {
 
         assertEquals("code", playList.get(0));
     }
+
+    @Test
+    public void testMinAndMax() {
+
+        CacheStream<String, String> words = CacheStream.of(Arrays.asList("monkey", "get", "up", "coffee"));
+        assertEquals("coffee", words.min(String::compareTo).get());
+
+        String longest = CacheStream.of(Arrays.asList("monkey", "get", "up", "coffee"))
+                .cache()
+                .map(String::length)
+                .max(Integer::compare)
+                .get()
+                .toString();
+        assertEquals("6", longest);
+    }
+
+    @Test
+    public void testSortedLimitKeepsStableOrder() {
+
+        List<String> shortest = CacheStream.of(
+                Arrays.asList("code", "monkey", "get", "up", "get", "coffee", "go", "to", "job"))
+                .cache()
+                .map(String::length)
+                .sorted()
+                .limit(4)
+                .load()
+                .collect(Collectors.toList());
+
+        assertEquals(Arrays.asList("up", "go", "to", "get"), shortest);
+    }
+
+    @Test
+    public void testSortedLimitOnParallelStream() {
+
+        List<Integer> numbers = new ArrayList<>();
+        for (int i = 0; i < 1000; i++)
+            numbers.add((i * 37) % 1000);
+
+        List<Integer> top = CacheStream.parrallelOf(numbers)
+                .sorted(Collections.reverseOrder())
+                .limit(3)
+                .collect(Collectors.toList());
+
+        assertEquals(Arrays.asList(999, 998, 997), top);
+    }
+
+    @Test
+    public void testConsecutiveSortsAreMerged() {
+
+        CacheStream<String, String> sorted = CacheStream.of(Arrays.asList("bb", "a", "ca", "b", "ab"))
+                .sorted()
+                .sorted((s1, s2) -> Integer.compare(s1.length(), s2.length()));
+
+        assertTrue(sorted.explain().contains("merged with previous sort"));
+        assertEquals(Arrays.asList("a", "b", "ab", "bb", "ca"), sorted.collect(Collectors.toList()));
+    }
+
+    @Test
+    public void testRedundantStagesAreElided() {
+
+        CacheStream<String, String> stream = CacheStream.of(new TreeSet<>(Arrays.asList("c", "a", "b")))
+                .cache()
+                .load()
+                .sorted()
+                .distinct();
+
+        String plan = stream.explain();
+        assertTrue(plan.contains("load (elided)"));
+        assertTrue(plan.contains("sorted(natural) (elided)"));
+        assertTrue(plan.contains("distinct (elided)"));
+        assertTrue(plan.endsWith("characteristics: SORTED(natural) DISTINCT ALIASED"));
+        assertEquals(Arrays.asList("a", "b", "c"), stream.collect(Collectors.toList()));
+    }
+
+    @Test
+    public void testDistinctIsKeptForSetsNotBasedOnEquals() {
+
+        Set<String> identities = Collections.newSetFromMap(new IdentityHashMap<>());
+        identities.add(new String("code"));
+        identities.add(new String("code"));
+        Set<String> byLength = new TreeSet<>(Comparator.comparing(String::length));
+        byLength.addAll(Arrays.asList("up", "code"));
+
+        assertEquals(
+                Collections.singletonList("code"),
+                CacheStream.of(identities).distinct().collect(Collectors.toList()));
+        assertTrue(CacheStream.of(byLength).distinct().explain().contains("distinct\n"));
+        assertTrue(CacheStream.of(new HashSet<>(byLength)).distinct().explain().contains("distinct (elided)"));
+    }
+
+    @Test
+    public void testFilterMovedBeforeSort() {
+
+        CacheStream<String, Integer> stream = CacheStream.of(Arrays.asList("code", "monkey", "up", "coffee"))
+                .cache()
+                .map(String::length)
+                .sorted()
+                .filter(length -> length > 2);
+
+        assertTrue(stream.explain().contains("filter (moved before sort)"));
+        assertEquals(Arrays.asList("code", "monkey", "coffee"), stream.load().collect(Collectors.toList()));
+    }
+
+    @Test
+    public void testJoin() {
+
+        List<String> rows = Arrays.asList("a-x", "c-z", "a-y", "d-w");
+
+        List<String> joined = CacheStream.of(Arrays.asList("apple", "banana", "cherry"))
+                .join(rows, value -> value.charAt(0), row -> row.charAt(0))
+                .map(pair -> pair.getKey() + ":" + pair.getValue())
+                .collect(Collectors.toList());
+
+        assertEquals(Arrays.asList("apple:a-x", "apple:a-y", "cherry:c-z"), joined);
+    }
+
+    @Test
+    public void testJoinBuiltOnSmallerStream() {
+
+        List<Integer> rows = new ArrayList<>();
+        for (int i = 0; i < 100; i++)
+            rows.add(i);
+
+        List<String> joined = CacheStream.of(Arrays.asList("code", "up", "key", "at"))
+                .cache()
+                .map(String::length)
+                .join(rows, length -> length, row -> row % 10)
+                .map(pair -> pair.getValue())
+                .filter(row -> row < 30)
+                .load()
+                .collect(Collectors.toList());
+
+        assertEquals(Arrays.asList("code", "code", "code", "up", "up", "up", "key", "key", "key", "at", "at", "at"),
+                joined);
+    }
+
+    @Test
+    public void testLeftJoin() {
+
+        List<String> joined = CacheStream.of(Arrays.asList("apple", "banana"))
+                .leftJoin(Collections.singletonList("a-x"), value -> value.charAt(0), row -> row.charAt(0))
+                .map(pair -> pair.getKey() + ":" + pair.getValue())
+                .collect(Collectors.toList());
+
+        assertEquals(Arrays.asList("apple:a-x", "banana:null"), joined);
+    }
+
+    @Test
+    public void testSemiJoin() {
+
+        List<String> kept = CacheStream.of(Arrays.asList("code", "monkey", "up", "coffee"))
+                .cache()
+                .map(String::length)
+                .semiJoin(Arrays.asList(2, 6, 6), length -> length, row -> row)
+                .load()
+                .collect(Collectors.toList());
+
+        assertEquals(Arrays.asList("monkey", "up", "coffee"), kept);
+    }
+
+    @Test
+    public void testJoinBuildsPartitionedTableInParallel() {
+
+        List<Integer> values = new ArrayList<>();
+        for (int i = 0; i < 1000; i++)
+            values.add(i);
+        List<String> rows = new ArrayList<>();
+        for (int copy = 0; copy < 20; copy++)
+            for (int i = 0; i < 1000; i++)
+                rows.add(i + ":" + copy);
+
+        List<Map.Entry<Integer, String>> joined = CacheStream.parrallelOf(values)
+                .filter(value -> value % 3 == 0)
+                .join(rows, value -> value, row -> Integer.valueOf(row.substring(0, row.indexOf(':'))))
+                .collect(Collectors.toList());
+
+        assertEquals(334 * 20, joined.size());
+        for (int i = 0; i < joined.size(); i++) {
+            Map.Entry<Integer, String> pair = joined.get(i);
+            assertEquals((i / 20) * 3, (int) pair.getKey());
+            assertEquals(pair.getKey() + ":" + (i % 20), pair.getValue());
+        }
+    }
+
+    @Test
+    public void testJoinOnParallelStream() {
+
+        List<Integer> values = new ArrayList<>();
+        List<Long> rows = new ArrayList<>();
+        for (int i = 0; i < 50_000; i++) {
+            values.add(i);
+            rows.add((long) i * 2);
+        }
+
+        long matches = CacheStream.parrallelOf(values)
+                .filter(value -> value >= 0)
+                .join(rows, value -> (long) value, row -> row)
+                .count();
+
+        assertEquals(25_000, matches);
+    }
+
+    @Test
+    public void testFilterInAndNotIn() {
+
+        LongMembership allowed = CacheStream.of(Arrays.asList(2L, 6L)).toMembership(length -> length);
+
+        CacheStream<String, Integer> lengths = CacheStream.of(Arrays.asList("code", "monkey", "up", "coffee"))
+                .cache()
+                .map(String::length);
+        List<String> kept = lengths.filterIn(allowed, length -> length).load().collect(Collectors.toList());
+
+        CacheStream<String, Integer> otherLengths = CacheStream.of(Arrays.asList("code", "monkey", "up", "coffee"))
+                .cache()
+                .map(String::length);
+        List<String> dropped = otherLengths.filterNotIn(allowed, length -> length).load().collect(Collectors.toList());
+
+        assertEquals(Arrays.asList("monkey", "up", "coffee"), kept);
+        assertEquals(Collections.singletonList("code"), dropped);
+    }
+
+    @Test
+    public void testGroupByValue() {
+
+        Map<Integer, List<String>> groups = CacheStream.of(Arrays.asList("code", "monkey", "up", "coffee", "at"))
+                .cache()
+                .map(String::length)
+                .groupByValue();
+
+        assertEquals(3, groups.size());
+        assertEquals(Collections.singletonList("code"), groups.get(4));
+        assertEquals(Arrays.asList("monkey", "coffee"), groups.get(6));
+        assertEquals(Arrays.asList("up", "at"), groups.get(2));
+    }
+
+    @Test
+    public void testGroupByValueOnParallelStream() {
+
+        List<Integer> values = new ArrayList<>();
+        for (int i = 0; i < 10_000; i++)
+            values.add(i);
+
+        Map<Integer, List<Integer>> groups = CacheStream.parrallelOf(values)
+                .cache()
+                .map(value -> value % 10)
+                .groupByValue();
+
+        assertEquals(10, groups.size());
+        groups.values().forEach(group -> assertEquals(1_000, group.size()));
+        assertEquals(1_000, new TreeSet<>(groups.get(3)).size());
+    }
+
+    @Test
+    public void testReduceByKey() {
+
+        Map<Integer, Integer> totals = CacheStream.parrallelOf(Arrays.asList("code", "monkey", "up", "coffee", "at"))
+                .cache()
+                .map(String::length)
+                .reduceByKey(word -> word.charAt(0) - 'a', Integer::sum);
+
+        assertEquals(Integer.valueOf(2), totals.get(4));
+        assertEquals(Integer.valueOf(12 + 2), totals.get(6));
+        assertEquals(Integer.valueOf(20 + 0), totals.get(2));
+    }
+
+    @Test
+    public void testTee() {
+
+        String summary = CacheStream.of(Arrays.asList("code", "monkey", "up", "coffee", "at"))
+                .filter(word -> word.length() > 2)
+                .tee(Collectors.counting(), Collectors.joining(","), (count, words) -> count + ":" + words);
+
+        assertEquals("3:code,monkey,coffee", summary);
+    }
+
+    @Test
+    public void testCollectAllOnParallelStream() {
+
+        List<Integer> values = new ArrayList<>();
+        for (int i = 0; i < 10_000; i++)
+            values.add(i);
+
+        List<Object> results = CacheStream.parrallelOf(values)
+                .filter(value -> value % 2 == 0)
+                .collectAll(
+                        Collectors.counting(),
+                        Collectors.summingLong(value -> value),
+                        Collectors.toList());
+
+        assertEquals(5_000L, results.get(0));
+        assertEquals(24_995_000L, results.get(1));
+        assertEquals(Integer.valueOf(9_998), ((List<?>) results.get(2)).get(4_999));
+    }
+
+    @Test
+    public void testTeePairsSeesCachedValues() {
+
+        Map<Integer, List<String>> byLength = CacheStream.of(Arrays.asList("code", "monkey", "up", "coffee", "at"))
+                .cache()
+                .map(String::length)
+                .teePairs(
+                        Collectors.groupingBy(
+                                Map.Entry::getValue,
+                                Collectors.mapping(Map.Entry::getKey, Collectors.toList())),
+                        Collectors.summingInt(Map.Entry::getValue),
+                        (groups, total) -> {
+                            assertEquals(Integer.valueOf(20), total);
+                            return groups;
+                        });
+
+        assertEquals(Arrays.asList("up", "at"), byLength.get(2));
+        assertEquals(Arrays.asList("monkey", "coffee"), byLength.get(6));
+    }
+
+    @Test
+    public void testCollectAllPairsOnParallelStream() {
+
+        List<Parent> parents = new ArrayList<>();
+        for (int i = 0; i < 1_000; i++) {
+            Parent parent = new Parent("parent" + i);
+            parent.setChildren(Arrays.asList(new Child(i), new Child(1)));
+            parents.add(parent);
+        }
+
+        List<Object> results = CacheStream.parrallelOf(parents)
+                .cache()
+                .map(parent -> parent.getChildren().stream().mapToInt(Child::getAttribute1).sum())
+                .collectAllPairs(
+                        Collectors.mapping(Map.Entry::getKey, Collectors.toList()),
+                        Collectors.summingLong(Map.Entry::getValue));
+
+        assertEquals(parents, results.get(0));
+        assertEquals(499_500L + 1_000L, results.get(1));
+    }
+
+    @Test
+    public void testSampleKeepsCacheAssociation() {
+
+        List<String> words = Arrays.asList("code", "monkey", "up", "coffee", "at", "get", "key");
+
+        List<String> sample = CacheStream.of(words)
+                .cache()
+                .map(String::length)
+                .sample(3, 42)
+                .load()
+                .collect(Collectors.toList());
+        List<String> sameSample = CacheStream.of(words)
+                .cache()
+                .map(String::length)
+                .sample(3, 42)
+                .load()
+                .collect(Collectors.toList());
+
+        assertEquals(3, sample.size());
+        assertEquals(3, new TreeSet<>(sample).size());
+        assertTrue(words.containsAll(sample));
+        assertEquals(sample, sameSample);
+        assertEquals(words.size(), CacheStream.of(words).sample(10).count());
+    }
+
+    @Test
+    public void testSampleOnParallelStreamIsUniform() {
+
+        List<Integer> values = new ArrayList<>();
+        for (int i = 0; i < 100; i++)
+            values.add(i);
+
+        int[] parallelHits = new int[values.size()];
+        int[] sequentialHits = new int[values.size()];
+        for (int trial = 0; trial < 2_000; trial++) {
+            for (int value : CacheStream.parrallelOf(values).sample(10, trial).collect(Collectors.toList()))
+                parallelHits[value]++;
+            for (int value : CacheStream.of(values).sample(10, trial).collect(Collectors.toList()))
+                sequentialHits[value]++;
+        }
+
+        for (int i = 0; i < values.size(); i++) {
+            assertTrue("Sampled " + parallelHits[i] + " times", parallelHits[i] > 120 && parallelHits[i] < 280);
+            assertTrue("Sampled " + sequentialHits[i] + " times", sequentialHits[i] > 120 && sequentialHits[i] < 280);
+        }
+    }
+
+    @Test
+    public void testMergeSorted() {
+
+        CacheStream<String, Integer> first =
+                CacheStream.of(Arrays.asList("up", "code", "monkey")).cache().map(String::length);
+        CacheStream<String, Integer> second =
+                CacheStream.of(Arrays.asList("at", "cod", "coffee")).cache().map(String::length);
+
+        CacheStream<String, Integer> merged =
+                CacheStream.mergeSorted(Comparator.naturalOrder(), first, second).sorted();
+
+        assertTrue(merged.explain().contains("sorted(natural) (elided)"));
+        assertEquals(Arrays.asList("up", "at", "cod", "code", "monkey", "coffee"),
+                merged.load().collect(Collectors.toList()));
+    }
+
+    @Test
+    public void testMergeSortedIsLazy() {
+
+        List<Integer> read = new ArrayList<>();
+        CacheStream<Integer, Integer> evens = CacheStream.of(Stream.iterate(0, i -> i + 2).peek(read::add));
+        CacheStream<Integer, Integer> odds = CacheStream.of(Stream.iterate(1, i -> i + 2).peek(read::add));
+
+        List<Integer> merged = CacheStream.mergeSorted(Comparator.<Integer>naturalOrder(), evens, odds)
+                .limit(5)
+                .collect(Collectors.toList());
+
+        assertEquals(Arrays.asList(0, 1, 2, 3, 4), merged);
+        assertTrue(read.size() <= 7);
+    }
+
+    @Test
+    public void testWindowKeepsCacheAssociation() {
+
+        List<List<String>> windows = CacheStream.of(Arrays.asList("code", "monkey", "get", "up", "coffee"))
+                .cache()
+                .map(String::length)
+                .window(2)
+                .map(window -> window.stream().load().collect(Collectors.toList()))
+                .collect(Collectors.toList());
+
+        assertEquals(Arrays.asList(
+                Arrays.asList("code", "monkey"), Arrays.asList("get", "up"), Arrays.asList("coffee")), windows);
+    }
+
+    @Test
+    public void testSlidingAndTimeWindows() {
+
+        List<List<Integer>> overlapping = CacheStream.of(Arrays.asList(1, 2, 3, 4, 5))
+                .sliding(3, 1)
+                .map(window -> window.stream().collect(Collectors.toList()))
+                .collect(Collectors.toList());
+        assertEquals(Arrays.asList(Arrays.asList(1, 2, 3), Arrays.asList(2, 3, 4), Arrays.asList(3, 4, 5)),
+                overlapping);
+
+        List<Integer> gapped = CacheStream.of(Arrays.asList(1, 2, 3, 4, 5, 6, 7))
+                .sliding(2, 3)
+                .map(window -> window.getValue(0))
+                .collect(Collectors.toList());
+        assertEquals(Arrays.asList(1, 4), gapped);
+
+        List<Integer> sizes = CacheStream.of(Arrays.asList(0L, 3L, 9L, 10L, 11L, 35L))
+                .timeWindow(timestamp -> timestamp, 10)
+                .map(CacheSeq::size)
+                .collect(Collectors.toList());
+        assertEquals(Arrays.asList(3, 2, 1), sizes);
+    }
+
+    @Test
+    public void testSlidingAggregates() {
+
+        List<String> words = Arrays.asList("monkey", "up", "code", "get", "coffee", "go");
+
+        List<Double> sums = CacheStream.of(words)
+                .slidingSum(3, String::length)
+                .collect(Collectors.toList());
+        assertEquals(Arrays.asList(12.0, 9.0, 13.0, 11.0), sums);
+
+        List<String> shortest = CacheStream.of(words)
+                .slidingMin(3, Comparator.comparing(String::length))
+                .collect(Collectors.toList());
+        assertEquals(Arrays.asList("up", "up", "get", "go"), shortest);
+
+        List<String> longestCached = CacheStream.of(words)
+                .cache()
+                .map(String::length)
+                .slidingMax(2, Comparator.naturalOrder())
+                .load()
+                .collect(Collectors.toList());
+        assertEquals(Arrays.asList("monkey", "code", "code", "coffee", "coffee"), longestCached);
+
+        List<Double> longSums = CacheStream.of(Stream.iterate(1, i -> i + 1).limit(100_000))
+                .slidingSum(1000, i -> i * 0.1)
+                .collect(Collectors.toList());
+        assertEquals(99_001, longSums.size());
+        assertEquals((99_001 + 100_000) * 500 * 0.1, longSums.get(longSums.size() - 1), 1e-6);
+    }
+
+    @Test
+    public void testTakeWhileStopsPullingUpstream() {
+
+        List<Integer> pulled = new ArrayList<>();
+        List<String> taken = CacheStream.of(Stream.iterate(1, i -> i + 1).peek(pulled::add))
+                .cache()
+                .map(i -> i * i)
+                .takeWhile(square -> square < 20)
+                .load()
+                .map(String::valueOf)
+                .collect(Collectors.toList());
+
+        assertEquals(Arrays.asList("1", "2", "3", "4"), taken);
+        assertEquals(Arrays.asList(1, 2, 3, 4, 5), pulled);
+    }
+
+    @Test
+    public void testDropWhileKeepsCacheAssociation() {
+
+        List<String> words = CacheStream.of(Arrays.asList("code", "monkey", "get", "up", "coffee"))
+                .cache()
+                .map(String::length)
+                .sorted()
+                .dropWhile(length -> length < 4)
+                .load()
+                .collect(Collectors.toList());
+
+        assertEquals(Arrays.asList("code", "monkey", "coffee"), words);
+    }
+
+    @Test
+    public void testTakeAndDropWhileOnParallelStream() {
+
+        List<Integer> values = new ArrayList<>();
+        for (int i = 0; i < 100_000; i++)
+            values.add(i % 50_000);
+
+        List<Integer> taken = CacheStream.parrallelOf(values)
+                .takeWhile(i -> i < 40_000)
+                .map(i -> i * 2)
+                .collect(Collectors.toList());
+        List<Integer> dropped = CacheStream.parrallelOf(values)
+                .dropWhile(i -> i < 40_000)
+                .collect(Collectors.toList());
+
+        assertEquals(40_000, taken.size());
+        for (int i = 0; i < taken.size(); i++)
+            assertEquals(Integer.valueOf(i * 2), taken.get(i));
+        assertEquals(values.subList(40_000, values.size()), dropped);
+    }
+
+    @Test
+    public void testCollectStopsWhenCancelled() {
+
+        CancellationToken token = CancellationToken.create();
+        List<Integer> partial = CacheStream.of(Stream.iterate(0, i -> i + 1))
+                .flatMap(i -> Stream.of(i, -i))
+                .peek(i -> {
+                    if (i == 1000)
+                        token.cancel();
+                })
+                .collect(Collectors.toList(), token);
+
+        assertTrue(token.isCancelled());
+        assertTrue(partial.size() > 2000 && partial.size() <= 2000 + CancellableSpliterator.CHECK_INTERVAL);
+
+        CancellationToken cancelled = CancellationToken.create();
+        cancelled.cancel();
+        assertEquals(Collections.emptyList(),
+                CacheStream.parrallelOf(Arrays.asList(1, 2, 3)).collect(Collectors.toList(), cancelled));
+    }
+
+    @Test
+    public void testFindFirstTimesOut() {
+
+        long start = System.nanoTime();
+        try {
+            CacheStream.of(Stream.iterate(0, i -> i + 1))
+                    .map(i -> -i)
+                    .sorted()
+                    .findFirst(Duration.ofMillis(50));
+            fail();
+        } catch (CancellationException cEx) {
+            assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+        }
+
+        assertEquals(Optional.of("code"),
+                CacheStream.of(Arrays.asList("code", "monkey")).findFirst(Duration.ofSeconds(10)));
+    }
+
+    @Test
+    public void testCancellableBoundsSelectiveStages() {
+
+        CancellationToken token = CancellationToken.withTimeout(Duration.ofMillis(50));
+        Optional<Integer> none = CacheStream.of(Stream.iterate(0, i -> i + 1))
+                .cancellable(token)
+                .filter(i -> i < 0)
+                .findFirst();
+
+        assertFalse(none.isPresent());
+        assertTrue(token.isCancelled());
+    }
+
+    @Test
+    public void testLongTimeoutsAreNotCancelled() {
+
+        assertFalse(CancellationToken.withTimeout(Duration.ofSeconds(Long.MAX_VALUE)).isCancelled());
+        assertFalse(CancellationToken.withTimeout(ChronoUnit.FOREVER.getDuration()).isCancelled());
+        assertFalse(CancellationToken.withTimeout(Duration.ofNanos(Long.MAX_VALUE)).isCancelled());
+        assertTrue(CancellationToken.withTimeout(Duration.ofSeconds(Long.MIN_VALUE)).isCancelled());
+        assertTrue(CancellationToken.withTimeout(Duration.ofNanos(Long.MIN_VALUE)).isCancelled());
+    }
+
+    @Test
+    public void testCancellableIsCountedAsAStage() {
+
+        List<List<StageStats>> reports = new ArrayList<>();
+        List<Integer> values = CacheStream.of(Arrays.asList(1, 2, 3))
+                .instrument(reports::add)
+                .cancellable(CancellationToken.create())
+                .map(i -> i * 2)
+                .collect(Collectors.toList());
+
+        assertEquals(Arrays.asList(2, 4, 6), values);
+        StageStats cancellable = reports.get(0).get(0);
+        assertTrue(cancellable.getName().startsWith("cancellable"));
+        assertEquals(3L, cancellable.getElementsIn());
+        assertEquals(3L, cancellable.getElementsOut());
+    }
+
+    @Test
+    public void testCancellingStopsEveryParallelSplit() {
+
+        List<Integer> values = new ArrayList<>();
+        for (int i = 0; i < 1_000_000; i++)
+            values.add(i);
+
+        CancellationToken token = CancellationToken.create();
+        AtomicInteger mapped = new AtomicInteger();
+        List<Integer> partial = CacheStream.parrallelOf(values)
+                .map(i -> {
+                    if (mapped.incrementAndGet() == 10_000)
+                        token.cancel();
+                    return i;
+                })
+                .collect(Collectors.toList(), token);
+
+        assertTrue(partial.size() < values.size());
+        assertTrue(mapped.get() < values.size());
+    }
 }
@@ -0,0 +1,115 @@
+package com.coopstools.cachemonads;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.coopstools.Child;
+import com.coopstools.Parent;
+
+public class CacheViewTest {
+
+    private static final CachePipeline<Parent, Parent> GOOD_PARENTS = CachePipeline.<Parent>builder()
+            .cache()
+            .map(Parent::getChildren)
+            .flatMap(Collection::stream)
+            .map(Child::getAttribute1)
+            .filter(att -> att > 10)
+            .load()
+            .build();
+
+    @Test
+    public void testUpdatesReevaluateOnlyChangedElement() {
+
+        Parent parent1 = parent("parent1", 4, 11);
+        Parent parent2 = parent("parent2", 3, 6);
+        Parent parent3 = parent("parent3", 12, 16);
+
+        CacheView<String, Parent, Parent> view = CacheView.of(GOOD_PARENTS, Parent::getName);
+        view.insertAll(Arrays.asList(parent1, parent2, parent3));
+
+        Assert.assertTrue(view.contains(parent1));
+        Assert.assertFalse(view.contains(parent2));
+        Assert.assertEquals(2, view.count(parent3));
+        Assert.assertEquals(3, view.size());
+
+        parent2.setChildren(Arrays.asList(new Child(20)));
+        view.update(parent2);
+        parent3.setChildren(Collections.emptyList());
+        view.update(parent3);
+
+        Assert.assertTrue(view.contains(parent2));
+        Assert.assertFalse(view.contains(parent3));
+        Assert.assertEquals(new HashSet<>(Arrays.asList(parent1, parent2)), view.values());
+        Assert.assertEquals(2, view.size());
+
+        Assert.assertTrue(view.remove("parent1"));
+        Assert.assertFalse(view.remove("parent1"));
+        Assert.assertFalse(view.contains(parent1));
+        Assert.assertEquals(2, view.elementCount());
+        Assert.assertEquals(Collections.singletonList(parent2), view.resultsOf("parent2"));
+    }
+
+    @Test
+    public void testChangesRunOnlyTheChangedElement() {
+
+        AtomicInteger runs = new AtomicInteger();
+        CachePipeline<Integer, Integer> evens = CachePipeline.<Integer>builder()
+                .peek(value -> runs.incrementAndGet())
+                .filter(value -> value % 2 == 0)
+                .build();
+
+        List<Integer> values = new ArrayList<>();
+        for (int i = 0; i < 10_000; i++)
+            values.add(i);
+        CacheView<Integer, Integer, Integer> view = CacheView.of(evens, value -> value);
+        view.insertAll(values);
+        runs.set(0);
+
+        view.remove(4);
+        view.insert(10_000);
+        view.update(7);
+
+        Assert.assertEquals(2, runs.get());
+        Assert.assertEquals(5_000, view.size());
+        Assert.assertTrue(view.contains(10_000));
+        Assert.assertFalse(view.contains(4));
+    }
+
+    @Test
+    public void testInvalidChangesAreRejected() {
+
+        CacheView<String, Parent, Parent> view = CacheView.of(GOOD_PARENTS, Parent::getName);
+        view.insert(parent("parent1", 11));
+
+        try {
+            view.insert(parent("parent1", 12));
+            Assert.fail();
+        } catch (IllegalArgumentException iaEx) {
+            Assert.assertEquals(1, view.size());
+        }
+        try {
+            view.update(parent("parent2", 12));
+            Assert.fail();
+        } catch (IllegalArgumentException iaEx) {
+            Assert.assertFalse(view.containsKey("parent2"));
+        }
+    }
+
+    private static Parent parent(final String name, final Integer... attributes) {
+
+        Parent parent = new Parent(name);
+        List<Child> children = new ArrayList<>();
+        for (Integer attribute : attributes)
+            children.add(new Child(attribute));
+        parent.setChildren(children);
+        return parent;
+    }
+}
@@ -449,6 +449,18 @@ public class CachedOptionalTest {
         Assert.assertEquals(originalValue, postMaybeValueValue.get());
     }
 
+    @Test
+    public void testUnchangedTransitionsReturnSameInstance() {
+
+        CacheOptional<String, String> maybeValue = CacheOptional.of("value");
+
+        Assert.assertSame(maybeValue, maybeValue.cache());
+        Assert.assertSame(maybeValue, maybeValue.load());
+        Assert.assertSame(maybeValue, maybeValue.map(String::toString));
+        Assert.assertNotSame(maybeValue, maybeValue.map(String::length).load());
+        Assert.assertEquals("value", maybeValue.map(String::length).load().get());
+    }
+
     private class Container<V> {
         private V value;
 
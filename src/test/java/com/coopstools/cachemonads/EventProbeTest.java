@@ -0,0 +1,138 @@
+package com.coopstools.cachemonads;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import org.junit.Test;
+
+public class EventProbeTest {
+
+    private final RecordingEvent event = new RecordingEvent();
+
+    @Test
+    public void testParallelDistinctCountsOutputEmittedAfterInput() {
+
+        EventProbe probe = EventProbe.of(event, false, Long.MAX_VALUE);
+        Stream<Integer> input = IntStream.range(0, 10_000).map(i -> i % 100).boxed().parallel();
+
+        List<Integer> distinct = probe.output(probe.input(input).distinct()).collect(Collectors.toList());
+
+        assertEquals(100, distinct.size());
+        assertEquals(1, event.completions.size());
+        assertEquals(new Completion(10_000, 100), event.completions.get(0));
+        assertTrue(event.started);
+    }
+
+    @Test
+    public void testShortCircuitedStageIsCompletedByFinish() {
+
+        EventProbe probe = EventProbe.of(event, false, Long.MAX_VALUE);
+        Stream<Integer> input = Stream.of(3, 3, 1, 2);
+
+        Optional<Integer> first = probe.output(probe.input(input).distinct()).findFirst();
+
+        assertEquals(Optional.of(3), first);
+        assertTrue(event.completions.isEmpty());
+
+        probe.finishStage();
+        probe.finishStage();
+        assertEquals(1, event.completions.size());
+        assertEquals(new Completion(1, 1), event.completions.get(0));
+    }
+
+    @Test
+    public void testBarrierCompletesOnFirstOutput() {
+
+        EventProbe probe = EventProbe.of(event, true, 2);
+        Stream<Integer> input = Stream.of(5, 4, 3, 2, 1);
+
+        Optional<Integer> first = probe.output(probe.input(input).sorted()).findFirst();
+
+        assertEquals(Optional.of(1), first);
+        assertEquals(1, event.completions.size());
+        assertEquals(new Completion(5, 2), event.completions.get(0));
+    }
+
+    @Test
+    public void testEmptyBarrierCompletesWhenInputIsExhausted() {
+
+        EventProbe probe = EventProbe.of(event, true, Long.MAX_VALUE);
+
+        List<Integer> sorted = probe.output(probe.input(Stream.<Integer>empty()).sorted())
+                .collect(Collectors.toList());
+
+        assertTrue(sorted.isEmpty());
+        assertEquals(1, event.completions.size());
+        assertEquals(new Completion(0, 0), event.completions.get(0));
+    }
+
+    @Test
+    public void testPlanFinishesTheEventsOfItsSteps() {
+
+        EventProbe probe = EventProbe.of(event, false, Long.MAX_VALUE);
+        StreamPlan plan = StreamPlan.source("test", 0)
+                .then("distinct")
+                .withEvent(probe)
+                .then("map");
+
+        assertEquals("test -> distinct -> map", plan.shape());
+
+        plan.finishStageEvents();
+        assertEquals(1, event.completions.size());
+        assertEquals(new Completion(0, 0), event.completions.get(0));
+    }
+
+    private static final class RecordingEvent implements PipelineEvent {
+
+        private final List<Completion> completions = new CopyOnWriteArrayList<>();
+        private volatile boolean started;
+
+        @Override
+        public void start() {
+            started = true;
+        }
+
+        @Override
+        public void complete(final long elementsIn, final long elementsOut) {
+            completions.add(new Completion(elementsIn, elementsOut));
+        }
+    }
+
+    private static final class Completion {
+
+        private final long elementsIn;
+        private final long elementsOut;
+
+        private Completion(final long elementsIn, final long elementsOut) {
+
+            this.elementsIn = elementsIn;
+            this.elementsOut = elementsOut;
+        }
+
+        @Override
+        public boolean equals(final Object other) {
+
+            if (!(other instanceof Completion))
+                return false;
+            Completion completion = (Completion) other;
+            return elementsIn == completion.elementsIn && elementsOut == completion.elementsOut;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(elementsIn) * 31 + Long.hashCode(elementsOut);
+        }
+
+        @Override
+        public String toString() {
+            return elementsIn + " in, " + elementsOut + " out";
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package com.coopstools.cachemonads;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ExternalSortTest {
+
+    private Path spillDirectory;
+
+    @Before
+    public void createSpillDirectory() throws IOException {
+        spillDirectory = Files.createTempDirectory("external-sort-test");
+    }
+
+    @After
+    public void removeSpillDirectory() throws IOException {
+        Files.deleteIfExists(spillDirectory);
+    }
+
+    @Test
+    public void testSortWithinBudget() {
+
+        List<String> sorted = CacheStream.of(Arrays.asList("d", "a", "b", "f", "c"))
+                .sorted(budget(10))
+                .collect(Collectors.toList());
+
+        assertEquals(Arrays.asList("a", "b", "c", "d", "f"), sorted);
+    }
+
+    @Test
+    public void testSpilledSortKeepsCache() throws IOException {
+
+        List<String> words = Arrays.asList(
+                "code", "monkey", "get", "up", "get", "coffee", "code", "monkey", "go", "to", "job");
+
+        List<String> byLength = CacheStream.of(words)
+                .cache()
+                .map(String::length)
+                .sorted(ExternalSort.withBudget(3, SpillSerializer.strings(), SpillSerializer.integers())
+                        .withDirectory(spillDirectory))
+                .load()
+                .collect(Collectors.toList());
+
+        List<String> expected = new ArrayList<>(words);
+        expected.sort((w1, w2) -> Integer.compare(w1.length(), w2.length()));
+        assertEquals(expected, byLength);
+        assertEquals(0L, spillFileCount());
+    }
+
+    @Test
+    public void testParallelRunsAndMultiPassMerge() throws IOException {
+
+        List<Integer> numbers = new Random(17).ints(5_000, 0, 1_000).boxed().collect(Collectors.toList());
+
+        List<Integer> sorted = CacheStream.of(numbers)
+                .sorted(
+                        (n1, n2) -> Integer.compare(n2, n1),
+                        ExternalSort.withBudget(100, SpillSerializer.integers(), SpillSerializer.integers())
+                                .withDirectory(spillDirectory)
+                                .withParallelRuns(3)
+                                .withFanIn(4))
+                .collect(Collectors.toList());
+
+        List<Integer> expected = new ArrayList<>(numbers);
+        expected.sort(Collections.reverseOrder());
+        assertEquals(expected, sorted);
+        assertEquals(0L, spillFileCount());
+    }
+
+    @Test
+    public void testParallelRunsUseTheGivenExecutor() throws IOException {
+
+        AtomicInteger runs = new AtomicInteger();
+        Executor counting = task -> {
+            runs.incrementAndGet();
+            new Thread(task).start();
+        };
+        List<Integer> numbers = new Random(5).ints(1_000, 0, 100).boxed().collect(Collectors.toList());
+
+        List<Integer> sorted = CacheStream.of(numbers)
+                .sorted(ExternalSort.withBudget(100, SpillSerializer.integers(), SpillSerializer.integers())
+                        .withDirectory(spillDirectory)
+                        .withParallelRuns(2)
+                        .withExecutor(counting))
+                .collect(Collectors.toList());
+
+        List<Integer> expected = new ArrayList<>(numbers);
+        Collections.sort(expected);
+        assertEquals(expected, sorted);
+        assertTrue(runs.get() > 0);
+        assertEquals(0L, spillFileCount());
+    }
+
+    @Test
+    public void testCloseRemovesUnconsumedRuns() throws IOException {
+
+        Stream<Integer> source = IntStream.range(0, 100).map(i -> 99 - i).boxed();
+        CacheStream<Integer, Integer> sorted = CacheStream.of(source)
+                .sorted(ExternalSort.withBudget(10, SpillSerializer.integers(), SpillSerializer.integers())
+                        .withDirectory(spillDirectory));
+
+        try (Stream<Integer> values = sorted.toStream()) {
+            assertEquals(Integer.valueOf(0), values.findFirst().get());
+        }
+        assertEquals(0L, spillFileCount());
+    }
+
+    @Test
+    public void testSpillsLongStrings() {
+
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 70_000; i++)
+            builder.append((char) ('a' + i % 26)).append(i % 7 == 0 ? "\u00e9" : "");
+        String longWord = builder.toString();
+        List<String> words = Arrays.asList("monkey", longWord, "code", "z" + longWord, "coffee", "up");
+
+        List<String> sorted = CacheStream.of(words)
+                .sorted(budget(2))
+                .collect(Collectors.toList());
+
+        List<String> expected = new ArrayList<>(words);
+        Collections.sort(expected);
+        assertEquals(expected, sorted);
+    }
+
+    @Test
+    public void testStringSerializerWritesNull() throws IOException {
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            SpillSerializer.strings().write(out, null);
+            SpillSerializer.strings().write(out, "");
+        }
+
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            assertNull(SpillSerializer.strings().read(in));
+            assertEquals("", SpillSerializer.strings().read(in));
+        }
+    }
+
+    private ExternalSort<String, String> budget(final int elements) {
+
+        return ExternalSort.withBudget(elements, SpillSerializer.strings(), SpillSerializer.strings())
+                .withDirectory(spillDirectory);
+    }
+
+    private long spillFileCount() throws IOException {
+
+        try (Stream<Path> files = Files.list(spillDirectory)) {
+            return files.count();
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.coopstools.cachemonads;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+
+import org.junit.Test;
+
+public class HyperLogLogTest {
+
+    @Test
+    public void testSmallCountsAreExact() {
+
+        HyperLogLog sketch = HyperLogLog.withPrecision(14);
+        for (int i = 0; i < 3; i++)
+            sketch.add("code").add("monkey").add(7L).addLong(7);
+
+        assertEquals(3, sketch.estimate());
+    }
+
+    @Test
+    public void testIntegersAndLongsAreDifferentElements() {
+
+        HyperLogLog sketch = HyperLogLog.withPrecision(14).add(7).add(7L).add(7);
+
+        assertEquals(2, sketch.estimate());
+    }
+
+    @Test
+    public void testLargeCountIsWithinError() {
+
+        HyperLogLog sketch = LongStream.range(0, 1_000_000)
+                .parallel()
+                .boxed()
+                .collect(HyperLogLog.collector(14));
+
+        assertEquals(1_000_000, sketch.estimate(), 1_000_000 * 0.03);
+    }
+
+    @Test
+    public void testMergeAndBytes() throws Exception {
+
+        HyperLogLog evens = HyperLogLog.withPrecision(12);
+        HyperLogLog odds = HyperLogLog.withPrecision(12);
+        IntStream.range(0, 100_000).forEach(i -> (i % 2 == 0 ? evens : odds).add("id-" + i));
+
+        HyperLogLog restored = HyperLogLog.fromBytes(evens.toBytes());
+        assertEquals(evens, restored);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(odds);
+        }
+        HyperLogLog deserialized;
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            deserialized = (HyperLogLog) in.readObject();
+        }
+
+        assertEquals(100_000, restored.merge(deserialized).estimate(), 100_000 * 0.06);
+    }
+
+    @Test
+    public void testPrecisionMustMatch() {
+
+        try {
+            HyperLogLog.withPrecision(10).merge(HyperLogLog.withPrecision(11));
+            fail("IllegalArgumentException should have been thrown");
+        } catch (IllegalArgumentException iaEx) {
+            System.out.println("success");
+        }
+    }
+
+    @Test
+    public void testCountDistinctApprox() {
+
+        List<Integer> values = new ArrayList<>();
+        for (int i = 0; i < 50_000; i++)
+            values.add(i);
+
+        CacheStream<Integer, Integer> buckets = CacheStream.parrallelOf(values).cache().map(value -> value % 1_000);
+        long distinctBuckets = buckets.countDistinctApprox(14);
+        long distinctValues = CacheStream.parrallelOf(values)
+                .cache()
+                .map(value -> value % 1_000)
+                .countDistinctCachedApprox(14);
+
+        assertTrue(Math.abs(distinctBuckets - 1_000) <= 30);
+        assertTrue(Math.abs(distinctValues - 50_000) <= 2_000);
+    }
+}
@@ -0,0 +1,63 @@
+package com.coopstools.cachemonads;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+import java.util.stream.LongStream;
+
+import org.junit.Test;
+
+public class LongMembershipTest {
+
+    @Test
+    public void testContains() {
+
+        LongMembership membership = LongMembership.of(7, 0, -3, Long.MAX_VALUE, 7);
+
+        assertEquals(4, membership.size());
+        assertTrue(membership.contains(7));
+        assertTrue(membership.contains(0));
+        assertTrue(membership.contains(-3));
+        assertTrue(membership.contains(Long.MAX_VALUE));
+        assertFalse(membership.contains(3));
+        assertFalse(membership.contains(Long.MIN_VALUE));
+    }
+
+    @Test
+    public void testEmpty() {
+
+        LongMembership membership = LongMembership.builder().build();
+
+        assertEquals(0, membership.size());
+        assertFalse(membership.contains(0));
+        assertFalse(membership.contains(1));
+    }
+
+    @Test
+    public void testLargeMembershipIsExact() {
+
+        long[] ids = new Random(11).longs(200_000).toArray();
+        LongMembership membership = LongMembership.of(ids);
+
+        for (long id : ids)
+            assertTrue(membership.contains(id));
+        Random other = new Random(12);
+        for (int i = 0; i < 200_000; i++)
+            assertFalse(membership.contains(other.nextLong()));
+    }
+
+    @Test
+    public void testParallelCollector() {
+
+        LongMembership membership = LongStream.range(0, 100_000)
+                .parallel()
+                .boxed()
+                .collect(LongMembership.collector(id -> id * 3));
+
+        assertEquals(100_000, membership.size());
+        assertTrue(membership.contains(299_997));
+        assertFalse(membership.contains(299_998));
+    }
+}
@@ -0,0 +1,149 @@
+package com.coopstools.cachemonads;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class MicroBatchRunnerTest {
+
+    private static final CachePipeline<String, String> LONG_WORDS = CachePipeline.<String>builder()
+            .cache()
+            .map(String::length)
+            .filter(length -> length > 3)
+            .load()
+            .build();
+
+    @Test
+    public void testBatchesBySize() throws Exception {
+
+        BlockingQueue<String> queue = new LinkedBlockingQueue<>(
+                Arrays.asList("code", "monkey", "get", "up", "coffee", "go", "to", "job", "water"));
+        List<List<String>> batches = new CopyOnWriteArrayList<>();
+
+        try (MicroBatchRunner<String, String> runner = MicroBatchRunner.builder(queue, LONG_WORDS)
+                .batchSize(3)
+                .maxDelay(1, TimeUnit.SECONDS)
+                .start(batches::add)) {
+
+            awaitElementsIn(runner, 9);
+            MicroBatchStats stats = runner.stats();
+            Assert.assertEquals(3, stats.getBatches());
+            Assert.assertEquals(4, stats.getElementsOut());
+            Assert.assertTrue(stats.getLatencyPercentile(99) > 0);
+        }
+
+        Assert.assertEquals(
+                Arrays.asList(Arrays.asList("code", "monkey"), Arrays.asList("coffee"), Arrays.asList("water")),
+                batches);
+    }
+
+    @Test
+    public void testBatchesByTime() throws Exception {
+
+        BlockingQueue<String> queue = new ArrayBlockingQueue<>(16);
+        List<List<String>> batches = new CopyOnWriteArrayList<>();
+
+        try (MicroBatchRunner<String, String> runner = MicroBatchRunner.builder(queue, LONG_WORDS)
+                .batchSize(100)
+                .maxDelay(10, TimeUnit.MILLISECONDS)
+                .start(batches::add)) {
+
+            queue.put("coffee");
+            queue.put("water");
+            awaitElementsIn(runner, 2);
+        }
+
+        List<String> words = batches.stream().flatMap(List::stream).collect(Collectors.toList());
+        Assert.assertEquals(Arrays.asList("coffee", "water"), words);
+    }
+
+    @Test
+    public void testParallelWorkersProcessEveryElement() throws Exception {
+
+        BlockingQueue<String> queue = new ArrayBlockingQueue<>(64);
+        List<String> results = Collections.synchronizedList(new ArrayList<>());
+
+        MicroBatchRunner<String, String> runner = MicroBatchRunner.builder(queue, LONG_WORDS)
+                .batchSize(16)
+                .maxDelay(5, TimeUnit.MILLISECONDS)
+                .parallelism(3)
+                .start(results::addAll);
+        for (int i = 0; i < 2000; i++)
+            queue.put("word" + i);
+        awaitElementsIn(runner, 2000);
+        Assert.assertTrue(runner.awaitTermination(5, TimeUnit.SECONDS));
+
+        Assert.assertEquals(2000, results.size());
+        Assert.assertEquals(
+                IntStream.range(0, 2000).mapToObj(i -> "word" + i).sorted().collect(Collectors.toList()),
+                results.stream().sorted().collect(Collectors.toList()));
+    }
+
+    @Test
+    public void testFailedBatchesGoToErrorHandler() throws Exception {
+
+        BlockingQueue<String> queue = new LinkedBlockingQueue<>(Arrays.asList("code", "coffee"));
+        List<Throwable> errors = new CopyOnWriteArrayList<>();
+
+        try (MicroBatchRunner<String, String> runner = MicroBatchRunner.builder(queue, LONG_WORDS)
+                .batchSize(1)
+                .errorHandler(errors::add)
+                .start(words -> {
+                    if (words.contains("code"))
+                        throw new IllegalStateException("sink down");
+                })) {
+
+            awaitElementsIn(runner, 2);
+            Assert.assertEquals(1, runner.stats().getFailedBatches());
+            Assert.assertEquals(1, runner.stats().getElementsOut());
+        }
+
+        Assert.assertEquals(1, errors.size());
+        Assert.assertTrue(errors.get(0) instanceof IllegalStateException);
+    }
+
+    @Test
+    public void testWorkerSurvivesErrorsAndFailingHandler() throws Exception {
+
+        BlockingQueue<String> queue = new LinkedBlockingQueue<>(Arrays.asList("code", "coffee", "monkey"));
+        List<List<String>> batches = new CopyOnWriteArrayList<>();
+
+        try (MicroBatchRunner<String, String> runner = MicroBatchRunner.builder(queue, LONG_WORDS)
+                .batchSize(1)
+                .errorHandler(error -> {
+                    throw new IllegalStateException("handler down");
+                })
+                .start(words -> {
+                    if (words.contains("code"))
+                        throw new AssertionError("sink down");
+                    batches.add(words);
+                })) {
+
+            awaitElementsIn(runner, 3);
+            Assert.assertEquals(3, runner.stats().getBatches());
+            Assert.assertEquals(1, runner.stats().getFailedBatches());
+            Assert.assertTrue(runner.isRunning());
+        }
+
+        Assert.assertEquals(Arrays.asList(Arrays.asList("coffee"), Arrays.asList("monkey")), batches);
+    }
+
+    private static void awaitElementsIn(final MicroBatchRunner<?, ?> runner, final long elements) throws Exception {
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (runner.stats().getElementsIn() < elements && System.nanoTime() < deadline)
+            Thread.sleep(5);
+        Assert.assertEquals(elements, runner.stats().getElementsIn());
+    }
+}
@@ -0,0 +1,87 @@
+package com.coopstools.cachemonads;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import org.junit.Test;
+
+public class StageListenerTest {
+
+    private final List<List<StageStats>> reports = new ArrayList<>();
+
+    @Test
+    public void testStagesAreReported() {
+
+        List<String> words = CacheStream.of(Arrays.asList("code", "monkey", "get", "up", "coffee"))
+                .instrument(reports::add)
+                .cache()
+                .map(String::length)
+                .filter(length -> length > 3)
+                .load()
+                .collect(Collectors.toList());
+
+        assertEquals(Arrays.asList("code", "monkey", "coffee"), words);
+        assertEquals(1, reports.size());
+
+        List<StageStats> stages = reports.get(0);
+        assertEquals(Arrays.asList("cache#1", "map#2", "filter#3", "load#4"),
+                stages.stream().map(StageStats::getName).collect(Collectors.toList()));
+
+        StageStats filter = stages.get(2);
+        assertEquals(5L, filter.getElementsIn());
+        assertEquals(3L, filter.getElementsOut());
+        assertEquals(0.6, filter.getSelectivity(), 0.0001);
+        assertTrue(filter.getNanos() >= 0);
+    }
+
+    @Test
+    public void testStatefulStagesAreCounted() {
+
+        long count = CacheStream.parrallelOf(IntStream.range(0, 1000).boxed().collect(Collectors.toList()))
+                .instrument(reports::add)
+                .map(i -> i % 10)
+                .distinct()
+                .flatMap(i -> Stream.of(i, i))
+                .count();
+
+        assertEquals(20L, count);
+
+        List<StageStats> stages = reports.get(0);
+        assertEquals(1000L, stages.get(1).getElementsIn());
+        assertEquals(10L, stages.get(1).getElementsOut());
+        assertEquals(20L, stages.get(2).getElementsOut());
+    }
+
+    @Test
+    public void testToStreamReportsOnClose() {
+
+        try (Stream<Integer> lengths = CacheStream.of(Arrays.asList("a", "bb"))
+                .instrument(reports::add)
+                .map(String::length)
+                .toStream()) {
+
+            assertEquals(3, lengths.mapToInt(Integer::intValue).sum());
+            assertTrue(reports.isEmpty());
+        }
+        assertEquals(1, reports.size());
+    }
+
+    @Test
+    public void testStagesBeforeInstrumentAreNotReported() {
+
+        CacheStream.of(Arrays.asList("a", "bb"))
+                .map(String::length)
+                .instrument(reports::add)
+                .count();
+
+        assertEquals(1, reports.size());
+        assertTrue(reports.get(0).isEmpty());
+    }
+}